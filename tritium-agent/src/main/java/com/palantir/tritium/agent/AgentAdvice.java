@@ -0,0 +1,60 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.agent;
+
+import com.palantir.tritium.event.InvocationContext;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import javax.annotation.Nullable;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+
+/**
+ * Advice woven into instrumented implementation classes. The advice is inlined into those classes, so may only refer
+ * to public types visible to them, and delegates to {@link TritiumAgentSupport}.
+ */
+final class AgentAdvice {
+
+    private AgentAdvice() {}
+
+    /** Identifier of the instrumented method registered with {@link TritiumAgentSupport}, bound per method. */
+    @Retention(RetentionPolicy.RUNTIME)
+    @java.lang.annotation.Target(ElementType.PARAMETER)
+    @interface MethodId {}
+
+    @Nullable
+    @Advice.OnMethodEnter
+    static InvocationContext enter(
+            @Advice.This Object instance,
+            @Advice.Origin Class<?> type,
+            @Advice.AllArguments Object[] arguments,
+            @MethodId int methodId) {
+        // Each read of arguments allocates the array, so only read it when the handlers require arguments
+        return TritiumAgentSupport.preInvocation(
+                methodId, type, instance, TritiumAgentSupport.requiresArguments(methodId, type) ? arguments : null);
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class, backupArguments = false)
+    static void exit(
+            @Advice.Return(typing = Assigner.Typing.DYNAMIC) Object result,
+            @Advice.Thrown Throwable thrown,
+            @Advice.Enter InvocationContext context,
+            @MethodId int methodId) {
+        TritiumAgentSupport.postInvocation(methodId, context, result, thrown);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.agent;
+
+import static net.bytebuddy.matcher.ElementMatchers.is;
+import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
+import static net.bytebuddy.matcher.ElementMatchers.isBridge;
+import static net.bytebuddy.matcher.ElementMatchers.isEquals;
+import static net.bytebuddy.matcher.ElementMatchers.isHashCode;
+import static net.bytebuddy.matcher.ElementMatchers.isMethod;
+import static net.bytebuddy.matcher.ElementMatchers.isPublic;
+import static net.bytebuddy.matcher.ElementMatchers.isStatic;
+import static net.bytebuddy.matcher.ElementMatchers.isSynthetic;
+import static net.bytebuddy.matcher.ElementMatchers.isToString;
+import static net.bytebuddy.matcher.ElementMatchers.not;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
+import java.lang.instrument.Instrumentation;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.matcher.ElementMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java agent which weaves {@link InvocationEventHandler} callbacks directly into implementation classes, avoiding the
+ * proxy allocation and additional dispatch of {@code Instrumentation.wrap}, and allowing instrumentation of classes
+ * whose construction cannot be modified.
+ *
+ * <p>Classes to instrument are specified by fully qualified name as a comma separated agent argument, for example
+ * {@code -javaagent:tritium-agent.jar=com.example.ServiceImpl,com.example.OtherImpl}, or by the
+ * {@value #CLASSES_PROPERTY} system property. Public instance methods declared by those classes are instrumented,
+ * excluding {@code equals}, {@code hashCode} and {@code toString}. Handlers are configured at runtime with
+ * {@link #setHandlers(List)}, until then instrumented methods only check for an enabled handler. Invocation arguments
+ * are only captured while the handlers set require them.
+ *
+ * <p>The agent jar, {@code tritium-core} and {@code byte-buddy} must be visible to the class loaders of instrumented
+ * classes, typically by placing them on the application class path.
+ */
+public final class TritiumAgent {
+
+    private static final Logger log = LoggerFactory.getLogger(TritiumAgent.class);
+
+    static final String CLASSES_PROPERTY = "tritium.agent.classes";
+
+    private static final ElementMatcher<MethodDescription> INSTRUMENTED_METHODS = isMethod()
+            .and(isPublic())
+            .and(not(isStatic()))
+            .and(not(isAbstract()))
+            .and(not(isSynthetic()))
+            .and(not(isBridge()))
+            .and(not(isEquals()))
+            .and(not(isHashCode()))
+            .and(not(isToString()));
+
+    private TritiumAgent() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void premain(@Nullable String arguments, Instrumentation instrumentation) {
+        install(classNames(arguments), instrumentation);
+    }
+
+    public static void agentmain(@Nullable String arguments, Instrumentation instrumentation) {
+        install(classNames(arguments), instrumentation);
+    }
+
+    /** Returns the handlers invoked by instrumented classes. */
+    public static List<InvocationEventHandler<InvocationContext>> getHandlers() {
+        return TritiumAgentSupport.getHandlers();
+    }
+
+    /** Atomically replaces the handlers invoked by instrumented classes. */
+    public static void setHandlers(List<InvocationEventHandler<InvocationContext>> handlers) {
+        TritiumAgentSupport.setHandlers(handlers);
+    }
+
+    private static void install(Set<String> classNames, Instrumentation instrumentation) {
+        if (classNames.isEmpty()) {
+            log.warn("No classes configured for instrumentation, see {}", SafeArg.of("property", CLASSES_PROPERTY));
+            return;
+        }
+        new AgentBuilder.Default()
+                .disableClassFormatChanges()
+                .with(AgentBuilder.RedefinitionStrategy.RETRANSFORMATION)
+                .type(type -> classNames.contains(type.getName()))
+                .transform((builder, type, _classLoader, _module) -> instrument(builder, type))
+                .installOn(instrumentation);
+        log.info("Installed instrumentation agent for classes {}", SafeArg.of("classes", classNames));
+    }
+
+    /** Weaves instrumentation advice into each instrumented method declared by the type. */
+    static DynamicType.Builder<?> instrument(DynamicType.Builder<?> builder, TypeDescription type) {
+        DynamicType.Builder<?> instrumented = builder;
+        for (MethodDescription method : type.getDeclaredMethods().filter(INSTRUMENTED_METHODS)) {
+            int methodId = TritiumAgentSupport.register(method);
+            instrumented = instrumented.visit(Advice.withCustomMapping()
+                    .bind(AgentAdvice.MethodId.class, methodId)
+                    .to(AgentAdvice.class)
+                    .on(is(method)));
+        }
+        return instrumented;
+    }
+
+    static Set<String> classNames(@Nullable String arguments) {
+        String classNames = Strings.isNullOrEmpty(arguments) ? System.getProperty(CLASSES_PROPERTY) : arguments;
+        if (Strings.isNullOrEmpty(classNames)) {
+            return ImmutableSet.of();
+        }
+        return ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(classNames));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.agent;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import com.palantir.tritium.event.GeneratedInstrumentationSupport;
+import com.palantir.tritium.event.HandlerCircuitBreaker;
+import com.palantir.tritium.event.InstrumentationFilters;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.MethodBindingInvocationEventHandler;
+import com.palantir.tritium.event.SwappableInvocationEventHandler;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.annotation.Nullable;
+import net.bytebuddy.description.method.MethodDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runtime support for implementation classes instrumented by {@link TritiumAgent}. Woven advice delegates event
+ * handling to these methods. This class is not intended for direct use.
+ */
+public final class TritiumAgentSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(TritiumAgentSupport.class);
+
+    private static final SwappableInvocationEventHandler handler =
+            SwappableInvocationEventHandler.of(ImmutableList.of());
+
+    // All methods share the circuit breaker of the unbound handler, resolved once rather than per invocation
+    private static final HandlerCircuitBreaker circuitBreaker = GeneratedInstrumentationSupport.circuitBreaker(handler);
+
+    private static final Object[] NO_ARGS = {};
+
+    /** Instrumented methods indexed by the identifier bound into their advice. */
+    private static final List<AgentMethod> methods = new CopyOnWriteArrayList<>();
+
+    private TritiumAgentSupport() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns true if the handlers currently set for the method are enabled and require its arguments, allowing advice
+     * to skip materializing arguments otherwise.
+     */
+    public static boolean requiresArguments(int methodId, Class<?> type) {
+        BoundMethod bound = bind(methodId, type);
+        return bound != null && bound.handler.isEnabled() && ArgumentsRequirement.requiresArguments(bound.handler);
+    }
+
+    @Nullable
+    public static InvocationContext preInvocation(
+            int methodId, Class<?> type, Object instance, @Nullable Object[] args) {
+        BoundMethod bound = bind(methodId, type);
+        if (bound == null) {
+            return null;
+        }
+        return GeneratedInstrumentationSupport.preInvocation(
+                bound.handler,
+                bound.circuitBreaker,
+                InstrumentationFilters.INSTRUMENT_ALL,
+                instance,
+                bound.method,
+                (args == null) ? NO_ARGS : args);
+    }
+
+    public static void postInvocation(
+            int methodId, @Nullable InvocationContext context, @Nullable Object result, @Nullable Throwable thrown) {
+        BoundMethod bound = methods.get(methodId).bound;
+        if (bound == null) {
+            // preInvocation failed to resolve the method, there is no handler to notify
+            return;
+        }
+        if (thrown == null) {
+            GeneratedInstrumentationSupport.onSuccess(bound.handler, bound.circuitBreaker, context, result);
+        } else {
+            GeneratedInstrumentationSupport.onFailure(bound.handler, bound.circuitBreaker, context, thrown);
+        }
+    }
+
+    @Nullable
+    private static BoundMethod bind(int methodId, Class<?> type) {
+        try {
+            return methods.get(methodId).bind(type);
+        } catch (RuntimeException e) {
+            log.warn("Failed to bind instrumented method on: {}", SafeArg.of("type", type), e);
+            return null;
+        }
+    }
+
+    static List<InvocationEventHandler<InvocationContext>> getHandlers() {
+        return handler.getHandlers();
+    }
+
+    static void setHandlers(List<InvocationEventHandler<InvocationContext>> handlers) {
+        handler.setHandlers(handlers);
+    }
+
+    /** Registers a method being instrumented, returning the identifier to bind into its advice. */
+    static synchronized int register(MethodDescription method) {
+        methods.add(new AgentMethod(method.getInternalName() + method.getDescriptor()));
+        return methods.size() - 1;
+    }
+
+    private static final class AgentMethod {
+        private final String signature;
+
+        @Nullable
+        private volatile BoundMethod bound;
+
+        AgentMethod(String signature) {
+            this.signature = signature;
+        }
+
+        BoundMethod bind(Class<?> type) {
+            BoundMethod current = bound;
+            if (current == null) {
+                // Concurrent binding is benign, each result is equivalent
+                Method method = resolve(type);
+                current = new BoundMethod(method, MethodBindingInvocationEventHandler.bind(handler, method));
+                bound = current;
+            }
+            return current;
+        }
+
+        private Method resolve(Class<?> type) {
+            for (Method method : type.getDeclaredMethods()) {
+                MethodDescription description = new MethodDescription.ForLoadedMethod(method);
+                if (signature.equals(description.getInternalName() + description.getDescriptor())) {
+                    return method;
+                }
+            }
+            throw new SafeIllegalStateException(
+                    "Instrumented method not found", SafeArg.of("type", type), SafeArg.of("method", signature));
+        }
+    }
+
+    private static final class BoundMethod {
+        private final Method method;
+        private final InvocationEventHandler<InvocationContext> handler;
+        private final HandlerCircuitBreaker circuitBreaker;
+
+        BoundMethod(Method method, InvocationEventHandler<InvocationContext> handler) {
+            this.method = checkNotNull(method, "method");
+            this.handler = checkNotNull(handler, "handler");
+            this.circuitBreaker = TritiumAgentSupport.circuitBreaker;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.agent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import com.palantir.tritium.event.AbstractInvocationEventHandler;
+import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.InvocationContext;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+final class TritiumAgentTest {
+
+    private final List<String> events = new ArrayList<>();
+
+    @AfterEach
+    void after() {
+        TritiumAgent.setHandlers(ImmutableList.of());
+    }
+
+    @Test
+    void testInstrumentedClass() throws Exception {
+        Greeter greeter = instrument(GreeterImpl.class);
+        assertThat(greeter.greet("uninstrumented")).isEqualTo("Hello, uninstrumented");
+        assertThat(events).isEmpty();
+
+        TritiumAgent.setHandlers(ImmutableList.of(new RecordingHandler()));
+        assertThat(TritiumAgent.getHandlers()).hasSize(1);
+
+        assertThat(greeter.greet("world")).isEqualTo("Hello, world");
+        assertThatThrownBy(() -> greeter.greet("")).isInstanceOf(IllegalArgumentException.class);
+        assertThat(greeter.toString()).isEqualTo("GreeterImpl");
+        assertThat(events).containsExactly("pre:greet:world", "success:Hello, world", "pre:greet:", "failure");
+    }
+
+    @Test
+    void testArgumentsOnlyCapturedWhenRequired() throws Exception {
+        Greeter greeter = instrument(GreeterImpl.class);
+        TritiumAgent.setHandlers(ImmutableList.of(new ArgumentFreeHandler()));
+        assertThat(greeter.greet("world")).isEqualTo("Hello, world");
+        assertThat(events).containsExactly("pre:greet:0");
+
+        TritiumAgent.setHandlers(ImmutableList.of(new ArgumentFreeHandler(), new RecordingHandler()));
+        assertThat(greeter.greet("again")).isEqualTo("Hello, again");
+        assertThat(events).contains("pre:greet:1", "pre:greet:again");
+    }
+
+    @Test
+    void testClassNames() {
+        assertThat(TritiumAgent.classNames("com.example.A, com.example.B,"))
+                .containsExactly("com.example.A", "com.example.B");
+        System.setProperty(TritiumAgent.CLASSES_PROPERTY, "com.example.C");
+        try {
+            assertThat(TritiumAgent.classNames(null)).containsExactly("com.example.C");
+        } finally {
+            System.clearProperty(TritiumAgent.CLASSES_PROPERTY);
+        }
+        assertThat(TritiumAgent.classNames("")).isEmpty();
+    }
+
+    /** Weaves the advice as the agent would, defining the woven class in a child first class loader. */
+    private static Greeter instrument(Class<? extends Greeter> type) throws Exception {
+        return TritiumAgent.instrument(new ByteBuddy().redefine(type), new TypeDescription.ForLoadedType(type))
+                .make()
+                .load(type.getClassLoader(), ClassLoadingStrategy.Default.CHILD_FIRST)
+                .getLoaded()
+                .asSubclass(Greeter.class)
+                .getDeclaredConstructor()
+                .newInstance();
+    }
+
+    public interface Greeter {
+        String greet(String name);
+    }
+
+    public static final class GreeterImpl implements Greeter {
+        @Override
+        public String greet(String name) {
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("name is empty");
+            }
+            return "Hello, " + name;
+        }
+
+        @Override
+        public String toString() {
+            return "GreeterImpl";
+        }
+    }
+
+    private final class ArgumentFreeHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements ArgumentsRequirement {
+        @Override
+        public boolean requiresArguments() {
+            return false;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            events.add("pre:" + method.getName() + ":" + args.length);
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {}
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
+    }
+
+    private final class RecordingHandler extends AbstractInvocationEventHandler<InvocationContext> {
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            events.add("pre:" + method.getName() + ":" + args[0]);
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object result) {
+            events.add("success:" + result);
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {
+            events.add("failure");
+        }
+    }
+}
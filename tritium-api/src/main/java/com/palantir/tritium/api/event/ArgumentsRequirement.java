@@ -0,0 +1,48 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.api.event;
+
+import javax.annotation.Nullable;
+
+/**
+ * Optionally implemented by {@link com.palantir.tritium.event.InvocationEventHandler} and
+ * {@link InstrumentationFilter} implementations to declare whether they read invocation arguments.
+ *
+ * <p>Handlers and filters which do not implement this interface are assumed to require arguments.
+ */
+public interface ArgumentsRequirement {
+
+    /**
+     * Returns true if invocation arguments are read, otherwise false. When neither the handlers nor the filter of an
+     * instrumented instance require arguments, instrumentation may avoid materializing the argument array and supply an
+     * empty array instead.
+     *
+     * @return true if invocation arguments are required
+     */
+    boolean requiresArguments();
+
+    /**
+     * Returns true if the specified handler or filter requires invocation arguments.
+     *
+     * @param handlerOrFilter an invocation event handler or instrumentation filter
+     * @return false if the specified instance declares that it does not read arguments, otherwise true
+     */
+    static boolean requiresArguments(@Nullable Object handlerOrFilter) {
+        return !(handlerOrFilter instanceof ArgumentsRequirement)
+                || ((ArgumentsRequirement) handlerOrFilter).requiresArguments();
+    }
+}
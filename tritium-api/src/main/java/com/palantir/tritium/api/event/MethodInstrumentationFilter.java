@@ -0,0 +1,60 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.api.event;
+
+import java.lang.reflect.Method;
+import javax.annotation.Nonnull;
+
+/**
+ * An {@link InstrumentationFilter} whose decision depends only on the invoked {@link Method}.
+ *
+ * <p>Method filters are evaluated once per method when instrumentation is created rather than on every invocation.
+ * Methods which are not instrumented delegate directly without invoking any event handlers.
+ */
+@FunctionalInterface
+public interface MethodInstrumentationFilter extends InstrumentationFilter, ArgumentsRequirement {
+
+    /**
+     * Invoked once per method when instrumentation is created.
+     *
+     * @param method the interface method which may be instrumented
+     * @return true if invocations of the method should be instrumented, false if they should not be instrumented
+     */
+    boolean shouldInstrument(@Nonnull Method method);
+
+    @Override
+    default boolean shouldInstrument(@Nonnull Object _instance, @Nonnull Method method, @Nonnull Object[] _args) {
+        return shouldInstrument(method);
+    }
+
+    @Override
+    default boolean requiresArguments() {
+        return false;
+    }
+
+    /**
+     * Returns true if invocations of the method may be instrumented by the specified filter.
+     *
+     * @param filter an instrumentation filter
+     * @param method the interface method which may be instrumented
+     * @return false if the filter is a {@link MethodInstrumentationFilter} which excludes the method, otherwise true
+     */
+    static boolean shouldInstrumentMethod(InstrumentationFilter filter, Method method) {
+        return !(filter instanceof MethodInstrumentationFilter)
+                || ((MethodInstrumentationFilter) filter).shouldInstrument(method);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import java.lang.reflect.Method;
+
+/**
+ * An {@link InvocationEventHandler} which can be specialized for a single {@link Method}.
+ *
+ * <p>Instrumentation binds handlers once per instrumented method when a proxy is created, allowing per-method state
+ * such as metric names and timers to be resolved ahead of time rather than on every invocation. Handlers which do not
+ * implement this interface are used unchanged for all methods.
+ *
+ * @param <C> invocation context
+ */
+public interface MethodBindingInvocationEventHandler<C extends InvocationContext> extends InvocationEventHandler<C> {
+
+    /**
+     * Returns a handler equivalent to this handler for invocations of the specified method. The returned handler is
+     * only invoked for the bound method and must reflect the enabled state of this handler.
+     *
+     * @param method the method invocations will be bound to
+     * @return a handler specialized for the specified method, possibly this handler
+     */
+    InvocationEventHandler<C> bind(Method method);
+
+    /**
+     * Binds the specified handler to a method if it supports binding, otherwise returns the handler unchanged.
+     *
+     * @param handler invocation event handler
+     * @param method the method invocations will be bound to
+     * @return handler for invocations of the specified method
+     */
+    @SuppressWarnings("unchecked")
+    static <C extends InvocationContext> InvocationEventHandler<C> bind(
+            InvocationEventHandler<C> handler, Method method) {
+        if (handler instanceof MethodBindingInvocationEventHandler) {
+            return ((MethodBindingInvocationEventHandler<C>) handler).bind(method);
+        }
+        return handler;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import javax.annotation.Nullable;
+
+/**
+ * An {@link InvocationEventHandler} which can share a single {@link InvocationContext} with the other handlers of an
+ * invocation rather than creating its own.
+ *
+ * <p>When several handlers are composed, the composite creates one context per invocation, capturing the instance,
+ * method, arguments and start time once, and offers it to each handler implementing this interface in place of calling
+ * {@link #preInvocation(Object, java.lang.reflect.Method, Object[])}. The context returned is the handler's state for
+ * the invocation and is supplied to {@link #onSuccess} or {@link #onFailure}; handlers which only need the start time
+ * and method typically return the shared context itself. Handlers which do not implement this interface are invoked
+ * unchanged.
+ *
+ * @param <C> invocation context
+ */
+public interface SharedContextInvocationEventHandler<C extends InvocationContext> extends InvocationEventHandler<C> {
+
+    /**
+     * Invoked before invoking the method on the instance, in place of
+     * {@link #preInvocation(Object, java.lang.reflect.Method, Object[])}, with a context shared by all handlers of the
+     * invocation.
+     *
+     * @param sharedContext context shared by all handlers of this invocation
+     * @return this handler's context for the invocation, possibly the shared context itself
+     */
+    @Nullable
+    C preInvocation(InvocationContext sharedContext);
+}
@@ -34,11 +34,13 @@ public abstract class AbstractInvocationEventHandler<C extends InvocationContext
 
     private static final Object[] NO_ARGS = {};
 
+    private static final java.util.function.BooleanSupplier ALWAYS_ENABLED = () -> true;
+
     private final java.util.function.BooleanSupplier isEnabledSupplier;
 
     /** Always enabled instrumentation handler. */
     protected AbstractInvocationEventHandler() {
-        this((java.util.function.BooleanSupplier) () -> true);
+        this(ALWAYS_ENABLED);
     }
 
     /**
@@ -62,6 +64,16 @@ public abstract class AbstractInvocationEventHandler<C extends InvocationContext
         this.isEnabledSupplier = checkNotNull(isEnabledSupplier, "isEnabledSupplier");
     }
 
+    /**
+     * Constructs {@link AbstractInvocationEventHandler} enabled whenever the specified handler is enabled, typically a
+     * handler from which this handler was bound to a method.
+     *
+     * @param parent handler whose enablement is shared
+     */
+    protected AbstractInvocationEventHandler(AbstractInvocationEventHandler<?> parent) {
+        this(checkNotNull(parent, "parent").isEnabledSupplier);
+    }
+
     /**
      * Returns true if instrumentation handling is enabled, otherwise false.
      *
@@ -72,6 +84,16 @@ public abstract class AbstractInvocationEventHandler<C extends InvocationContext
         return isEnabledSupplier.getAsBoolean();
     }
 
+    /** Returns the enabled supplier, allowing enablement which can only change in known ways to be specialized. */
+    final java.util.function.BooleanSupplier enabledSupplier() {
+        return isEnabledSupplier;
+    }
+
+    /** Returns true if the handler was created without an enabled supplier, so is always enabled. */
+    final boolean isAlwaysEnabled() {
+        return isEnabledSupplier == ALWAYS_ENABLED;
+    }
+
     /**
      * Logs debug information if the specified invocation context is not null.
      *
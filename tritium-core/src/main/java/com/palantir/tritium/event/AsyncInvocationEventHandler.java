@@ -0,0 +1,439 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.UnsafeArg;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link InvocationEventHandler} which moves the work of other handlers off the invoking thread.
+ *
+ * <p>When an invocation completes, a compact record of the method, start time, duration and failure cause is
+ * published to a preallocated lock-free ring buffer, and a background consumer thread applies the wrapped handlers to
+ * each record. Slow handlers, or handlers updating metrics contended across many cores, then no longer add latency to
+ * the invoking thread. When the buffer is full, events are handled according to the {@link OverflowPolicy}. An idle
+ * consumer yields briefly and then parks until an event is published, so it does not consume CPU without traffic.
+ *
+ * <p>Wrapped handlers must implement {@link SharedContextInvocationEventHandler}, as they are invoked with a context
+ * recreated from the record on the consumer thread: the context has no instance or arguments, {@code onSuccess} is
+ * supplied a null result, and durations are available through {@link InvocationClock#elapsedNanos}. The context is
+ * reused for subsequent events, so handlers must not retain it. Handlers relying on thread local state, such as
+ * tracing, must not be wrapped.
+ */
+public final class AsyncInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext>
+        implements ArgumentsRequirement,
+                MethodBindingInvocationEventHandler<InvocationContext>,
+                SharedContextInvocationEventHandler<InvocationContext>,
+                Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncInvocationEventHandler.class);
+    private static final int DRAIN_BATCH_SIZE = 256;
+    private static final int IDLE_YIELDS = 64;
+    private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Handling of events published while the buffer is full. */
+    public enum OverflowPolicy {
+        /** Discards the event, counting it in {@link #droppedEvents()}. */
+        DROP,
+        /** Applies the wrapped handlers on the invoking thread. */
+        RUN_ON_CALLER
+    }
+
+    private final String name;
+    private final InvocationEventHandler<InvocationContext>[] handlers;
+    private final HandlerCircuitBreaker[] breakers;
+    private final InvocationEventRingBuffer buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final LongAdder dropped = new LongAdder();
+    private final ConcurrentMap<Method, Integer> methodIndexes = new ConcurrentHashMap<>();
+    private final Thread consumer;
+
+    private volatile Method[] methods = new Method[0];
+    private volatile boolean closed;
+    private volatile boolean consumerParked;
+
+    @SuppressWarnings("unchecked")
+    private AsyncInvocationEventHandler(
+            String name,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            int capacity,
+            OverflowPolicy overflowPolicy) {
+        this(name, handlers.toArray(new InvocationEventHandler[0]), capacity, overflowPolicy);
+    }
+
+    private AsyncInvocationEventHandler(
+            String name,
+            InvocationEventHandler<InvocationContext>[] handlers,
+            int capacity,
+            OverflowPolicy overflowPolicy) {
+        super(anyEnabled(handlers));
+        this.name = name;
+        this.handlers = handlers;
+        this.breakers = new HandlerCircuitBreaker[handlers.length];
+        for (int i = 0; i < handlers.length; i++) {
+            breakers[i] = HandlerCircuitBreaker.of(handlers[i]);
+        }
+        this.buffer = new InvocationEventRingBuffer(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.consumer = new Thread(new Consumer(), "tritium-async-handler-" + name);
+        this.consumer.setDaemon(true);
+    }
+
+    /**
+     * Creates a handler applying the specified handlers on a background thread, which is started immediately.
+     *
+     * @param name name of the handler, used to name the consumer thread
+     * @param handlers handlers to apply, each implementing {@link SharedContextInvocationEventHandler}
+     * @param capacity maximum number of pending events, a power of two
+     * @param overflowPolicy handling of events published while the buffer is full
+     * @return asynchronous handler
+     */
+    public static AsyncInvocationEventHandler create(
+            String name,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            int capacity,
+            OverflowPolicy overflowPolicy) {
+        checkNotNull(name, "name");
+        checkNotNull(handlers, "handlers");
+        checkNotNull(overflowPolicy, "overflowPolicy");
+        for (InvocationEventHandler<InvocationContext> handler : handlers) {
+            checkNotNull(handler, "Null handlers are not allowed");
+            checkArgument(
+                    handler instanceof SharedContextInvocationEventHandler,
+                    "Asynchronous handlers must support shared invocation contexts",
+                    SafeArg.of("handlerClass", handler.getClass().getName()));
+        }
+        AsyncInvocationEventHandler asyncHandler =
+                new AsyncInvocationEventHandler(name, handlers, capacity, overflowPolicy);
+        asyncHandler.consumer.start();
+        return asyncHandler;
+    }
+
+    @SuppressWarnings("NoFunctionalReturnType") // helper
+    private static BooleanSupplier anyEnabled(InvocationEventHandler<InvocationContext>[] handlers) {
+        return () -> {
+            for (InvocationEventHandler<InvocationContext> handler : handlers) {
+                if (handler.isEnabled()) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /** Returns the number of events published but not yet handled. */
+    public int queueDepth() {
+        return buffer.size();
+    }
+
+    /** Returns the number of events discarded because the buffer was full. */
+    public long droppedEvents() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the consumer thread once all pending events have been handled. Events published after closing are not
+     * handled.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+    }
+
+    @Override
+    public boolean requiresArguments() {
+        return false;
+    }
+
+    @Override
+    public InvocationEventHandler<InvocationContext> bind(Method method) {
+        checkNotNull(method, "method");
+        // Futures are handled once complete rather than when they are returned
+        return FutureAwareInvocationEventHandler.bind(new MethodBoundHandler(this, methodIndex(method)), method);
+    }
+
+    @Override
+    public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+        return DefaultInvocationContext.ofLazyArgs(instance, method, args);
+    }
+
+    @Override
+    public InvocationContext preInvocation(InvocationContext sharedContext) {
+        return sharedContext;
+    }
+
+    @Override
+    public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+        debugIfNullContext(context);
+        if (context != null) {
+            publish(methodIndex(context.getMethod()), context, null);
+        }
+    }
+
+    @Override
+    public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+        debugIfNullContext(context);
+        if (context != null) {
+            publish(methodIndex(context.getMethod()), context, cause);
+        }
+    }
+
+    private void publish(int methodIndex, InvocationContext context, @Nullable Throwable cause) {
+        long startTimeNanos = context.getStartTimeNanos();
+        long durationNanos = InvocationClock.elapsedNanos(context);
+        if (buffer.offer(methodIndex, startTimeNanos, durationNanos, cause)) {
+            if (consumerParked) {
+                LockSupport.unpark(consumer);
+            }
+        } else {
+            if (overflowPolicy == OverflowPolicy.RUN_ON_CALLER) {
+                AsyncInvocationContext callerContext = new AsyncInvocationContext();
+                dispatch(callerContext.reset(methods[methodIndex], startTimeNanos, durationNanos), cause);
+            } else {
+                dropped.increment();
+            }
+        }
+    }
+
+    private int methodIndex(Method method) {
+        Integer index = methodIndexes.get(method);
+        return (index != null) ? index : registerMethod(method);
+    }
+
+    private synchronized int registerMethod(Method method) {
+        Integer existing = methodIndexes.get(method);
+        if (existing != null) {
+            return existing;
+        }
+        Method[] current = methods;
+        Method[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = method;
+        // Publish the method before its index so the consumer can always resolve published indexes
+        methods = updated;
+        methodIndexes.put(method, current.length);
+        return current.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(AsyncInvocationContext context, @Nullable Throwable cause) {
+        for (int i = 0; i < handlers.length; i++) {
+            InvocationEventHandler<InvocationContext> handler = handlers[i];
+            if (handler.isEnabled() && breakers[i].allowsInvocation()) {
+                try {
+                    InvocationContext handlerContext =
+                            ((SharedContextInvocationEventHandler<InvocationContext>) handler).preInvocation(context);
+                    if (cause == null) {
+                        handler.onSuccess(handlerContext, null);
+                    } else {
+                        handler.onFailure(handlerContext, cause);
+                    }
+                } catch (RuntimeException | Error e) {
+                    if (breakers[i].recordFailure()) {
+                        log.warn(
+                                "Exception handling asynchronous invocation event of {} by {}",
+                                SafeArg.of("method", context.getMethod().getName()),
+                                UnsafeArg.of("handler", handler),
+                                e);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncInvocationEventHandler{name="
+                + name
+                + ", handlers="
+                + Arrays.toString(handlers)
+                + ", overflowPolicy="
+                + overflowPolicy
+                + '}';
+    }
+
+    private final class Consumer implements Runnable, InvocationEventRingBuffer.EventSink {
+        private final AsyncInvocationContext context = new AsyncInvocationContext();
+
+        @Override
+        public void run() {
+            int idleIterations = 0;
+            while (true) {
+                if (drain() > 0) {
+                    idleIterations = 0;
+                } else if (closed && buffer.size() == 0) {
+                    return;
+                } else if (idleIterations < IDLE_YIELDS) {
+                    idleIterations++;
+                    Thread.yield();
+                } else {
+                    // Producers advance the tail before reading the flag, so either the buffer is observed to be
+                    // non-empty here or the producer observes the flag and unparks the consumer
+                    consumerParked = true;
+                    if (buffer.size() == 0 && !closed) {
+                        LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                    }
+                    consumerParked = false;
+                }
+            }
+        }
+
+        /**
+         * Drains pending events, logging rather than propagating failures so the consumer remains alive. A failed batch
+         * counts as progress, as events may remain in the buffer.
+         */
+        private int drain() {
+            try {
+                return buffer.drain(this, DRAIN_BATCH_SIZE);
+            } catch (Throwable t) {
+                log.error(
+                        "Unexpected failure handling asynchronous invocation events of {}",
+                        SafeArg.of("name", name),
+                        t);
+                return 1;
+            }
+        }
+
+        @Override
+        public void accept(int methodIndex, long startTimeNanos, long durationNanos, @Nullable Throwable cause) {
+            dispatch(context.reset(methods[methodIndex], startTimeNanos, durationNanos), cause);
+        }
+    }
+
+    /** Handler bound to a single method, resolving its index once rather than on every invocation. */
+    private static final class MethodBoundHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements ArgumentsRequirement, SharedContextInvocationEventHandler<InvocationContext> {
+
+        private final AsyncInvocationEventHandler parent;
+        private final int methodIndex;
+
+        MethodBoundHandler(AsyncInvocationEventHandler parent, int methodIndex) {
+            super(parent);
+            this.parent = parent;
+            this.methodIndex = methodIndex;
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return false;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return DefaultInvocationContext.ofLazyArgs(instance, method, args);
+        }
+
+        @Override
+        public InvocationContext preInvocation(InvocationContext sharedContext) {
+            return sharedContext;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            debugIfNullContext(context);
+            if (context != null) {
+                parent.publish(methodIndex, context, null);
+            }
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+            debugIfNullContext(context);
+            if (context != null) {
+                parent.publish(methodIndex, context, cause);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "MethodBoundHandler{parent=" + parent + ", methodIndex=" + methodIndex + '}';
+        }
+    }
+
+    /** Context recreated from a published event, reused by the consumer for each event. */
+    private static final class AsyncInvocationContext implements TimedInvocationContext {
+        private static final Object[] NO_ARGS = {};
+
+        @Nullable
+        private Method method;
+
+        private long startTimeNanos;
+        private long endTimeNanos;
+
+        AsyncInvocationContext reset(Method invokedMethod, long start, long duration) {
+            this.method = invokedMethod;
+            this.startTimeNanos = start;
+            this.endTimeNanos = start + duration;
+            return this;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return true;
+        }
+
+        @Override
+        public long getEndTimeNanos() {
+            return endTimeNanos;
+        }
+
+        @Override
+        public long getStartTimeNanos() {
+            return startTimeNanos;
+        }
+
+        @Nullable
+        @Override
+        public Object getInstance() {
+            return null;
+        }
+
+        @Override
+        public Method getMethod() {
+            return checkNotNull(method, "method");
+        }
+
+        @Override
+        public Object[] getArgs() {
+            return NO_ARGS;
+        }
+
+        @Override
+        public String toString() {
+            return "AsyncInvocationContext [startTimeNanos=" + startTimeNanos + ", method=" + method + ']';
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link InvocationClock} with millisecond resolution updated by a daemon thread. The thread is started when this class
+ * is initialized by the first call of {@link InvocationClock#coarse()}, and is never stopped.
+ */
+final class CoarseInvocationClock implements InvocationClock {
+
+    static final CoarseInvocationClock INSTANCE = new CoarseInvocationClock(TimeUnit.MILLISECONDS.toNanos(1));
+
+    private final long tickNanos;
+    private volatile long nanoTime = System.nanoTime();
+
+    private CoarseInvocationClock(long tickNanos) {
+        this.tickNanos = tickNanos;
+        Thread ticker = new Thread(this::tick, "tritium-coarse-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    @SuppressWarnings("InfiniteLoopStatement") // daemon thread runs for the lifetime of the JVM
+    private void tick() {
+        while (true) {
+            LockSupport.parkNanos(tickNanos);
+            nanoTime = System.nanoTime();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CoarseInvocationClock{tickNanos=" + tickNanos + '}';
+    }
+}
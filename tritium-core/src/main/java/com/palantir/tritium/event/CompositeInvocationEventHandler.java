@@ -20,6 +20,8 @@ import static com.palantir.logsafe.Preconditions.checkNotNull;
 
 import com.palantir.logsafe.SafeArg;
 import com.palantir.logsafe.UnsafeArg;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import com.palantir.tritium.api.functions.BooleanSupplier;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
@@ -28,18 +30,69 @@ import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public final class CompositeInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext> {
+/**
+ * {@link InvocationEventHandler} invoking each of a list of handlers.
+ *
+ * <p>Handlers are invoked through a specialization containing only the handlers which are currently enabled. Handlers
+ * whose enablement is constant, or backed by instrumentation properties, are evaluated once when the specialization is
+ * created, which is repeated whenever any instrumentation flag changes, so disabled handlers cost nothing per
+ * invocation. Handlers with other enablement are always included and checked on each invocation. Each context records
+ * the specialization which created it, so a flag changing while an invocation is in progress does not deliver its
+ * completion to handlers which did not observe its start. When only one handler is enabled, invocations collapse to it
+ * without iterating over handlers, holding its context in a single slot.
+ */
+public final class CompositeInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext>
+        implements ArgumentsRequirement, MethodBindingInvocationEventHandler<InvocationContext> {
 
     private static final Logger logger = LoggerFactory.getLogger(CompositeInvocationEventHandler.class);
+    private static final String POOLED_CONTEXTS_PROPERTY = "pooled-contexts";
 
     private final InvocationEventHandler<InvocationContext>[] handlers;
+    private final HandlerCircuitBreaker[] breakers;
+    private final Enablement[] enablements;
+    private final boolean requiresArguments;
+    private final boolean pooledContexts;
+    private final InvocationClock clock;
+
+    /** All handlers in their original order, used for contexts created without a specialization. */
+    private final Specialization allHandlers;
+
+    private volatile Specialization specialization;
+
+    private CompositeInvocationEventHandler(
+            List<InvocationEventHandler<InvocationContext>> handlers, InvocationClock clock) {
+        this(handlers, clock, false, null);
+    }
 
     @SuppressWarnings("unchecked")
-    private CompositeInvocationEventHandler(List<InvocationEventHandler<InvocationContext>> handlers) {
+    private CompositeInvocationEventHandler(
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InvocationClock clock,
+            boolean pooledContexts,
+            @Nullable HandlerCircuitBreaker[] breakers) {
+        this.clock = checkNotNull(clock, "clock");
+        this.pooledContexts = pooledContexts;
         this.handlers = checkNotNull(handlers, "handlers").toArray(new InvocationEventHandler[0]);
-        for (InvocationEventHandler<InvocationContext> handler : handlers) {
-            checkNotNull(handler, "Null handlers are not allowed");
+        // Handlers bound to a method share the circuit breakers of the handlers they were bound from
+        this.breakers = (breakers != null) ? breakers : new HandlerCircuitBreaker[this.handlers.length];
+        this.enablements = new Enablement[this.handlers.length];
+        boolean[] sharesContext = new boolean[this.handlers.length];
+        boolean[] checksEnabled = new boolean[this.handlers.length];
+        boolean anyRequiresArguments = false;
+        for (int i = 0; i < this.handlers.length; i++) {
+            InvocationEventHandler<InvocationContext> handler =
+                    checkNotNull(this.handlers[i], "Null handlers are not allowed");
+            sharesContext[i] = handler instanceof SharedContextInvocationEventHandler;
+            checksEnabled[i] = true;
+            enablements[i] = enablement(handler);
+            if (breakers == null) {
+                this.breakers[i] = HandlerCircuitBreaker.of(handler);
+            }
+            anyRequiresArguments |= ArgumentsRequirement.requiresArguments(handler);
         }
+        this.requiresArguments = anyRequiresArguments;
+        this.allHandlers = new Specialization(this, -1L, this.handlers, sharesContext, checksEnabled, this.breakers);
+        this.specialization = specialize();
     }
 
     public static InvocationEventHandler<InvocationContext> of(
@@ -49,61 +102,322 @@ public final class CompositeInvocationEventHandler extends AbstractInvocationEve
         } else if (handlers.size() == 1) {
             return checkNotNull(handlers.get(0), "Null handlers are not allowed");
         } else {
-            return new CompositeInvocationEventHandler(handlers);
+            return new CompositeInvocationEventHandler(handlers, InvocationClock.system());
+        }
+    }
+
+    /**
+     * Returns a handler invoking all specified handlers, reading the specified clock once when each invocation starts
+     * and once when it completes. Unlike {@link #of(List)}, a single handler is still wrapped so that it observes the
+     * specified clock.
+     */
+    public static InvocationEventHandler<InvocationContext> of(
+            List<InvocationEventHandler<InvocationContext>> handlers, InvocationClock clock) {
+        checkNotNull(clock, "clock");
+        if (handlers.isEmpty()) {
+            return NoOpInvocationEventHandler.INSTANCE;
         }
+        return new CompositeInvocationEventHandler(handlers, clock);
+    }
+
+    /**
+     * Returns a composite handler regardless of the number of handlers, so that every context it creates identifies
+     * it, see {@link #ownerOf(InvocationContext)}.
+     */
+    static CompositeInvocationEventHandler create(
+            List<InvocationEventHandler<InvocationContext>> handlers, InvocationClock clock) {
+        return new CompositeInvocationEventHandler(handlers, clock);
     }
 
+    /**
+     * Returns the composite handler which created the context, or null if the context was not created by a composite
+     * handler, including when all of its handlers were disabled.
+     */
     @Nullable
-    private InvocationEventHandler<InvocationContext> tryGetEnabledHandler(int index) {
-        InvocationEventHandler<InvocationContext> handler = handlers[index];
-        if (handler.isEnabled()) {
-            return handler;
+    static CompositeInvocationEventHandler ownerOf(@Nullable InvocationContext context) {
+        Object created = null;
+        if (context instanceof PooledInvocationContext) {
+            created = ((PooledInvocationContext) context).getAttachment();
+        } else if (context instanceof CompositeInvocationContext) {
+            created = ((CompositeInvocationContext) context).specialization;
+        } else if (context instanceof SingleInvocationContext) {
+            created = ((SingleInvocationContext) context).specialization;
+        }
+        return (created instanceof Specialization) ? ((Specialization) created).owner : null;
+    }
+
+    private static Enablement enablement(InvocationEventHandler<?> handler) {
+        if (handler == NoOpInvocationEventHandler.INSTANCE) {
+            return Enablement.DISABLED;
+        }
+        if (handler instanceof AbstractInvocationEventHandler) {
+            AbstractInvocationEventHandler<?> abstractHandler = (AbstractInvocationEventHandler<?>) handler;
+            java.util.function.BooleanSupplier supplier = abstractHandler.enabledSupplier();
+            if (abstractHandler.isAlwaysEnabled() || supplier == BooleanSupplier.TRUE) {
+                return Enablement.ENABLED;
+            } else if (supplier == BooleanSupplier.FALSE) {
+                return Enablement.DISABLED;
+            } else if (supplier instanceof InstrumentationFlag) {
+                return Enablement.FLAG;
+            }
         }
-        return null;
+        return Enablement.DYNAMIC;
     }
 
     @Override
-    public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
-        InvocationContext[] contexts = new InvocationContext[handlers.length];
+    public boolean requiresArguments() {
+        return requiresArguments;
+    }
+
+    @Override
+    public InvocationEventHandler<InvocationContext> bind(Method method) {
+        return bindComposite(method);
+    }
+
+    /** Binds handlers to the method as {@link #bind(Method)} does, always returning a composite. */
+    CompositeInvocationEventHandler bindComposite(Method method) {
+        checkNotNull(method, "method");
+        InvocationEventHandler<InvocationContext>[] boundHandlers = handlers.clone();
+        boolean anyBound = false;
+        for (int i = 0; i < boundHandlers.length; i++) {
+            boundHandlers[i] = MethodBindingInvocationEventHandler.bind(handlers[i], method);
+            anyBound |= boundHandlers[i] != handlers[i];
+        }
+        boolean pooled = usePooledContexts(method);
+        return (anyBound || pooled)
+                ? new CompositeInvocationEventHandler(Arrays.asList(boundHandlers), clock, pooled, breakers)
+                : this;
+    }
+
+    /**
+     * Contexts are only pooled when enabled with {@code instrument.pooled-contexts=true}, as handlers retaining
+     * contexts are only detected on a best effort basis, see {@link PooledInvocationContext}. Pooling also only
+     * applies to methods which complete synchronously, as handlers of methods returning futures retain their contexts
+     * until the future completes.
+     */
+    private static boolean usePooledContexts(Method method) {
+        return InstrumentationProperties.isSpecificEnabled(POOLED_CONTEXTS_PROPERTY, false)
+                && !FutureAwareInvocationEventHandler.isFuture(method.getReturnType());
+    }
+
+    /**
+     * Returns true if any handler of the current specialization may be enabled, without polling handlers whose
+     * enablement changes only with instrumentation flags.
+     */
+    boolean hasActiveHandlers() {
+        return currentSpecialization().handlers.length > 0;
+    }
 
+    private Specialization currentSpecialization() {
+        Specialization current = specialization;
+        return (current.version == InstrumentationFlag.version()) ? current : specialize();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Specialization specialize() {
+        // Read before the flags, so a flag changing concurrently is observed by a later invocation
+        long version = InstrumentationFlag.version();
+        boolean[] active = new boolean[handlers.length];
+        int activeCount = 0;
+        for (int i = 0; i < handlers.length; i++) {
+            active[i] = enablements[i] != Enablement.DISABLED
+                    && (enablements[i] != Enablement.FLAG || handlers[i].isEnabled());
+            activeCount += active[i] ? 1 : 0;
+        }
+
+        InvocationEventHandler<InvocationContext>[] activeHandlers = new InvocationEventHandler[activeCount];
+        boolean[] sharesContext = new boolean[activeCount];
+        boolean[] checksEnabled = new boolean[activeCount];
+        HandlerCircuitBreaker[] activeBreakers = new HandlerCircuitBreaker[activeCount];
+        int index = 0;
         for (int i = 0; i < handlers.length; i++) {
-            contexts[i] = handlePreInvocation(tryGetEnabledHandler(i), instance, method, args);
+            if (active[i]) {
+                activeHandlers[index] = handlers[i];
+                sharesContext[index] = allHandlers.sharesContext[i];
+                checksEnabled[index] = enablements[i] == Enablement.DYNAMIC;
+                activeBreakers[index] = breakers[i];
+                index++;
+            }
+        }
+
+        Specialization updated =
+                new Specialization(this, version, activeHandlers, sharesContext, checksEnabled, activeBreakers);
+        specialization = updated;
+        return updated;
+    }
+
+    @Override
+    public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+        Specialization current = currentSpecialization();
+        int handlerCount = current.handlers.length;
+        if (handlerCount == 0) {
+            return DisabledHandlerSentinel.INSTANCE;
+        } else if (handlerCount == 1 && !pooledContexts) {
+            return preInvocationSingle(current, instance, method, args);
+        }
+
+        // A single context captures the start time and arguments for all handlers supporting shared contexts, and
+        // records the specialization which created it so completion is delivered to the same handlers
+        InvocationContext context;
+        InvocationContext[] contexts;
+        if (pooledContexts) {
+            PooledInvocationContext pooledContext =
+                    PooledInvocationContext.acquire(clock.nanoTime(), instance, method, args, handlerCount);
+            pooledContext.attach(current);
+            contexts = pooledContext.getContexts();
+            context = pooledContext;
+        } else {
+            contexts = new InvocationContext[handlerCount];
+            context = new CompositeInvocationContext(clock.nanoTime(), instance, method, args, contexts, current);
+        }
+
+        HandlerOverheadSampler sampler = HandlerOverheadSampler.sample();
+        for (int i = 0; i < handlerCount; i++) {
+            InvocationEventHandler<InvocationContext> handler = current.tryGetEnabledHandler(i);
+            long startNanos = (sampler != null) ? System.nanoTime() : 0L;
+            contexts[i] = current.sharesContext[i]
+                    ? handleSharedPreInvocation(handler, current.breakers[i], context)
+                    : handlePreInvocation(handler, current.breakers[i], instance, method, args);
+            if (sampler != null && handler != null) {
+                sampler.record(handler, HandlerOverheadSampler.Phase.PRE, startNanos);
+            }
         }
 
-        return new CompositeInvocationContext(instance, method, args, contexts);
+        return context;
+    }
+
+    /**
+     * Collapses to the only enabled handler, holding its context in a single slot rather than an array, so completion
+     * is still delivered to the handler which observed the start if flags change while the invocation is in progress.
+     */
+    private InvocationContext preInvocationSingle(
+            Specialization current, Object instance, Method method, Object[] args) {
+        SingleInvocationContext context =
+                new SingleInvocationContext(clock.nanoTime(), instance, method, args, current);
+        InvocationEventHandler<InvocationContext> handler = current.tryGetEnabledHandler(0);
+        HandlerOverheadSampler sampler = HandlerOverheadSampler.sample();
+        long startNanos = (sampler != null) ? System.nanoTime() : 0L;
+        context.context = current.sharesContext[0]
+                ? handleSharedPreInvocation(handler, current.breakers[0], context)
+                : handlePreInvocation(handler, current.breakers[0], instance, method, args);
+        if (sampler != null && handler != null) {
+            sampler.record(handler, HandlerOverheadSampler.Phase.PRE, startNanos);
+        }
+        return context;
     }
 
     @Override
     public void onSuccess(@Nullable InvocationContext context, @Nullable Object result) {
         debugIfNullContext(context);
-        if (context != null) {
-            success(((CompositeInvocationContext) context).getContexts(), result);
+        if (context instanceof SingleInvocationContext && isOwnContext(context)) {
+            SingleInvocationContext singleContext = (SingleInvocationContext) context;
+            singleContext.complete(clock.nanoTime());
+            Specialization created = singleContext.specialization;
+            HandlerOverheadSampler sampler = HandlerOverheadSampler.sample();
+            long startNanos = (sampler != null) ? System.nanoTime() : 0L;
+            if (handleSuccess(created.handlers[0], created.breakers[0], singleContext.context, result)
+                    && sampler != null) {
+                sampler.record(created.handlers[0], HandlerOverheadSampler.Phase.POST, startNanos);
+            }
+        } else if (context instanceof PooledInvocationContext && isOwnContext(context)) {
+            PooledInvocationContext pooledContext = (PooledInvocationContext) context;
+            Specialization created = specializationOf(pooledContext);
+            InvocationContext[] contexts = pooledContext.getContexts();
+            pooledContext.complete(clock.nanoTime());
+            success(created, contexts, result);
+            pooledContext.release();
+        } else if (context instanceof CompositeInvocationContext && isOwnContext(context)) {
+            CompositeInvocationContext compositeContext = (CompositeInvocationContext) context;
+            compositeContext.complete(clock.nanoTime());
+            success(specializationOf(compositeContext), compositeContext.getContexts(), result);
         }
     }
 
-    private void success(@Nonnull InvocationContext[] contexts, @Nullable Object result) {
-        for (int i = contexts.length - 1; i > -1; i--) {
-            handleSuccess(handlers[i], contexts[i], result);
+    private static void success(
+            Specialization created, @Nonnull InvocationContext[] contexts, @Nullable Object result) {
+        HandlerOverheadSampler sampler = HandlerOverheadSampler.sample();
+        InvocationEventHandler<InvocationContext>[] handlers = created.handlers;
+        if (sampler != null) {
+            for (int i = handlers.length - 1; i > -1; i--) {
+                long startNanos = System.nanoTime();
+                if (handleSuccess(handlers[i], created.breakers[i], contexts[i], result)) {
+                    sampler.record(handlers[i], HandlerOverheadSampler.Phase.POST, startNanos);
+                }
+            }
+        } else {
+            for (int i = handlers.length - 1; i > -1; i--) {
+                handleSuccess(handlers[i], created.breakers[i], contexts[i], result);
+            }
         }
     }
 
     @Override
     public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
         debugIfNullContext(context);
-        if (context != null) {
-            failure(((CompositeInvocationContext) context).getContexts(), cause);
+        if (context instanceof SingleInvocationContext && isOwnContext(context)) {
+            SingleInvocationContext singleContext = (SingleInvocationContext) context;
+            singleContext.complete(clock.nanoTime());
+            Specialization created = singleContext.specialization;
+            HandlerOverheadSampler sampler = HandlerOverheadSampler.sample();
+            long startNanos = (sampler != null) ? System.nanoTime() : 0L;
+            if (handleFailure(created.handlers[0], created.breakers[0], singleContext.context, cause)
+                    && sampler != null) {
+                sampler.record(created.handlers[0], HandlerOverheadSampler.Phase.POST, startNanos);
+            }
+        } else if (context instanceof PooledInvocationContext && isOwnContext(context)) {
+            PooledInvocationContext pooledContext = (PooledInvocationContext) context;
+            Specialization created = specializationOf(pooledContext);
+            InvocationContext[] contexts = pooledContext.getContexts();
+            pooledContext.complete(clock.nanoTime());
+            failure(created, contexts, cause);
+            pooledContext.release();
+        } else if (context instanceof CompositeInvocationContext && isOwnContext(context)) {
+            CompositeInvocationContext compositeContext = (CompositeInvocationContext) context;
+            compositeContext.complete(clock.nanoTime());
+            failure(specializationOf(compositeContext), compositeContext.getContexts(), cause);
         }
     }
 
-    private void failure(InvocationContext[] contexts, @Nonnull Throwable cause) {
-        for (int i = contexts.length - 1; i > -1; i--) {
-            handleFailure(handlers[i], contexts[i], cause);
+    private static void failure(Specialization created, InvocationContext[] contexts, @Nonnull Throwable cause) {
+        HandlerOverheadSampler sampler = HandlerOverheadSampler.sample();
+        InvocationEventHandler<InvocationContext>[] handlers = created.handlers;
+        if (sampler != null) {
+            for (int i = handlers.length - 1; i > -1; i--) {
+                long startNanos = System.nanoTime();
+                if (handleFailure(handlers[i], created.breakers[i], contexts[i], cause)) {
+                    sampler.record(handlers[i], HandlerOverheadSampler.Phase.POST, startNanos);
+                }
+            }
+        } else {
+            for (int i = handlers.length - 1; i > -1; i--) {
+                handleFailure(handlers[i], created.breakers[i], contexts[i], cause);
+            }
         }
     }
 
+    /**
+     * Returns true if the composite context was created by this handler, or without a specialization, rather than by
+     * another composite handler.
+     */
+    private boolean isOwnContext(InvocationContext context) {
+        CompositeInvocationEventHandler owner = ownerOf(context);
+        return owner == null || owner == this;
+    }
+
+    private Specialization specializationOf(PooledInvocationContext context) {
+        Object created = context.getAttachment();
+        return (created != null) ? (Specialization) created : allHandlers;
+    }
+
+    private Specialization specializationOf(CompositeInvocationContext context) {
+        Specialization created = context.specialization;
+        return (created != null) ? created : allHandlers;
+    }
+
     @Nullable
     private static InvocationContext handlePreInvocation(
             @Nullable InvocationEventHandler<? extends InvocationContext> handler,
+            HandlerCircuitBreaker breaker,
             Object instance,
             Method method,
             Object[] args) {
@@ -113,7 +427,24 @@ public final class CompositeInvocationEventHandler extends AbstractInvocationEve
             }
             return DisabledHandlerSentinel.INSTANCE;
         } catch (RuntimeException e) {
-            preInvocationFailed(handler, instance, method, e);
+            preInvocationFailed(handler, breaker, instance, method, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static InvocationContext handleSharedPreInvocation(
+            @Nullable InvocationEventHandler<InvocationContext> handler,
+            HandlerCircuitBreaker breaker,
+            InvocationContext context) {
+        try {
+            if (handler != null) {
+                return ((SharedContextInvocationEventHandler<InvocationContext>) handler).preInvocation(context);
+            }
+            return DisabledHandlerSentinel.INSTANCE;
+        } catch (RuntimeException e) {
+            preInvocationFailed(handler, breaker, context.getInstance(), context.getMethod(), e);
             return null;
         }
     }
@@ -125,9 +456,13 @@ public final class CompositeInvocationEventHandler extends AbstractInvocationEve
 
     private static void preInvocationFailed(
             @Nullable InvocationEventHandler<? extends InvocationContext> handler,
+            HandlerCircuitBreaker breaker,
             @Nullable Object instance,
             Method method,
             @Nullable Exception exception) {
+        if (!breaker.recordFailure()) {
+            return;
+        }
         logger.warn(
                 "Exception handling preInvocation({}): invocation of {}.{} on {} threw",
                 UnsafeArg.of("handler", handler),
@@ -137,30 +472,49 @@ public final class CompositeInvocationEventHandler extends AbstractInvocationEve
                 exception);
     }
 
-    private static void handleSuccess(
-            InvocationEventHandler<?> handler, @Nullable InvocationContext context, @Nullable Object result) {
-        if (context != DisabledHandlerSentinel.INSTANCE) {
-            try {
-                handler.onSuccess(context, result);
-            } catch (RuntimeException exception) {
-                eventFailed("onSuccess", context, result, exception);
-            }
+    /** Returns true if the handler was invoked, false if it was disabled when the invocation started. */
+    private static boolean handleSuccess(
+            InvocationEventHandler<?> handler,
+            HandlerCircuitBreaker breaker,
+            @Nullable InvocationContext context,
+            @Nullable Object result) {
+        if (context == DisabledHandlerSentinel.INSTANCE) {
+            return false;
+        }
+        try {
+            handler.onSuccess(context, result);
+        } catch (RuntimeException exception) {
+            eventFailed("onSuccess", breaker, context, result, exception);
         }
+        return true;
     }
 
-    private static void handleFailure(
-            InvocationEventHandler<?> handler, @Nullable InvocationContext context, Throwable cause) {
-        if (context != DisabledHandlerSentinel.INSTANCE) {
-            try {
-                handler.onFailure(context, cause);
-            } catch (RuntimeException exception) {
-                eventFailed("onFailure", context, cause, exception);
-            }
+    /** Returns true if the handler was invoked, false if it was disabled when the invocation started. */
+    private static boolean handleFailure(
+            InvocationEventHandler<?> handler,
+            HandlerCircuitBreaker breaker,
+            @Nullable InvocationContext context,
+            Throwable cause) {
+        if (context == DisabledHandlerSentinel.INSTANCE) {
+            return false;
+        }
+        try {
+            handler.onFailure(context, cause);
+        } catch (RuntimeException exception) {
+            eventFailed("onFailure", breaker, context, cause, exception);
         }
+        return true;
     }
 
     private static void eventFailed(
-            String event, @Nullable InvocationContext context, @Nullable Object result, RuntimeException exception) {
+            String event,
+            HandlerCircuitBreaker breaker,
+            @Nullable InvocationContext context,
+            @Nullable Object result,
+            RuntimeException exception) {
+        if (!breaker.recordFailure()) {
+            return;
+        }
         logger.warn(
                 "Exception handling {}({}, {})",
                 SafeArg.of("event", event),
@@ -169,19 +523,143 @@ public final class CompositeInvocationEventHandler extends AbstractInvocationEve
                 exception);
     }
 
-    static class CompositeInvocationContext extends DefaultInvocationContext {
+    static class CompositeInvocationContext extends DefaultInvocationContext implements TimedInvocationContext {
 
         private final InvocationContext[] contexts;
 
+        @Nullable
+        private final Specialization specialization;
+
+        private boolean completed;
+        private long endTimeNanos;
+
         CompositeInvocationContext(
                 Object instance, Method method, @Nullable Object[] args, InvocationContext[] contexts) {
-            super(System.nanoTime(), instance, method, args);
+            this(System.nanoTime(), instance, method, args, contexts);
+        }
+
+        CompositeInvocationContext(
+                long startTimeNanos,
+                Object instance,
+                Method method,
+                @Nullable Object[] args,
+                InvocationContext[] contexts) {
+            this(startTimeNanos, instance, method, args, contexts, null);
+        }
+
+        private CompositeInvocationContext(
+                long startTimeNanos,
+                Object instance,
+                Method method,
+                @Nullable Object[] args,
+                InvocationContext[] contexts,
+                @Nullable Specialization specialization) {
+            super(startTimeNanos, instance, method, args, true);
             this.contexts = checkNotNull(contexts);
+            this.specialization = specialization;
         }
 
         InvocationContext[] getContexts() {
             return contexts;
         }
+
+        void complete(long nanos) {
+            endTimeNanos = nanos;
+            completed = true;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        @Override
+        public long getEndTimeNanos() {
+            return endTimeNanos;
+        }
+    }
+
+    /** Context of an invocation handled by a specialization containing a single handler. */
+    static final class SingleInvocationContext extends DefaultInvocationContext implements TimedInvocationContext {
+
+        private final Specialization specialization;
+
+        @Nullable
+        private InvocationContext context;
+
+        private boolean completed;
+        private long endTimeNanos;
+
+        private SingleInvocationContext(
+                long startTimeNanos,
+                Object instance,
+                Method method,
+                @Nullable Object[] args,
+                Specialization specialization) {
+            super(startTimeNanos, instance, method, args, true);
+            this.specialization = specialization;
+        }
+
+        void complete(long nanos) {
+            endTimeNanos = nanos;
+            completed = true;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        @Override
+        public long getEndTimeNanos() {
+            return endTimeNanos;
+        }
+    }
+
+    private enum Enablement {
+        /** Always enabled. */
+        ENABLED,
+        /** Never enabled. */
+        DISABLED,
+        /** Enabled by an instrumentation flag, evaluated when the flags change. */
+        FLAG,
+        /** Enabled by an arbitrary supplier, evaluated on each invocation. */
+        DYNAMIC
+    }
+
+    /** The handlers enabled as of an {@link InstrumentationFlag#version() instrumentation flag version}. */
+    private static final class Specialization {
+        private final CompositeInvocationEventHandler owner;
+        private final long version;
+        private final InvocationEventHandler<InvocationContext>[] handlers;
+        private final boolean[] sharesContext;
+        private final boolean[] checksEnabled;
+        private final HandlerCircuitBreaker[] breakers;
+
+        Specialization(
+                CompositeInvocationEventHandler owner,
+                long version,
+                InvocationEventHandler<InvocationContext>[] handlers,
+                boolean[] sharesContext,
+                boolean[] checksEnabled,
+                HandlerCircuitBreaker[] breakers) {
+            this.owner = owner;
+            this.version = version;
+            this.handlers = handlers;
+            this.sharesContext = sharesContext;
+            this.checksEnabled = checksEnabled;
+            this.breakers = breakers;
+        }
+
+        @Nullable
+        InvocationEventHandler<InvocationContext> tryGetEnabledHandler(int index) {
+            InvocationEventHandler<InvocationContext> handler = handlers[index];
+            // Handlers tripped off after repeated failures are skipped as if disabled
+            if ((!checksEnabled[index] || handler.isEnabled()) && breakers[index].allowsInvocation()) {
+                return handler;
+            }
+            return null;
+        }
     }
 
     // A sentinel value is used to differentiate null contexts returned by handlers from
@@ -28,17 +28,38 @@ public class DefaultInvocationContext implements InvocationContext {
     private final long startTimeNanos;
     private final Object instance;
     private final Method method;
+
+    /** Arguments copied on creation, or null if arguments are copied lazily. */
+    @Nullable
     private final Object[] args;
 
+    /** Arguments to copy on first access when arguments are copied lazily. */
+    @Nullable
+    private final Object[] originalArgs;
+
+    @Nullable
+    private volatile Object[] lazyArgs;
+
     protected DefaultInvocationContext(long startTimeNanos, Object instance, Method method, @Nullable Object[] args) {
+        this(startTimeNanos, instance, method, args, false);
+    }
+
+    /**
+     * Creates a context, copying the specified arguments either immediately or on first access of {@link #getArgs()}.
+     *
+     * @param copyArgsLazily true if arguments should only be copied when first accessed
+     */
+    protected DefaultInvocationContext(
+            long startTimeNanos, Object instance, Method method, @Nullable Object[] args, boolean copyArgsLazily) {
         this.startTimeNanos = startTimeNanos;
         this.instance = instance;
         this.method = method;
-        this.args = toNonNullClone(args);
+        this.args = copyArgsLazily ? null : toNonNullClone(args);
+        this.originalArgs = copyArgsLazily ? args : null;
     }
 
     private static Object[] toNonNullClone(@Nullable Object[] args) {
-        return args == null ? NO_ARGS : args.clone();
+        return (args == null || args.length == 0) ? NO_ARGS : args.clone();
     }
 
     public static InvocationContext of(Object instance, Method method, @Nullable Object[] args) {
@@ -46,6 +67,17 @@ public class DefaultInvocationContext implements InvocationContext {
                 System.nanoTime(), checkNotNull(instance, "instance"), checkNotNull(method, "method"), args);
     }
 
+    /**
+     * Returns a context which holds a reference to the specified arguments and only copies them on first access of
+     * {@link #getArgs()}, avoiding the copy entirely for handlers which never read arguments. The caller must not
+     * modify the argument array after creating the context, which holds for the arrays created by instrumentation for
+     * each invocation.
+     */
+    public static InvocationContext ofLazyArgs(Object instance, Method method, @Nullable Object[] args) {
+        return new DefaultInvocationContext(
+                System.nanoTime(), checkNotNull(instance, "instance"), checkNotNull(method, "method"), args, true);
+    }
+
     @Override
     public final long getStartTimeNanos() {
         return startTimeNanos;
@@ -63,7 +95,17 @@ public class DefaultInvocationContext implements InvocationContext {
 
     @Override
     public final Object[] getArgs() {
-        return args;
+        Object[] captured = args;
+        if (captured != null) {
+            return captured;
+        }
+        captured = lazyArgs;
+        if (captured == null) {
+            // Racing threads may each copy the arguments, which is harmless as the copies are equal
+            captured = toNonNullClone(originalArgs);
+            lazyArgs = captured;
+        }
+        return captured;
     }
 
     @Override
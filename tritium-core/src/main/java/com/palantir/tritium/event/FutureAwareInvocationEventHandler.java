@@ -0,0 +1,165 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.UnsafeArg;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Defers {@link InvocationEventHandler#onSuccess} of the delegate handler until a {@link CompletionStage} or
+ * {@link ListenableFuture} returned by the invocation completes, so handlers observe the full asynchronous duration of
+ * an invocation rather than the time taken to create the future. Futures which complete exceptionally are reported
+ * through {@link InvocationEventHandler#onFailure}.
+ *
+ * <p>Deferred events are delivered on the thread completing the future, so this must only wrap handlers which do not
+ * rely on thread local state between {@code preInvocation} and completion.
+ */
+public final class FutureAwareInvocationEventHandler<C extends InvocationContext>
+        implements InvocationEventHandler<C>, ArgumentsRequirement {
+
+    private static final Logger log = LoggerFactory.getLogger(FutureAwareInvocationEventHandler.class);
+
+    private final InvocationEventHandler<C> delegate;
+
+    private FutureAwareInvocationEventHandler(InvocationEventHandler<C> delegate) {
+        this.delegate = checkNotNull(delegate, "delegate");
+    }
+
+    /**
+     * Returns a handler which defers completion events of the specified handler until futures returned by the method
+     * complete, or the handler itself if the method does not return a future.
+     */
+    public static <C extends InvocationContext> InvocationEventHandler<C> bind(
+            InvocationEventHandler<C> handler, Method method) {
+        checkNotNull(handler, "handler");
+        checkNotNull(method, "method");
+        return isFuture(method.getReturnType()) ? new FutureAwareInvocationEventHandler<>(handler) : handler;
+    }
+
+    /** Returns the handler whose completion events are deferred. */
+    InvocationEventHandler<C> delegate() {
+        return delegate;
+    }
+
+    /** Returns true if completion of values of the specified type can be observed. */
+    public static boolean isFuture(Class<?> type) {
+        return CompletionStage.class.isAssignableFrom(type) || ListenableFuture.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return delegate.isEnabled();
+    }
+
+    @Override
+    public boolean requiresArguments() {
+        return ArgumentsRequirement.requiresArguments(delegate);
+    }
+
+    @Override
+    public C preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+        return delegate.preInvocation(instance, method, args);
+    }
+
+    @Override
+    @SuppressWarnings("FutureReturnValueIgnored") // the dependent stage is not used
+    public void onSuccess(@Nullable InvocationContext context, @Nullable Object result) {
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, throwable) -> {
+                if (throwable == null) {
+                    completeSuccessfully(context, value);
+                } else {
+                    completeExceptionally(context, unwrap(throwable));
+                }
+            });
+        } else if (result instanceof ListenableFuture) {
+            ListenableFuture<?> future = (ListenableFuture<?>) result;
+            future.addListener(() -> onFutureDone(context, future), MoreExecutors.directExecutor());
+        } else {
+            delegate.onSuccess(context, result);
+        }
+    }
+
+    @Override
+    public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+        delegate.onFailure(context, cause);
+    }
+
+    private void onFutureDone(@Nullable InvocationContext context, ListenableFuture<?> future) {
+        try {
+            completeSuccessfully(context, Futures.getDone(future));
+        } catch (ExecutionException e) {
+            completeExceptionally(context, e.getCause() == null ? e : e.getCause());
+        } catch (CancellationException e) {
+            completeExceptionally(context, e);
+        }
+    }
+
+    private void completeSuccessfully(@Nullable InvocationContext context, @Nullable Object value) {
+        try {
+            delegate.onSuccess(context, value);
+        } catch (RuntimeException | Error e) {
+            logCompletionFailure("onSuccess", context, e);
+        }
+    }
+
+    private void completeExceptionally(@Nullable InvocationContext context, Throwable cause) {
+        try {
+            delegate.onFailure(context, cause);
+        } catch (RuntimeException | Error e) {
+            logCompletionFailure("onFailure", context, e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        // Dependent stages wrap the original failure
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    private static void logCompletionFailure(String event, @Nullable InvocationContext context, Throwable failure) {
+        if (log.isWarnEnabled()) {
+            log.warn(
+                    "Failure occurred handling '{}' on future completion: {}",
+                    SafeArg.of("event", event),
+                    UnsafeArg.of("context", context),
+                    failure);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FutureAwareInvocationEventHandler{delegate=" + delegate + '}';
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.UnsafeArg;
+import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.api.event.MethodInstrumentationFilter;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runtime support for instrumentation classes generated at build time by the {@code tritium-processor} annotation
+ * processor. Generated classes delegate event handling to these methods, which mirror the behavior of runtime
+ * generated instrumentation. This class is not intended for direct use.
+ */
+public final class GeneratedInstrumentationSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(GeneratedInstrumentationSupport.class);
+
+    private GeneratedInstrumentationSupport() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the name of the class generated for the specified interface, which is placed in the same package and
+     * named {@code Instrumented} followed by the simple names of the interface and its enclosing types joined with
+     * underscores.
+     */
+    public static String generatedClassName(Class<?> interfaceClass) {
+        checkNotNull(interfaceClass, "interfaceClass");
+        StringBuilder simpleNames = new StringBuilder(interfaceClass.getSimpleName());
+        for (Class<?> enclosing = interfaceClass.getEnclosingClass();
+                enclosing != null;
+                enclosing = enclosing.getEnclosingClass()) {
+            simpleNames.insert(0, '_').insert(0, enclosing.getSimpleName());
+        }
+        Package pkg = interfaceClass.getPackage();
+        String packagePrefix = (pkg == null || pkg.getName().isEmpty()) ? "" : pkg.getName() + '.';
+        return packagePrefix + "Instrumented" + simpleNames;
+    }
+
+    public static Method method(Class<?> interfaceClass, String name, Class<?>... parameterTypes) {
+        try {
+            return interfaceClass.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new SafeIllegalStateException(
+                    "Generated instrumentation does not match interface",
+                    e,
+                    SafeArg.of("interface", interfaceClass),
+                    SafeArg.of("method", name));
+        }
+    }
+
+    /** Binds the event handler to each method, see {@link MethodBindingInvocationEventHandler}. */
+    public static InvocationEventHandler<?>[] bind(
+            InvocationEventHandler<InvocationContext> handler, Method[] methods) {
+        return bind(handler, InstrumentationFilters.INSTRUMENT_ALL, methods);
+    }
+
+    /**
+     * Binds the event handler to each method, see {@link MethodBindingInvocationEventHandler}. Methods excluded by a
+     * {@link MethodInstrumentationFilter} are bound to a disabled handler, and the sampler of each method is bound for
+     * a {@link SamplingInstrumentationFilter}.
+     */
+    public static InvocationEventHandler<?>[] bind(
+            InvocationEventHandler<InvocationContext> handler, InstrumentationFilter filter, Method[] methods) {
+        checkNotNull(handler, "handler");
+        checkNotNull(filter, "filter");
+        InvocationEventHandler<InvocationContext> filteredHandler = (filter instanceof SamplingInstrumentationFilter)
+                ? ((SamplingInstrumentationFilter) filter).sample(handler)
+                : handler;
+        InvocationEventHandler<?>[] boundHandlers = new InvocationEventHandler<?>[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            boundHandlers[i] = MethodInstrumentationFilter.shouldInstrumentMethod(filter, methods[i])
+                    ? MethodBindingInvocationEventHandler.bind(filteredHandler, methods[i])
+                    : NoOpInvocationEventHandler.INSTANCE;
+        }
+        return boundHandlers;
+    }
+
+    /**
+     * Returns the filter to evaluate on each invocation. {@link MethodInstrumentationFilter} decisions and
+     * {@link SamplingInstrumentationFilter} samplers are resolved by
+     * {@link #bind(InvocationEventHandler, InstrumentationFilter, Method[])} so need not be evaluated per invocation.
+     */
+    public static InstrumentationFilter invocationFilter(InstrumentationFilter filter) {
+        checkNotNull(filter, "filter");
+        return (filter instanceof MethodInstrumentationFilter || filter instanceof SamplingInstrumentationFilter)
+                ? InstrumentationFilters.INSTRUMENT_ALL
+                : filter;
+    }
+
+    public static boolean requiresArguments(InvocationEventHandler<?> handler, InstrumentationFilter filter) {
+        return ArgumentsRequirement.requiresArguments(handler) || ArgumentsRequirement.requiresArguments(filter);
+    }
+
+    /**
+     * Returns the circuit breaker shared by all methods instrumented with the handler, which should be resolved once
+     * from the unbound handler when the instrumentation is created rather than on each invocation.
+     */
+    public static HandlerCircuitBreaker circuitBreaker(InvocationEventHandler<?> handler) {
+        return HandlerCircuitBreaker.of(handler);
+    }
+
+    /**
+     * Invokes {@link InvocationEventHandler#preInvocation} if the handler is enabled, has not been tripped off by its
+     * {@link HandlerCircuitBreaker} and the filter allows instrumentation, returning a sentinel context otherwise.
+     */
+    @Nullable
+    public static InvocationContext preInvocation(
+            InvocationEventHandler<?> handler,
+            HandlerCircuitBreaker breaker,
+            InstrumentationFilter filter,
+            Object instance,
+            Method method,
+            Object[] args) {
+        try {
+            if (handler.isEnabled() && breaker.allowsInvocation() && filter.shouldInstrument(instance, method, args)) {
+                return handler.preInvocation(instance, method, args);
+            }
+            return DisabledHandlerSentinel.INSTANCE;
+        } catch (RuntimeException | Error t) {
+            if (breaker.recordFailure() && log.isWarnEnabled()) {
+                log.warn(
+                        "Failure occurred handling 'preInvocation' invocation on: {}",
+                        UnsafeArg.of("instance", Objects.toString(instance)),
+                        t);
+            }
+            return null;
+        }
+    }
+
+    public static void onSuccess(
+            InvocationEventHandler<?> handler,
+            HandlerCircuitBreaker breaker,
+            @Nullable InvocationContext context,
+            @Nullable Object result) {
+        if (context != DisabledHandlerSentinel.INSTANCE) {
+            try {
+                handler.onSuccess(context, result);
+            } catch (RuntimeException | Error t) {
+                postInvocationFailed(breaker, context, result, t);
+            }
+        }
+    }
+
+    public static void onFailure(
+            InvocationEventHandler<?> handler,
+            HandlerCircuitBreaker breaker,
+            @Nullable InvocationContext context,
+            Throwable cause) {
+        if (context != DisabledHandlerSentinel.INSTANCE) {
+            try {
+                handler.onFailure(context, cause);
+            } catch (RuntimeException | Error t) {
+                postInvocationFailed(breaker, context, cause, t);
+            }
+        }
+    }
+
+    private static void postInvocationFailed(
+            HandlerCircuitBreaker breaker,
+            @Nullable InvocationContext context,
+            @Nullable Object value,
+            Throwable failure) {
+        if (breaker.recordFailure() && log.isWarnEnabled()) {
+            log.warn(
+                    "Failure occurred handling post-invocation: {}, {}",
+                    UnsafeArg.of("context", context),
+                    SafeArg.of("result", value == null ? "null" : value.getClass().getSimpleName()),
+                    failure);
+        }
+    }
+
+    // A sentinel value is used to differentiate null contexts returned by handlers from
+    // invocations on disabled handlers.
+    private enum DisabledHandlerSentinel implements InvocationContext {
+        INSTANCE;
+
+        @Override
+        public long getStartTimeNanos() {
+            throw fail();
+        }
+
+        @Nullable
+        @Override
+        public Object getInstance() {
+            throw fail();
+        }
+
+        @Override
+        public Method getMethod() {
+            throw fail();
+        }
+
+        @Override
+        public Object[] getArgs() {
+            throw fail();
+        }
+
+        private static RuntimeException fail() {
+            throw new UnsupportedOperationException("methods should not be invoked");
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.MapMaker;
+import com.palantir.logsafe.SafeArg;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks exceptions thrown by an {@link InvocationEventHandler}, so that a handler failing on every invocation of a
+ * hot method neither floods the logs nor degrades throughput.
+ *
+ * <p>Callers invoking a handler check {@link #allowsInvocation()} before invoking it, and report each exception it
+ * throws to {@link #recordFailure()}, which returns whether the exception should be logged. At most one failure per
+ * handler is logged every ten seconds. When a handler fails more than {@code instrument.handler-failure-threshold}
+ * times (default 100) within a second, it is tripped off for {@code instrument.handler-failure-backoff-millis}
+ * milliseconds (default 30000), after which it is invoked again. A threshold of zero disables tripping.
+ *
+ * <p>Failures and trips are also counted per handler name, the name used to tag {@code tritium.handler.overhead},
+ * see {@link #addHandlerListener(Consumer)}.
+ */
+public final class HandlerCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(HandlerCircuitBreaker.class);
+    private static final String FAILURE_THRESHOLD_PROPERTY = "handler-failure-threshold";
+    private static final String BACKOFF_PROPERTY = "handler-failure-backoff-millis";
+    private static final long DEFAULT_FAILURE_THRESHOLD = 100;
+    private static final long DEFAULT_BACKOFF_MILLIS = 30_000;
+    private static final long LOG_INTERVAL_SECONDS = 10;
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long CLOSED = 0;
+
+    // Weak identity keys, so breakers are shared by all callers of a handler and released with it
+    private static final ConcurrentMap<InvocationEventHandler<?>, HandlerCircuitBreaker> breakers =
+            new MapMaker().weakKeys().makeMap();
+    private static final LongAdder totalFailures = new LongAdder();
+    private static final LongAdder totalTrips = new LongAdder();
+    private static final ConcurrentMap<String, HandlerFailures> failuresByHandler = new ConcurrentHashMap<>();
+
+    // Guarded by the class, as is the creation of per handler counts, so each listener observes each handler once
+    private static final List<Consumer<String>> handlerListeners = new ArrayList<>();
+
+    private final String handlerClass;
+    private final HandlerFailures handlerFailures;
+    private final long failureThreshold;
+    private final long backoffNanos;
+    private final Ticker ticker;
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong windowStartNanos;
+    private final AtomicLong windowFailures = new AtomicLong();
+    private final AtomicLong nextLogNanos;
+    private final AtomicLong suppressedLogs = new AtomicLong();
+    private final AtomicLong trippedUntilNanos = new AtomicLong(CLOSED);
+
+    @VisibleForTesting
+    HandlerCircuitBreaker(String handlerClass, long failureThreshold, long backoffMillis, Ticker ticker) {
+        this(handlerClass, handlerClass, failureThreshold, backoffMillis, ticker);
+    }
+
+    private HandlerCircuitBreaker(
+            String handlerClass, String handlerName, long failureThreshold, long backoffMillis, Ticker ticker) {
+        checkArgument(
+                failureThreshold >= 0,
+                "Failure threshold must not be negative",
+                SafeArg.of("failureThreshold", failureThreshold));
+        checkArgument(backoffMillis > 0, "Backoff must be positive", SafeArg.of("backoffMillis", backoffMillis));
+        this.handlerClass = checkNotNull(handlerClass, "handlerClass");
+        this.handlerFailures = handlerFailures(checkNotNull(handlerName, "handlerName"));
+        this.failureThreshold = failureThreshold;
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        this.ticker = checkNotNull(ticker, "ticker");
+        long now = ticker.read();
+        this.windowStartNanos = new AtomicLong(now);
+        this.nextLogNanos = new AtomicLong(now);
+    }
+
+    /** Returns the circuit breaker of the specified handler, shared by all callers of the handler. */
+    public static HandlerCircuitBreaker of(InvocationEventHandler<?> handler) {
+        checkNotNull(handler, "handler");
+        HandlerCircuitBreaker breaker = breakers.get(handler);
+        if (breaker != null) {
+            return breaker;
+        }
+        return breakers.computeIfAbsent(handler, key -> new HandlerCircuitBreaker(
+                key.getClass().getName(),
+                HandlerOverheadSampler.handlerName(key.getClass()),
+                Math.max(0, InstrumentationProperties.getSpecificLong(
+                        FAILURE_THRESHOLD_PROPERTY, DEFAULT_FAILURE_THRESHOLD)),
+                positiveOrDefault(InstrumentationProperties.getSpecificLong(BACKOFF_PROPERTY, DEFAULT_BACKOFF_MILLIS)),
+                Ticker.systemTicker()));
+    }
+
+    private static long positiveOrDefault(long backoffMillis) {
+        return backoffMillis > 0 ? backoffMillis : DEFAULT_BACKOFF_MILLIS;
+    }
+
+    /** Returns the total number of exceptions thrown by all handlers. */
+    public static long totalFailures() {
+        return totalFailures.sum();
+    }
+
+    /** Returns the total number of times handlers have been tripped off. */
+    public static long totalTrips() {
+        return totalTrips.sum();
+    }
+
+    /** Returns the number of exceptions thrown by handlers with the specified name. */
+    public static long failures(String handlerName) {
+        HandlerFailures counts = failuresByHandler.get(handlerName);
+        return (counts == null) ? 0 : counts.failures.sum();
+    }
+
+    /** Returns the number of times handlers with the specified name have been tripped off. */
+    public static long trips(String handlerName) {
+        HandlerFailures counts = failuresByHandler.get(handlerName);
+        return (counts == null) ? 0 : counts.trips.sum();
+    }
+
+    /**
+     * Invokes the listener with the name of each handler whose failures are counted, once per name, including names
+     * counted before the listener was added.
+     */
+    public static synchronized void addHandlerListener(Consumer<String> listener) {
+        checkNotNull(listener, "listener");
+        handlerListeners.add(listener);
+        failuresByHandler.keySet().forEach(listener);
+    }
+
+    private static HandlerFailures handlerFailures(String handlerName) {
+        HandlerFailures counts = failuresByHandler.get(handlerName);
+        return (counts != null) ? counts : newHandlerFailures(handlerName);
+    }
+
+    private static synchronized HandlerFailures newHandlerFailures(String handlerName) {
+        HandlerFailures counts = failuresByHandler.get(handlerName);
+        if (counts == null) {
+            counts = new HandlerFailures();
+            failuresByHandler.put(handlerName, counts);
+            for (Consumer<String> listener : handlerListeners) {
+                listener.accept(handlerName);
+            }
+        }
+        return counts;
+    }
+
+    /** Returns the number of exceptions thrown by this handler. */
+    public long failures() {
+        return failures.sum();
+    }
+
+    /** Returns false while the handler is tripped off, in which case it must not be invoked. */
+    public boolean allowsInvocation() {
+        long trippedUntil = trippedUntilNanos.get();
+        return trippedUntil == CLOSED || reset(trippedUntil);
+    }
+
+    private boolean reset(long trippedUntil) {
+        long now = ticker.read();
+        if (now - trippedUntil < 0) {
+            return false;
+        }
+        if (trippedUntilNanos.compareAndSet(trippedUntil, CLOSED)) {
+            windowStartNanos.set(now);
+            windowFailures.set(0);
+            log.info("Re-enabling event handler {} after backoff", SafeArg.of("handlerClass", handlerClass));
+        }
+        return true;
+    }
+
+    /**
+     * Records an exception thrown by the handler, tripping it off if it has exceeded the failure threshold.
+     *
+     * @return true if the exception should be logged, false if logging is currently rate limited
+     */
+    public boolean recordFailure() {
+        failures.increment();
+        handlerFailures.failures.increment();
+        totalFailures.increment();
+        long now = ticker.read();
+
+        long windowStart = windowStartNanos.get();
+        if (now - windowStart >= WINDOW_NANOS && windowStartNanos.compareAndSet(windowStart, now)) {
+            windowFailures.set(0);
+        }
+        if (windowFailures.incrementAndGet() > failureThreshold && failureThreshold > 0) {
+            trip(now);
+        }
+
+        long nextLog = nextLogNanos.get();
+        if (now - nextLog >= 0
+                && nextLogNanos.compareAndSet(nextLog, now + TimeUnit.SECONDS.toNanos(LOG_INTERVAL_SECONDS))) {
+            long suppressed = suppressedLogs.getAndSet(0);
+            if (suppressed > 0) {
+                log.warn(
+                        "Suppressed logging of {} exceptions thrown by event handler {}",
+                        SafeArg.of("suppressed", suppressed),
+                        SafeArg.of("handlerClass", handlerClass));
+            }
+            return true;
+        }
+        suppressedLogs.incrementAndGet();
+        return false;
+    }
+
+    private void trip(long now) {
+        // Avoid the zero sentinel, which marks the breaker as closed
+        long trippedUntil = (now + backoffNanos == CLOSED) ? 1 : now + backoffNanos;
+        if (trippedUntilNanos.compareAndSet(CLOSED, trippedUntil)) {
+            handlerFailures.trips.increment();
+            totalTrips.increment();
+            log.warn(
+                    "Disabling event handler {} for {} milliseconds after more than {} exceptions within a second",
+                    SafeArg.of("handlerClass", handlerClass),
+                    SafeArg.of("backoffMillis", TimeUnit.NANOSECONDS.toMillis(backoffNanos)),
+                    SafeArg.of("failureThreshold", failureThreshold));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HandlerCircuitBreaker{handlerClass=" + handlerClass + ", failures=" + failures() + '}';
+    }
+
+    private static final class HandlerFailures {
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder trips = new LongAdder();
+    }
+}
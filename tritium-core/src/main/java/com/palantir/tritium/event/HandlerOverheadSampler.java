@@ -0,0 +1,152 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.palantir.logsafe.SafeArg;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the time spent inside event handlers for a random sample of invocations, quantifying the overhead of
+ * instrumentation under real load.
+ *
+ * <p>Sampling is disabled until {@link #enable(int, Recorder)} is called. While disabled, callers only pay for a single
+ * volatile read per invocation. While enabled, invocations which are not sampled additionally pay for a thread local
+ * random number, and sampled invocations time each handler's {@code preInvocation} and {@code onSuccess} or
+ * {@code onFailure} call individually. The pre and post invocation phases are sampled independently.
+ */
+public final class HandlerOverheadSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(HandlerOverheadSampler.class);
+
+    private static final ClassValue<String> handlerNames = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return handlerName(type);
+        }
+    };
+
+    @Nullable
+    private static volatile HandlerOverheadSampler active;
+
+    private final int sampleInterval;
+    private final Recorder recorder;
+
+    private HandlerOverheadSampler(int sampleInterval, Recorder recorder) {
+        this.sampleInterval = sampleInterval;
+        this.recorder = recorder;
+    }
+
+    /** Phases of handler processing which are measured. */
+    public enum Phase {
+        /** {@link InvocationEventHandler#preInvocation}. */
+        PRE("pre"),
+        /** {@link InvocationEventHandler#onSuccess} or {@link InvocationEventHandler#onFailure}. */
+        POST("post");
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+
+        /** Returns the name of the phase, suitable for use as a metric tag. */
+        public String tag() {
+            return tag;
+        }
+    }
+
+    /** Receives the sampled time spent by handlers. */
+    public interface Recorder {
+        /**
+         * Records the time spent by a handler.
+         *
+         * @param handler simple name of the handler class, or of the enclosing handler class for nested handlers;
+         *     future aware wrappers are attributed to the handler they wrap
+         * @param phase phase of the measured handler call
+         * @param nanos time spent by the handler in nanoseconds
+         */
+        void record(String handler, Phase phase, long nanos);
+    }
+
+    /**
+     * Starts measuring one in every {@code sampleInterval} invocations of all instrumented handlers, replacing any
+     * previously enabled recorder.
+     */
+    public static void enable(int sampleInterval, Recorder recorder) {
+        checkArgument(
+                sampleInterval >= 1,
+                "Sample interval must be positive",
+                SafeArg.of("sampleInterval", sampleInterval));
+        active = new HandlerOverheadSampler(sampleInterval, checkNotNull(recorder, "recorder"));
+    }
+
+    /** Stops measuring handlers. */
+    public static void disable() {
+        active = null;
+    }
+
+    /** Returns the sampler if the current invocation phase should be measured, otherwise null. */
+    @Nullable
+    public static HandlerOverheadSampler sample() {
+        HandlerOverheadSampler sampler = active;
+        if (sampler == null
+                || (sampler.sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampler.sampleInterval) != 0)) {
+            return null;
+        }
+        return sampler;
+    }
+
+    /** Records the time since {@code startNanos}, as read from {@link System#nanoTime()}, spent by the handler. */
+    public void record(InvocationEventHandler<?> handler, Phase phase, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        try {
+            recorder.record(handlerNames.get(unwrap(handler).getClass()), phase, nanos);
+        } catch (RuntimeException e) {
+            log.debug("Failed to record handler overhead", SafeArg.of("phase", phase), e);
+        }
+    }
+
+    /** Handlers bound to methods returning futures are wrapped, and are attributed to the handler they wrap. */
+    private static InvocationEventHandler<?> unwrap(InvocationEventHandler<?> handler) {
+        InvocationEventHandler<?> unwrapped = handler;
+        while (unwrapped instanceof FutureAwareInvocationEventHandler) {
+            unwrapped = ((FutureAwareInvocationEventHandler<?>) unwrapped).delegate();
+        }
+        return unwrapped;
+    }
+
+    /**
+     * Handlers bound to a method are typically nested in the class of the handler they were bound from, and are
+     * attributed to it.
+     */
+    static String handlerName(Class<?> handlerClass) {
+        Class<?> type = handlerClass;
+        Class<?> enclosingClass = type.getEnclosingClass();
+        while (enclosingClass != null && InvocationEventHandler.class.isAssignableFrom(enclosingClass)) {
+            type = enclosingClass;
+            enclosingClass = type.getEnclosingClass();
+        }
+        String simpleName = type.getSimpleName();
+        return simpleName.isEmpty() ? type.getName() : simpleName;
+    }
+}
@@ -16,11 +16,12 @@
 
 package com.palantir.tritium.event;
 
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import com.palantir.tritium.api.event.InstrumentationFilter;
 import java.lang.reflect.Method;
 import javax.annotation.Nonnull;
 
-public enum InstrumentationFilters implements InstrumentationFilter {
+public enum InstrumentationFilters implements InstrumentationFilter, ArgumentsRequirement {
 
     /** Instrument all invocations. */
     INSTRUMENT_ALL {
@@ -38,9 +39,14 @@ public enum InstrumentationFilters implements InstrumentationFilter {
         }
     };
 
+    @Override
+    public boolean requiresArguments() {
+        return false;
+    }
+
     @SuppressWarnings("FunctionalInterfaceClash")
     public static InstrumentationFilter from(java.util.function.BooleanSupplier isEnabledSupplier) {
-        return (instance, method, args) -> isEnabledSupplier.getAsBoolean();
+        return new BooleanSupplierInstrumentationFilter(isEnabledSupplier);
     }
 
     /**
@@ -53,4 +59,47 @@ public enum InstrumentationFilters implements InstrumentationFilter {
     public static InstrumentationFilter from(com.palantir.tritium.api.functions.BooleanSupplier isEnabledSupplier) {
         return from((java.util.function.BooleanSupplier) isEnabledSupplier);
     }
+
+    /**
+     * Returns a filter instrumenting a random sample of one in every {@code interval} invocations of each method.
+     * Handlers only observe sampled invocations, so counts and rates they record are sampled, see
+     * {@link SamplingInstrumentationFilter}.
+     *
+     * @param interval number of invocations per instrumented invocation, at least one
+     */
+    public static SamplingInstrumentationFilter sampling(int interval) {
+        return SamplingInstrumentationFilter.fixed(interval);
+    }
+
+    /**
+     * Returns a filter instrumenting a random sample of invocations of each method, adjusting the sampling interval of
+     * each method to instrument approximately {@code targetSamplesPerSecond} invocations per second. Handlers only
+     * observe sampled invocations, so counts and rates they record are sampled, see
+     * {@link SamplingInstrumentationFilter}.
+     *
+     * @param targetSamplesPerSecond number of invocations of each method to instrument per second
+     */
+    public static SamplingInstrumentationFilter adaptiveSampling(double targetSamplesPerSecond) {
+        return SamplingInstrumentationFilter.adaptive(targetSamplesPerSecond);
+    }
+
+    private static final class BooleanSupplierInstrumentationFilter
+            implements InstrumentationFilter, ArgumentsRequirement {
+
+        private final java.util.function.BooleanSupplier isEnabledSupplier;
+
+        BooleanSupplierInstrumentationFilter(java.util.function.BooleanSupplier isEnabledSupplier) {
+            this.isEnabledSupplier = isEnabledSupplier;
+        }
+
+        @Override
+        public boolean shouldInstrument(@Nonnull Object _instance, @Nonnull Method _method, @Nonnull Object[] _args) {
+            return isEnabledSupplier.getAsBoolean();
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return false;
+        }
+    }
 }
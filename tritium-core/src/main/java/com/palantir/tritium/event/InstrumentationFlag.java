@@ -0,0 +1,94 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import com.palantir.tritium.api.functions.BooleanSupplier;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live instrumentation enable flag, updated when the instrumentation properties change rather than captured once.
+ *
+ * <p>The global flag is a constant {@link MutableCallSite} reachable from a static final field, so once
+ * {@link #getAsBoolean()} is inlined the JIT folds it to a constant, and handlers disabled globally are eliminated from
+ * compiled code. Changing it invalidates dependent compiled code immediately. The per-name flag is read from a
+ * volatile field as handler instances are not constants to the JIT.
+ *
+ * <p>Every change to any flag increments a global {@link #version()}, allowing callers which specialize on the state of
+ * flags to detect changes with a single volatile read rather than reading each flag.
+ */
+final class InstrumentationFlag implements BooleanSupplier {
+
+    private static final MutableCallSite GLOBALLY_ENABLED_SITE = new MutableCallSite(constant(true));
+    private static final MethodHandle GLOBALLY_ENABLED = GLOBALLY_ENABLED_SITE.dynamicInvoker();
+    private static final AtomicLong version = new AtomicLong();
+    private static volatile boolean globallyEnabled = true;
+
+    private volatile boolean enabled;
+
+    InstrumentationFlag(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+        return isGloballyEnabled() && enabled;
+    }
+
+    void setEnabled(boolean value) {
+        if (enabled != value) {
+            this.enabled = value;
+            // Incremented after the value is changed, so readers observing the new version observe the new value
+            version.incrementAndGet();
+        }
+    }
+
+    /** Returns a version which changes whenever any flag changes. */
+    static long version() {
+        return version.get();
+    }
+
+    static boolean isGloballyEnabled() {
+        try {
+            return (boolean) GLOBALLY_ENABLED.invokeExact();
+        } catch (Throwable t) {
+            throw new SafeIllegalStateException("Failed to read instrumentation flag", t);
+        }
+    }
+
+    static synchronized void setGloballyEnabled(boolean value) {
+        // Only relink when the value changes, as relinking deoptimizes all dependent compiled code
+        if (globallyEnabled != value) {
+            globallyEnabled = value;
+            GLOBALLY_ENABLED_SITE.setTarget(constant(value));
+            MutableCallSite.syncAll(new MutableCallSite[] {GLOBALLY_ENABLED_SITE});
+            version.incrementAndGet();
+        }
+    }
+
+    private static MethodHandle constant(boolean value) {
+        return MethodHandles.constant(boolean.class, value);
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentationFlag{enabled=" + getAsBoolean() + '}';
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Protects throughput from instrumentation of very cheap methods. Handlers governed by
+ * {@link #govern(InvocationEventHandler)} measure the time spent in event handlers relative to the duration of the
+ * instrumented method over a window of invocations of each method. Methods whose instrumentation overhead exceeds the
+ * maximum ratio are demoted, after which only a sample of their invocations, or none, are instrumented.
+ *
+ * <p>The first window of each method is a warmup whose measurements are discarded, as it typically runs before the
+ * method and handlers are compiled. Each verdict is re-evaluated periodically by measuring another window, so demoted
+ * methods are promoted back once their overhead falls below the maximum ratio, for example after compilation. Demoted
+ * methods may be exported with {@code MetricRegistries.registerGovernor}.
+ *
+ * <p>Measurements are taken per method bound by {@link MethodBindingInvocationEventHandler}, which all Tritium
+ * instrumentation does. A governor may be shared between instrumented instances, in which case their measurements of
+ * the same method are combined.
+ */
+public final class InstrumentationGovernor {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentationGovernor.class);
+    private static final int DEFAULT_EVALUATION_INVOCATIONS = 1000;
+    private static final long DEFAULT_REEVALUATION_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /** Invocations check whether re-evaluation is due with this probability, avoiding a clock read per invocation. */
+    private static final int REEVALUATION_CHECK_INTERVAL = 1024;
+
+    private final double maxOverheadRatio;
+    private final int demotedSampleInterval;
+    private final int evaluationInvocations;
+    private final long reevaluationNanos;
+    private final Ticker ticker;
+    private final ConcurrentMap<Method, MethodGovernor> methods = new ConcurrentHashMap<>();
+
+    // Guarded by this, as is the creation of method governors, so each listener observes each method once
+    private final List<Consumer<Method>> listeners = new ArrayList<>();
+
+    @VisibleForTesting
+    InstrumentationGovernor(
+            double maxOverheadRatio,
+            int demotedSampleInterval,
+            int evaluationInvocations,
+            long reevaluationNanos,
+            Ticker ticker) {
+        checkArgument(
+                maxOverheadRatio > 0,
+                "Maximum overhead ratio must be positive",
+                SafeArg.of("maxOverheadRatio", maxOverheadRatio));
+        checkArgument(
+                demotedSampleInterval >= 0,
+                "Demoted sample interval must not be negative",
+                SafeArg.of("demotedSampleInterval", demotedSampleInterval));
+        checkArgument(
+                evaluationInvocations > 0,
+                "Evaluation invocations must be positive",
+                SafeArg.of("evaluationInvocations", evaluationInvocations));
+        checkArgument(
+                reevaluationNanos > 0,
+                "Re-evaluation interval must be positive",
+                SafeArg.of("reevaluationNanos", reevaluationNanos));
+        this.maxOverheadRatio = maxOverheadRatio;
+        this.demotedSampleInterval = demotedSampleInterval;
+        this.evaluationInvocations = evaluationInvocations;
+        this.reevaluationNanos = reevaluationNanos;
+        this.ticker = checkNotNull(ticker, "ticker");
+    }
+
+    /**
+     * Creates a governor which stops instrumenting methods whose handlers take longer than {@code maxOverheadRatio}
+     * times the duration of the method itself.
+     */
+    public static InstrumentationGovernor disabling(double maxOverheadRatio) {
+        return new InstrumentationGovernor(
+                maxOverheadRatio, 0, DEFAULT_EVALUATION_INVOCATIONS, DEFAULT_REEVALUATION_NANOS, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a governor which instruments one in every {@code sampleInterval} invocations of methods whose handlers
+     * take longer than {@code maxOverheadRatio} times the duration of the method itself.
+     */
+    public static InstrumentationGovernor sampling(double maxOverheadRatio, int sampleInterval) {
+        checkArgument(sampleInterval > 0, "Sample interval must be positive", SafeArg.of("interval", sampleInterval));
+        return new InstrumentationGovernor(
+                maxOverheadRatio,
+                sampleInterval,
+                DEFAULT_EVALUATION_INVOCATIONS,
+                DEFAULT_REEVALUATION_NANOS,
+                Ticker.systemTicker());
+    }
+
+    /** Returns a handler which delegates to the specified handler subject to this governor. */
+    public InvocationEventHandler<InvocationContext> govern(InvocationEventHandler<InvocationContext> handler) {
+        return new GovernedInvocationEventHandler(checkNotNull(handler, "handler"));
+    }
+
+    /** Returns the methods which have been demoted due to excessive instrumentation overhead. */
+    public Set<Method> demotedMethods() {
+        return methods.values().stream()
+                .filter(MethodGovernor::isDemoted)
+                .map(governor -> governor.method)
+                .collect(ImmutableSet.toImmutableSet());
+    }
+
+    /** Returns true if the method is currently demoted due to excessive instrumentation overhead. */
+    public boolean isDemoted(Method method) {
+        MethodGovernor governor = methods.get(checkNotNull(method, "method"));
+        return governor != null && governor.isDemoted();
+    }
+
+    /**
+     * Invokes the listener with each method governed by this governor, once per method, including methods governed
+     * before the listener was added.
+     */
+    public synchronized void addMethodListener(Consumer<Method> listener) {
+        checkNotNull(listener, "listener");
+        listeners.add(listener);
+        methods.keySet().forEach(listener);
+    }
+
+    private MethodGovernor methodGovernor(Method method) {
+        MethodGovernor governor = methods.get(method);
+        return (governor != null) ? governor : newMethodGovernor(method);
+    }
+
+    private synchronized MethodGovernor newMethodGovernor(Method method) {
+        MethodGovernor governor = methods.get(method);
+        if (governor == null) {
+            governor = new MethodGovernor(method);
+            methods.put(method, governor);
+            for (Consumer<Method> listener : listeners) {
+                listener.accept(method);
+            }
+        }
+        return governor;
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentationGovernor{maxOverheadRatio=" + maxOverheadRatio + ", demotedSampleInterval="
+                + demotedSampleInterval + '}';
+    }
+
+    private enum State {
+        EVALUATING,
+        INSTRUMENTED,
+        DEMOTED
+    }
+
+    private final class MethodGovernor {
+        private final Method method;
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong overheadNanos = new AtomicLong();
+        private final AtomicLong durationNanos = new AtomicLong();
+        private volatile State state = State.EVALUATING;
+        private volatile long nextEvaluationNanos;
+
+        // Guarded by this, the outcome of the last evaluation
+        private State verdict = State.EVALUATING;
+        private boolean warmedUp;
+
+        MethodGovernor(Method method) {
+            this.method = method;
+        }
+
+        boolean isDemoted() {
+            return state == State.DEMOTED;
+        }
+
+        boolean isEvaluating() {
+            return state == State.EVALUATING;
+        }
+
+        boolean shouldInstrument() {
+            State current = state;
+            if (current == State.EVALUATING) {
+                return true;
+            }
+            if (isReevaluationDue()) {
+                startEvaluation();
+                return true;
+            }
+            return current == State.INSTRUMENTED
+                    || (demotedSampleInterval > 0 && ThreadLocalRandom.current().nextInt(demotedSampleInterval) == 0);
+        }
+
+        private boolean isReevaluationDue() {
+            return ThreadLocalRandom.current().nextInt(REEVALUATION_CHECK_INTERVAL) == 0
+                    && ticker.read() - nextEvaluationNanos >= 0;
+        }
+
+        void record(long handlerNanos, long methodNanos) {
+            overheadNanos.addAndGet(handlerNanos);
+            durationNanos.addAndGet(methodNanos);
+            if (invocations.incrementAndGet() == evaluationInvocations) {
+                evaluate();
+            }
+        }
+
+        private synchronized void startEvaluation() {
+            if (state != State.EVALUATING) {
+                resetMeasurements();
+                state = State.EVALUATING;
+            }
+        }
+
+        private synchronized void evaluate() {
+            if (state != State.EVALUATING) {
+                // Measurements of invocations which started before the current verdict
+                return;
+            }
+            double ratio = (double) overheadNanos.get() / Math.max(1, durationNanos.get());
+            resetMeasurements();
+            if (!warmedUp) {
+                // The first window typically runs interpreted code, so measure again once warm
+                warmedUp = true;
+                return;
+            }
+            nextEvaluationNanos = ticker.read() + reevaluationNanos;
+            if (ratio > maxOverheadRatio) {
+                if (verdict != State.DEMOTED) {
+                    log.info(
+                            "Demoting instrumentation of method {} with overhead ratio {} exceeding {}",
+                            SafeArg.of("method", method.toString()),
+                            SafeArg.of("overheadRatio", ratio),
+                            SafeArg.of("maxOverheadRatio", maxOverheadRatio));
+                }
+                verdict = State.DEMOTED;
+            } else {
+                if (verdict == State.DEMOTED) {
+                    log.info(
+                            "Promoting instrumentation of method {} with overhead ratio {} within {}",
+                            SafeArg.of("method", method.toString()),
+                            SafeArg.of("overheadRatio", ratio),
+                            SafeArg.of("maxOverheadRatio", maxOverheadRatio));
+                }
+                verdict = State.INSTRUMENTED;
+            }
+            state = verdict;
+        }
+
+        private void resetMeasurements() {
+            invocations.set(0);
+            overheadNanos.set(0);
+            durationNanos.set(0);
+        }
+    }
+
+    /** Transparent until bound to a method, see {@link #bind(Method)}. */
+    private final class GovernedInvocationEventHandler
+            implements MethodBindingInvocationEventHandler<InvocationContext>, ArgumentsRequirement {
+
+        private final InvocationEventHandler<InvocationContext> delegate;
+
+        GovernedInvocationEventHandler(InvocationEventHandler<InvocationContext> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public InvocationEventHandler<InvocationContext> bind(Method method) {
+            return new MethodGovernedHandler(
+                    MethodBindingInvocationEventHandler.bind(delegate, method), methodGovernor(method));
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return delegate.isEnabled();
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return ArgumentsRequirement.requiresArguments(delegate);
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return delegate.preInvocation(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object result) {
+            delegate.onSuccess(context, result);
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+            delegate.onFailure(context, cause);
+        }
+
+        @Override
+        public String toString() {
+            return "GovernedInvocationEventHandler{delegate=" + delegate + '}';
+        }
+    }
+
+    private static final class MethodGovernedHandler
+            implements InvocationEventHandler<InvocationContext>, ArgumentsRequirement {
+
+        private final InvocationEventHandler<InvocationContext> delegate;
+        private final MethodGovernor governor;
+
+        MethodGovernedHandler(InvocationEventHandler<InvocationContext> delegate, MethodGovernor governor) {
+            this.delegate = delegate;
+            this.governor = governor;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return delegate.isEnabled() && governor.shouldInstrument();
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return ArgumentsRequirement.requiresArguments(delegate);
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            if (!governor.isEvaluating()) {
+                return delegate.preInvocation(instance, method, args);
+            }
+            long startNanos = System.nanoTime();
+            InvocationContext context = delegate.preInvocation(instance, method, args);
+            return new MeasuredContext(context, startNanos, System.nanoTime());
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object result) {
+            if (context instanceof MeasuredContext) {
+                MeasuredContext measured = (MeasuredContext) context;
+                long completeNanos = System.nanoTime();
+                delegate.onSuccess(measured.delegate, result);
+                measured.record(governor, completeNanos, System.nanoTime());
+            } else {
+                delegate.onSuccess(context, result);
+            }
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+            if (context instanceof MeasuredContext) {
+                MeasuredContext measured = (MeasuredContext) context;
+                long completeNanos = System.nanoTime();
+                delegate.onFailure(measured.delegate, cause);
+                measured.record(governor, completeNanos, System.nanoTime());
+            } else {
+                delegate.onFailure(context, cause);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "MethodGovernedHandler{delegate=" + delegate + ", method=" + governor.method + '}';
+        }
+    }
+
+    /** Wraps the delegate handler's context with the time spent in {@code preInvocation}. */
+    private static final class MeasuredContext implements InvocationContext {
+
+        @Nullable
+        private final InvocationContext delegate;
+
+        private final long preInvocationStartNanos;
+        private final long invocationStartNanos;
+
+        MeasuredContext(@Nullable InvocationContext delegate, long preInvocationStartNanos, long invocationStartNanos) {
+            this.delegate = delegate;
+            this.preInvocationStartNanos = preInvocationStartNanos;
+            this.invocationStartNanos = invocationStartNanos;
+        }
+
+        void record(MethodGovernor governor, long completeNanos, long postInvocationEndNanos) {
+            long handlerNanos =
+                    (invocationStartNanos - preInvocationStartNanos) + (postInvocationEndNanos - completeNanos);
+            governor.record(handlerNanos, completeNanos - invocationStartNanos);
+        }
+
+        @Override
+        public long getStartTimeNanos() {
+            return invocationStartNanos;
+        }
+
+        @Nullable
+        @Override
+        public Object getInstance() {
+            return delegate == null ? null : delegate.getInstance();
+        }
+
+        @Override
+        public Method getMethod() {
+            return checkNotNull(delegate, "context").getMethod();
+        }
+
+        @Override
+        public Object[] getArgs() {
+            return checkNotNull(delegate, "context").getArgs();
+        }
+    }
+}
@@ -25,12 +25,22 @@ import com.palantir.logsafe.SafeArg;
 import com.palantir.logsafe.UnsafeArg;
 import com.palantir.tritium.api.functions.BooleanSupplier;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Instrumentation configuration read from {@code instrument} prefixed system properties.
+ *
+ * <p>System properties are read at most once per minute. Flags returned by {@link #getSystemPropertySupplier(String)}
+ * are updated whenever the properties are read again, which only happens when instrumentation properties are next
+ * queried after they expire, so changes to system properties made at runtime are not guaranteed to be observed
+ * until {@link #refresh()} is called.
+ */
 public final class InstrumentationProperties {
     private static final Logger log = LoggerFactory.getLogger(InstrumentationProperties.class);
 
@@ -38,12 +48,18 @@ public final class InstrumentationProperties {
 
     private static final String INSTRUMENT_PREFIX = "instrument";
 
+    private static final ConcurrentMap<String, InstrumentationFlag> flags = new ConcurrentHashMap<>();
+
     private static volatile Supplier<Map<String, String>> instrumentationProperties = createSupplier();
 
+    /**
+     * Returns a live flag indicating whether instrumentation is enabled globally and for the specified name. The flag
+     * is only updated when the instrumentation properties are reloaded, see {@link #refresh()}.
+     */
     public static BooleanSupplier getSystemPropertySupplier(String name) {
         checkArgument(!Strings.isNullOrEmpty(name), "name cannot be null or empty", SafeArg.of("name", name));
-        boolean instrumentationEnabled = isGloballyEnabled() && isSpecificEnabled(name);
-        return () -> instrumentationEnabled;
+        Map<String, String> properties = instrumentationProperties();
+        return flags.computeIfAbsent(name, _name -> new InstrumentationFlag(isSpecificEnabled(properties, name)));
     }
 
     @SuppressWarnings("WeakerAccess") // public API
@@ -53,17 +69,46 @@ public final class InstrumentationProperties {
 
     @SuppressWarnings("WeakerAccess") // public API
     public static boolean isSpecificEnabled(String name, boolean defaultValue) {
-        String qualifiedValue = getSpecific(name);
+        return isSpecificEnabled(instrumentationProperties(), name, defaultValue);
+    }
+
+    private static boolean isSpecificEnabled(Map<String, String> properties, String name) {
+        return isSpecificEnabled(properties, name, true);
+    }
+
+    private static boolean isSpecificEnabled(Map<String, String> properties, String name, boolean defaultValue) {
+        String qualifiedValue = getSpecific(properties, name);
         if (qualifiedValue == null) {
             return defaultValue;
         }
         return "true".equalsIgnoreCase(qualifiedValue);
     }
 
+    /**
+     * Returns the numeric value of the specified instrumentation property, or the default value if it is unset or not
+     * a valid number.
+     */
+    static long getSpecificLong(String name, long defaultValue) {
+        String qualifiedValue = getSpecific(instrumentationProperties(), name);
+        if (qualifiedValue == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(qualifiedValue.trim());
+        } catch (NumberFormatException e) {
+            log.warn(
+                    "Invalid value for instrumentation property {}, using default {}",
+                    SafeArg.of("name", INSTRUMENT_PREFIX + "." + name),
+                    SafeArg.of("default", defaultValue),
+                    UnsafeArg.of("value", qualifiedValue));
+            return defaultValue;
+        }
+    }
+
     /** Applies the {@link #INSTRUMENT_PREFIX} and returns the current value. */
     @Nullable
-    private static String getSpecific(String name) {
-        return instrumentationProperties().get(INSTRUMENT_PREFIX + "." + name);
+    private static String getSpecific(Map<String, String> properties, String name) {
+        return properties.get(INSTRUMENT_PREFIX + "." + name);
     }
 
     @SuppressWarnings("WeakerAccess") // public API
@@ -72,7 +117,11 @@ public final class InstrumentationProperties {
     }
 
     private static boolean isGloballyDisabled() {
-        return "false".equalsIgnoreCase(instrumentationProperties().get(INSTRUMENT_PREFIX));
+        return isGloballyDisabled(instrumentationProperties());
+    }
+
+    private static boolean isGloballyDisabled(Map<String, String> properties) {
+        return "false".equalsIgnoreCase(properties.get(INSTRUMENT_PREFIX));
     }
 
     /**
@@ -84,6 +133,21 @@ public final class InstrumentationProperties {
         instrumentationProperties = createSupplier();
     }
 
+    /**
+     * Reloads the instrumentation properties and immediately applies them to all flags returned by
+     * {@link #getSystemPropertySupplier(String)}.
+     */
+    public static void refresh() {
+        reload();
+        instrumentationProperties();
+    }
+
+    /** Applies the properties to existing flags, so handlers observe changes without being recreated. */
+    private static void applyToFlags(Map<String, String> properties) {
+        flags.forEach((name, flag) -> flag.setEnabled(isSpecificEnabled(properties, name)));
+        InstrumentationFlag.setGloballyEnabled(!isGloballyDisabled(properties));
+    }
+
     @SuppressWarnings("NoFunctionalReturnType")
     private static Supplier<Map<String, String>> createSupplier() {
         return Suppliers.memoizeWithExpiration(
@@ -113,6 +177,7 @@ public final class InstrumentationProperties {
                 .collect(ImmutableMap.toImmutableMap(
                         entry -> String.valueOf(entry.getKey()), entry -> String.valueOf(entry.getValue())));
         log.debug("Reloaded instrumentation properties {}", UnsafeArg.of("instrumentationProperties", map));
+        applyToFlags(map);
         return map;
     }
 }
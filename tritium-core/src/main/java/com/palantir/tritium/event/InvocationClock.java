@@ -0,0 +1,79 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+/**
+ * Source of the time used to measure invocations.
+ *
+ * <p>{@link CompositeInvocationEventHandler} reads its clock once when an invocation starts and once when it
+ * completes, sharing both values with all handlers through the invocation context, rather than each handler reading
+ * the time itself. Handlers should measure durations with {@link #elapsedNanos(InvocationContext)} to use the shared
+ * completion time when available.
+ */
+@FunctionalInterface
+public interface InvocationClock {
+
+    /**
+     * Returns the current value of this clock in nanoseconds. As with {@link System#nanoTime()}, values are only
+     * meaningful relative to other values of the same clock.
+     *
+     * @return current time in nanoseconds
+     */
+    long nanoTime();
+
+    /**
+     * Returns a clock backed by {@link System#nanoTime()}.
+     *
+     * @return system clock
+     */
+    static InvocationClock system() {
+        return System::nanoTime;
+    }
+
+    /**
+     * Returns a clock with millisecond resolution which is updated by a background thread, making reads a single
+     * volatile load. Suitable when handlers only need millisecond resolution, such as when logging slow invocations,
+     * and must be selected explicitly for those handlers, since all handlers sharing the clock, including metrics
+     * timers, measure invocations shorter than a millisecond as zero.
+     *
+     * <p>The first call starts a daemon thread which wakes every millisecond for the lifetime of the JVM, costing a
+     * small amount of CPU even while nothing is instrumented.
+     *
+     * @return coarse clock
+     */
+    static InvocationClock coarse() {
+        return CoarseInvocationClock.INSTANCE;
+    }
+
+    /**
+     * Returns the duration of the invocation described by the specified context. When the context was created by
+     * {@link CompositeInvocationEventHandler} and the invocation has completed, the completion time read once for all
+     * handlers is used, otherwise the current {@link System#nanoTime()}.
+     *
+     * @param context invocation context
+     * @return nanoseconds elapsed since the invocation started
+     */
+    static long elapsedNanos(InvocationContext context) {
+        if (context instanceof TimedInvocationContext) {
+            TimedInvocationContext timedContext = (TimedInvocationContext) context;
+            if (timedContext.isCompleted()) {
+                return timedContext.getEndTimeNanos() - context.getStartTimeNanos();
+            }
+        }
+        return System.nanoTime() - context.getStartTimeNanos();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+
+import com.palantir.logsafe.SafeArg;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.Nullable;
+
+/**
+ * Bounded lock-free multi-producer single-consumer queue of completed invocations, storing each event in preallocated
+ * parallel arrays so that publishing does not allocate.
+ *
+ * <p>Each slot carries a sequence number in the style of Dmitry Vyukov's bounded queue: producers claim a position by
+ * advancing the tail and publish the slot by setting its sequence to one past the position, and the consumer frees a
+ * slot by setting its sequence to the position of the next lap around the buffer.
+ */
+final class InvocationEventRingBuffer {
+
+    /** Receives events drained from the buffer on the consumer thread. */
+    interface EventSink {
+        void accept(int methodIndex, long startTimeNanos, long durationNanos, @Nullable Throwable cause);
+    }
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] methodIndexes;
+    private final long[] startTimes;
+    private final long[] durations;
+    private final Throwable[] causes;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    InvocationEventRingBuffer(int capacity) {
+        checkArgument(
+                capacity > 1 && Integer.bitCount(capacity) == 1,
+                "capacity must be a power of two greater than one",
+                SafeArg.of("capacity", capacity));
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.methodIndexes = new int[capacity];
+        this.startTimes = new long[capacity];
+        this.durations = new long[capacity];
+        this.causes = new Throwable[capacity];
+    }
+
+    /** Publishes an event, returning false without blocking if the buffer is full. */
+    boolean offer(int methodIndex, long startTimeNanos, long durationNanos, @Nullable Throwable cause) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // The consumer has not yet freed the slot from the previous lap
+                return false;
+            }
+            // Otherwise another producer claimed this position, retry with the new tail
+        }
+        methodIndexes[slot] = methodIndex;
+        startTimes[slot] = startTimeNanos;
+        durations[slot] = durationNanos;
+        causes[slot] = cause;
+        sequences.lazySet(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * Delivers up to {@code limit} published events to the sink. Must only be called by the single consumer thread.
+     *
+     * @return number of events delivered
+     */
+    int drain(EventSink sink, int limit) {
+        long position = head.get();
+        int drained = 0;
+        while (drained < limit) {
+            int slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1) {
+                break;
+            }
+            Throwable cause = causes[slot];
+            causes[slot] = null;
+            int methodIndex = methodIndexes[slot];
+            long startTimeNanos = startTimes[slot];
+            long durationNanos = durations[slot];
+            sequences.lazySet(slot, position + mask + 1);
+            position++;
+            head.lazySet(position);
+            drained++;
+            sink.accept(methodIndex, startTimeNanos, durationNanos, cause);
+        }
+        return drained;
+    }
+
+    /** Returns an estimate of the number of events published but not yet drained. */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
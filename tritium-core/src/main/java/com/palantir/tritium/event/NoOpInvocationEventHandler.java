@@ -16,12 +16,13 @@
 
 package com.palantir.tritium.event;
 
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import java.lang.reflect.Method;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /** No-op implementation of {@link InvocationEventHandler}. */
-public enum NoOpInvocationEventHandler implements InvocationEventHandler<InvocationContext> {
+public enum NoOpInvocationEventHandler implements InvocationEventHandler<InvocationContext>, ArgumentsRequirement {
     INSTANCE;
 
     @Override
@@ -29,9 +30,14 @@ public enum NoOpInvocationEventHandler implements InvocationEventHandler<Invocat
         return false;
     }
 
+    @Override
+    public boolean requiresArguments() {
+        return false;
+    }
+
     @Override
     public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
-        return DefaultInvocationContext.of(instance, method, args);
+        return DefaultInvocationContext.ofLazyArgs(instance, method, args);
     }
 
     @Override
@@ -0,0 +1,220 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Mutable {@link InvocationContext} recycled through a small per-thread pool so that synchronous invocations through a
+ * {@link CompositeInvocationEventHandler} do not allocate a context in steady state.
+ *
+ * <p>A context is acquired on the invoking thread before the method is invoked and released once all handlers have
+ * completed, after which it may be reused for a later invocation. Handlers must therefore not retain the context beyond
+ * {@code onSuccess} or {@code onFailure}. Retention is only detected on a best effort basis: accessing a context on the
+ * acquiring thread while it is released and waiting in the pool throws {@link SafeIllegalStateException}, but once the
+ * context is reused a retained reference silently observes the later invocation, and other threads may not observe the
+ * release at all, as the state is not published to them. Detecting reuse would require a distinct object per
+ * invocation, which pooling exists to avoid. Contexts released on a thread other than the one which acquired them are
+ * discarded rather than pooled.
+ *
+ * <p>Pooling only applies to composites of several handlers, as a single handler is invoked directly rather than
+ * through a composite and creates its own context.
+ */
+final class PooledInvocationContext implements TimedInvocationContext {
+
+    private static final Object[] NO_ARGS = {};
+    private static final int MAX_POOLED_CONTEXTS = 16;
+    private static final ThreadLocal<Pool> POOL = ThreadLocal.withInitial(Pool::new);
+
+    private final Pool owner;
+    private InvocationContext[] contexts;
+
+    private boolean inUse;
+    private boolean completed;
+    private long startTimeNanos;
+    private long endTimeNanos;
+
+    @Nullable
+    private Object instance;
+
+    @Nullable
+    private Method method;
+
+    @Nullable
+    private Object[] originalArgs;
+
+    @Nullable
+    private Object[] args;
+
+    @Nullable
+    private Object attachment;
+
+    private PooledInvocationContext(Pool owner, int handlerCount) {
+        this.owner = owner;
+        this.contexts = new InvocationContext[handlerCount];
+    }
+
+    /** Returns a context for an invocation on the current thread with room for the specified number of handlers. */
+    static PooledInvocationContext acquire(
+            long startTimeNanos, Object instance, Method method, @Nullable Object[] args, int handlerCount) {
+        PooledInvocationContext context = POOL.get().take(handlerCount);
+        context.inUse = true;
+        context.completed = false;
+        context.instance = instance;
+        context.method = method;
+        context.originalArgs = args;
+        context.startTimeNanos = startTimeNanos;
+        return context;
+    }
+
+    /**
+     * Returns this context to the pool of the acquiring thread. Handler contexts, the instance and arguments are
+     * cleared so that released contexts do not retain them.
+     */
+    void release() {
+        checkInUse();
+        inUse = false;
+        instance = null;
+        method = null;
+        originalArgs = null;
+        args = null;
+        attachment = null;
+        Arrays.fill(contexts, null);
+        if (owner.thread == Thread.currentThread()) {
+            owner.offer(this);
+        }
+    }
+
+    void complete(long nanos) {
+        checkInUse();
+        endTimeNanos = nanos;
+        completed = true;
+    }
+
+    /** Associates state of the acquiring handler with this context until it is released. */
+    void attach(@Nullable Object value) {
+        checkInUse();
+        attachment = value;
+    }
+
+    @Nullable
+    Object getAttachment() {
+        checkInUse();
+        return attachment;
+    }
+
+    /** Per-handler context slots, at least as long as the number of handlers the context was acquired for. */
+    InvocationContext[] getContexts() {
+        checkInUse();
+        return contexts;
+    }
+
+    @Override
+    public long getStartTimeNanos() {
+        checkInUse();
+        return startTimeNanos;
+    }
+
+    @Override
+    public boolean isCompleted() {
+        checkInUse();
+        return completed;
+    }
+
+    @Override
+    public long getEndTimeNanos() {
+        checkInUse();
+        return endTimeNanos;
+    }
+
+    @Override
+    public Object getInstance() {
+        checkInUse();
+        return instance;
+    }
+
+    @Override
+    public Method getMethod() {
+        checkInUse();
+        return checkNotNull(method, "method");
+    }
+
+    @Override
+    public Object[] getArgs() {
+        checkInUse();
+        Object[] captured = args;
+        if (captured == null) {
+            // Arguments are only copied if a handler reads them
+            captured = (originalArgs == null || originalArgs.length == 0) ? NO_ARGS : originalArgs.clone();
+            args = captured;
+        }
+        return captured;
+    }
+
+    /** Detects access to a released context which has not yet been reused, see the class documentation. */
+    private void checkInUse() {
+        if (!inUse) {
+            throw new SafeIllegalStateException(
+                    "Pooled invocation context used after the invocation completed; handlers must not retain contexts"
+                            + " beyond onSuccess or onFailure",
+                    SafeArg.of("thread", Thread.currentThread().getName()));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledInvocationContext [startTimeNanos="
+                + startTimeNanos
+                + ", inUse="
+                + inUse
+                + ", instance="
+                + instance
+                + ", method="
+                + method
+                + ']';
+    }
+
+    private static final class Pool {
+        private final Thread thread = Thread.currentThread();
+        private final PooledInvocationContext[] free = new PooledInvocationContext[MAX_POOLED_CONTEXTS];
+        private int size;
+
+        PooledInvocationContext take(int handlerCount) {
+            if (size == 0) {
+                return new PooledInvocationContext(this, handlerCount);
+            }
+            PooledInvocationContext context = free[--size];
+            free[size] = null;
+            if (context.contexts.length < handlerCount) {
+                context.contexts = new InvocationContext[handlerCount];
+            }
+            return context;
+        }
+
+        void offer(PooledInvocationContext context) {
+            if (size < free.length) {
+                free[size++] = context;
+            }
+        }
+    }
+}
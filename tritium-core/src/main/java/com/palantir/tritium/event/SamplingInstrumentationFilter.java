@@ -0,0 +1,288 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import com.palantir.tritium.api.event.InstrumentationFilter;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Instruments a random sample of invocations, one in every N invocations of each method.
+ *
+ * <p>When created with a target rate, N is adjusted independently for each method so that approximately the target
+ * number of invocations per second are instrumented regardless of the invocation rate of the method. Invocations which
+ * are not sampled only pay for a thread local random number, shared state is only updated by sampled invocations.
+ *
+ * <p>Only sampled invocations reach event handlers, and handlers are not aware of sampling, so counts and rates they
+ * record are sampled too. For example the count and meter rates of a timer recorded by the metrics handlers under a
+ * filter instrumenting one in N invocations report approximately 1/N of the actual throughput, and under an adaptive
+ * filter report approximately the target rate regardless of the actual throughput. Latency distributions are unbiased.
+ * Handlers aggregating sampled invocations may divide their counts by {@link #getSampleRate(Method)} to estimate the
+ * actual number of invocations.
+ */
+public final class SamplingInstrumentationFilter implements InstrumentationFilter, ArgumentsRequirement {
+
+    private static final long ADJUSTMENT_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_INTERVAL = 1 << 20;
+
+    private final int initialInterval;
+    private final double targetSamplesPerSecond;
+    private final Ticker ticker;
+    private final ConcurrentMap<Method, MethodSampler> samplers = new ConcurrentHashMap<>();
+
+    // Guarded by this, as is the creation of samplers, so each listener observes each method once
+    private final List<Consumer<Method>> listeners = new ArrayList<>();
+
+    @VisibleForTesting
+    SamplingInstrumentationFilter(int initialInterval, double targetSamplesPerSecond, Ticker ticker) {
+        checkArgument(
+                initialInterval >= 1 && initialInterval <= MAX_INTERVAL,
+                "Sampling interval must be between 1 and the maximum interval",
+                SafeArg.of("interval", initialInterval),
+                SafeArg.of("maxInterval", MAX_INTERVAL));
+        checkArgument(
+                targetSamplesPerSecond >= 0,
+                "Target samples per second must not be negative",
+                SafeArg.of("targetSamplesPerSecond", targetSamplesPerSecond));
+        this.initialInterval = initialInterval;
+        this.targetSamplesPerSecond = targetSamplesPerSecond;
+        this.ticker = checkNotNull(ticker, "ticker");
+    }
+
+    /** Instruments one in every {@code interval} invocations of each method. */
+    static SamplingInstrumentationFilter fixed(int interval) {
+        return new SamplingInstrumentationFilter(interval, 0, Ticker.systemTicker());
+    }
+
+    /** Instruments approximately {@code targetSamplesPerSecond} invocations of each method per second. */
+    static SamplingInstrumentationFilter adaptive(double targetSamplesPerSecond) {
+        checkArgument(
+                targetSamplesPerSecond > 0,
+                "Target samples per second must be positive",
+                SafeArg.of("targetSamplesPerSecond", targetSamplesPerSecond));
+        return new SamplingInstrumentationFilter(1, targetSamplesPerSecond, Ticker.systemTicker());
+    }
+
+    @Override
+    public boolean shouldInstrument(@Nonnull Object _instance, @Nonnull Method method, @Nonnull Object[] _args) {
+        return sampler(method).sample();
+    }
+
+    @Override
+    public boolean requiresArguments() {
+        return false;
+    }
+
+    /**
+     * Returns the fraction of invocations of the method which are currently instrumented, between zero exclusive and
+     * one inclusive.
+     */
+    public double getSampleRate(Method method) {
+        return 1.0 / sampler(method).interval.get();
+    }
+
+    /**
+     * Returns a handler which only handles the sampled invocations of each method, equivalent to instrumenting the
+     * handler with this filter. The sampler of each method is resolved once when the handler is bound to the method,
+     * see {@link MethodBindingInvocationEventHandler}, so the returned handler should be instrumented with
+     * {@link InstrumentationFilters#INSTRUMENT_ALL} by instrumentation which binds handlers.
+     */
+    public InvocationEventHandler<InvocationContext> sample(InvocationEventHandler<InvocationContext> handler) {
+        return new SampledInvocationEventHandler(checkNotNull(handler, "handler"));
+    }
+
+    /**
+     * Invokes the listener with each method sampled by this filter, once per method, including methods sampled before
+     * the listener was added.
+     */
+    public synchronized void addMethodListener(Consumer<Method> listener) {
+        checkNotNull(listener, "listener");
+        listeners.add(listener);
+        samplers.keySet().forEach(listener);
+    }
+
+    private MethodSampler sampler(Method method) {
+        MethodSampler sampler = samplers.get(method);
+        return (sampler != null) ? sampler : newSampler(method);
+    }
+
+    private synchronized MethodSampler newSampler(Method method) {
+        MethodSampler sampler = samplers.get(method);
+        if (sampler == null) {
+            sampler = new MethodSampler(ticker.read());
+            samplers.put(method, sampler);
+            for (Consumer<Method> listener : listeners) {
+                listener.accept(method);
+            }
+        }
+        return sampler;
+    }
+
+    @Override
+    public String toString() {
+        return "SamplingInstrumentationFilter{initialInterval=" + initialInterval + ", targetSamplesPerSecond="
+                + targetSamplesPerSecond + '}';
+    }
+
+    private final class MethodSampler {
+        private final AtomicInteger interval = new AtomicInteger(initialInterval);
+        private final AtomicLong periodStartNanos;
+        private final AtomicLong periodSamples = new AtomicLong();
+
+        MethodSampler(long startNanos) {
+            this.periodStartNanos = new AtomicLong(startNanos);
+        }
+
+        boolean sample() {
+            int currentInterval = interval.get();
+            if (currentInterval > 1 && ThreadLocalRandom.current().nextInt(currentInterval) != 0) {
+                return false;
+            }
+            if (targetSamplesPerSecond > 0) {
+                periodSamples.incrementAndGet();
+                maybeAdjust(currentInterval);
+            }
+            return true;
+        }
+
+        /**
+         * Once per period, scales the interval by the ratio of observed to target samples. Only the thread which
+         * advances the period start adjusts the interval, concurrent samples are attributed to the following period.
+         */
+        private void maybeAdjust(int currentInterval) {
+            long now = ticker.read();
+            long start = periodStartNanos.get();
+            long elapsed = now - start;
+            if (elapsed < ADJUSTMENT_PERIOD_NANOS || !periodStartNanos.compareAndSet(start, now)) {
+                return;
+            }
+            long samples = periodSamples.getAndSet(0);
+            double targetSamples = targetSamplesPerSecond * elapsed / TimeUnit.SECONDS.toNanos(1);
+            // Estimated invocations in the period divided by the number of invocations to sample
+            double nextInterval = currentInterval * (samples / targetSamples);
+            interval.set((int) Math.max(1, Math.min(MAX_INTERVAL, Math.round(nextInterval))));
+        }
+    }
+
+    /** Transparent until bound to a method, see {@link #bind(Method)}. */
+    private final class SampledInvocationEventHandler
+            implements MethodBindingInvocationEventHandler<InvocationContext>, ArgumentsRequirement {
+
+        private final InvocationEventHandler<InvocationContext> delegate;
+
+        SampledInvocationEventHandler(InvocationEventHandler<InvocationContext> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public InvocationEventHandler<InvocationContext> bind(Method method) {
+            return new MethodSampledHandler(
+                    MethodBindingInvocationEventHandler.bind(delegate, method), sampler(method));
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return delegate.isEnabled();
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return ArgumentsRequirement.requiresArguments(delegate);
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return delegate.preInvocation(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object result) {
+            delegate.onSuccess(context, result);
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+            delegate.onFailure(context, cause);
+        }
+
+        @Override
+        public String toString() {
+            return "SampledInvocationEventHandler{delegate=" + delegate + '}';
+        }
+    }
+
+    private static final class MethodSampledHandler
+            implements InvocationEventHandler<InvocationContext>, ArgumentsRequirement {
+
+        private final InvocationEventHandler<InvocationContext> delegate;
+        private final MethodSampler sampler;
+
+        MethodSampledHandler(InvocationEventHandler<InvocationContext> delegate, MethodSampler sampler) {
+            this.delegate = delegate;
+            this.sampler = sampler;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return delegate.isEnabled() && sampler.sample();
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return ArgumentsRequirement.requiresArguments(delegate);
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return delegate.preInvocation(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object result) {
+            delegate.onSuccess(context, result);
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+            delegate.onFailure(context, cause);
+        }
+
+        @Override
+        public String toString() {
+            return "MethodSampledHandler{delegate=" + delegate + '}';
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import java.lang.reflect.Method;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link InvocationEventHandler} whose chain of handlers may be atomically replaced while instrumented instances are
+ * in use. Handlers removed from the chain are no longer invoked at all, rather than being polled for
+ * {@link InvocationEventHandler#isEnabled()} on every invocation.
+ *
+ * <p>Invocations which are in progress when the chain is replaced complete with the chain they started with. Each chain
+ * is invoked through a {@link CompositeInvocationEventHandler}, whose contexts identify the handler which created them,
+ * so contexts are not wrapped. Chains are rebound to each method lazily on the first invocation after replacement, see
+ * {@link MethodBindingInvocationEventHandler}.
+ */
+public final class SwappableInvocationEventHandler
+        implements MethodBindingInvocationEventHandler<InvocationContext>, ArgumentsRequirement {
+
+    private final InvocationClock clock;
+    private volatile Chain chain;
+
+    private SwappableInvocationEventHandler(
+            List<InvocationEventHandler<InvocationContext>> handlers, InvocationClock clock) {
+        this.clock = checkNotNull(clock, "clock");
+        this.chain = new Chain(handlers, clock);
+    }
+
+    public static SwappableInvocationEventHandler of(List<InvocationEventHandler<InvocationContext>> handlers) {
+        return of(handlers, InvocationClock.system());
+    }
+
+    /** Returns a handler whose chains read the specified clock once when each invocation starts and completes. */
+    public static SwappableInvocationEventHandler of(
+            List<InvocationEventHandler<InvocationContext>> handlers, InvocationClock clock) {
+        return new SwappableInvocationEventHandler(handlers, clock);
+    }
+
+    /** Returns the current chain of handlers. */
+    public List<InvocationEventHandler<InvocationContext>> getHandlers() {
+        return chain.handlers;
+    }
+
+    /** Atomically replaces the chain of handlers, subsequent invocations are handled by the specified handlers. */
+    public void setHandlers(List<InvocationEventHandler<InvocationContext>> handlers) {
+        this.chain = new Chain(handlers, clock);
+    }
+
+    /**
+     * Always returns true. Instrumentation decides once whether arguments are captured, and instances must provide
+     * arguments to any chain subsequently set.
+     */
+    @Override
+    public boolean requiresArguments() {
+        return true;
+    }
+
+    @Override
+    public InvocationEventHandler<InvocationContext> bind(Method method) {
+        return new MethodSwappableHandler(this, checkNotNull(method, "method"));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        for (InvocationEventHandler<InvocationContext> handler : chain.handlers) {
+            if (handler.isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+        return chain.handler.preInvocation(instance, method, args);
+    }
+
+    @Override
+    public void onSuccess(@Nullable InvocationContext context, @Nullable Object result) {
+        // Completion is delivered to the chain which created the context, even if it has since been replaced
+        CompositeInvocationEventHandler owner = CompositeInvocationEventHandler.ownerOf(context);
+        if (owner != null) {
+            owner.onSuccess(context, result);
+        }
+    }
+
+    @Override
+    public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+        CompositeInvocationEventHandler owner = CompositeInvocationEventHandler.ownerOf(context);
+        if (owner != null) {
+            owner.onFailure(context, cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SwappableInvocationEventHandler{handlers=" + chain.handlers + '}';
+    }
+
+    private static final class Chain {
+        private final ImmutableList<InvocationEventHandler<InvocationContext>> handlers;
+        private final CompositeInvocationEventHandler handler;
+
+        Chain(List<InvocationEventHandler<InvocationContext>> handlers, InvocationClock clock) {
+            this.handlers = ImmutableList.copyOf(checkNotNull(handlers, "handlers"));
+            this.handler = CompositeInvocationEventHandler.create(this.handlers, clock);
+        }
+    }
+
+    private static final class BoundChain {
+        private final Chain chain;
+        private final CompositeInvocationEventHandler handler;
+
+        BoundChain(Chain chain, Method method) {
+            this.chain = chain;
+            this.handler = chain.handler.bindComposite(method);
+        }
+    }
+
+    private static final class MethodSwappableHandler
+            implements InvocationEventHandler<InvocationContext>, ArgumentsRequirement {
+        private final SwappableInvocationEventHandler parent;
+        private final Method method;
+        private volatile BoundChain bound;
+
+        MethodSwappableHandler(SwappableInvocationEventHandler parent, Method method) {
+            this.parent = parent;
+            this.method = method;
+            this.bound = new BoundChain(parent.chain, method);
+        }
+
+        private CompositeInvocationEventHandler handler() {
+            Chain current = parent.chain;
+            BoundChain boundChain = bound;
+            if (boundChain.chain != current) {
+                // Concurrent rebinding is benign, each result is equivalent
+                boundChain = new BoundChain(current, method);
+                bound = boundChain;
+            }
+            return boundChain.handler;
+        }
+
+        /** Uses the enabled handlers specialized by the bound chain, rather than polling each handler. */
+        @Override
+        public boolean isEnabled() {
+            return handler().hasActiveHandlers();
+        }
+
+        /**
+         * Returns whether the current chain requires arguments, allowing callers which materialize arguments per
+         * invocation to skip them for argument free chains.
+         */
+        @Override
+        public boolean requiresArguments() {
+            return handler().requiresArguments();
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method invokedMethod, @Nonnull Object[] args) {
+            return handler().preInvocation(instance, invokedMethod, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object result) {
+            parent.onSuccess(context, result);
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+            parent.onFailure(context, cause);
+        }
+
+        @Override
+        public String toString() {
+            return "MethodSwappableHandler{parent=" + parent + ", method=" + method + '}';
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+/** An {@link InvocationContext} recording the time its invocation completed, as read by the composite handler. */
+interface TimedInvocationContext extends InvocationContext {
+
+    /** Returns true once {@link #getEndTimeNanos()} has been recorded. */
+    boolean isCompleted();
+
+    /** Returns the completion time read from the {@link InvocationClock} which supplied the start time. */
+    long getEndTimeNanos();
+}
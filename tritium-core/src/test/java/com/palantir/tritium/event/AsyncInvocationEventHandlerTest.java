@@ -0,0 +1,258 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+
+final class AsyncInvocationEventHandlerTest {
+
+    private static final Object[] EMPTY_ARGS = {};
+
+    @Test
+    void testEventsHandledOnConsumerThread() throws Exception {
+        RecordingHandler recording = new RecordingHandler(new CountDownLatch(0));
+        Method method = Object.class.getDeclaredMethod("toString");
+        try (AsyncInvocationEventHandler handler = AsyncInvocationEventHandler.create(
+                "test", ImmutableList.of(recording), 16, AsyncInvocationEventHandler.OverflowPolicy.DROP)) {
+            assertThat(ArgumentsRequirement.requiresArguments(handler)).isFalse();
+            InvocationEventHandler<InvocationContext> bound = handler.bind(method);
+
+            bound.onSuccess(bound.preInvocation(this, method, EMPTY_ARGS), "result");
+            handler.onFailure(handler.preInvocation(this, method, EMPTY_ARGS), new IllegalStateException("expected"));
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> recording.events.size() == 2);
+        }
+
+        assertThat(recording.events).containsExactly("success:toString", "failure:toString:IllegalStateException");
+        assertThat(recording.threads).allMatch(name -> name.equals("tritium-async-handler-test"));
+        assertThat(recording.durations).allMatch(nanos -> nanos >= 0);
+    }
+
+    @Test
+    void testDropOnOverflow() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        RecordingHandler recording = new RecordingHandler(blocked);
+        Method method = Object.class.getDeclaredMethod("toString");
+        try (AsyncInvocationEventHandler handler = AsyncInvocationEventHandler.create(
+                "drop", ImmutableList.of(recording), 2, AsyncInvocationEventHandler.OverflowPolicy.DROP)) {
+            // Wait for the consumer to block handling the first event so the queue fills deterministically
+            handler.onSuccess(handler.preInvocation(this, method, EMPTY_ARGS), null);
+            await().atMost(Duration.ofSeconds(10)).until(() -> handler.queueDepth() == 0);
+
+            for (int i = 0; i < 5; i++) {
+                handler.onSuccess(handler.preInvocation(this, method, EMPTY_ARGS), null);
+            }
+
+            assertThat(handler.queueDepth()).isEqualTo(2);
+            assertThat(handler.droppedEvents()).isEqualTo(3);
+
+            blocked.countDown();
+            await().atMost(Duration.ofSeconds(10)).until(() -> recording.events.size() == 3);
+        }
+    }
+
+    @Test
+    void testRunOnCallerOnOverflow() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        RecordingHandler recording = new RecordingHandler(blocked);
+        Method method = Object.class.getDeclaredMethod("toString");
+        try (AsyncInvocationEventHandler handler = AsyncInvocationEventHandler.create(
+                "caller", ImmutableList.of(recording), 2, AsyncInvocationEventHandler.OverflowPolicy.RUN_ON_CALLER)) {
+            handler.onSuccess(handler.preInvocation(this, method, EMPTY_ARGS), null);
+            await().atMost(Duration.ofSeconds(10)).until(() -> handler.queueDepth() == 0);
+            for (int i = 0; i < 3; i++) {
+                handler.onSuccess(handler.preInvocation(this, method, EMPTY_ARGS), null);
+            }
+
+            assertThat(recording.threads).containsExactly(Thread.currentThread().getName());
+            assertThat(handler.droppedEvents()).isZero();
+
+            blocked.countDown();
+            await().atMost(Duration.ofSeconds(10)).until(() -> recording.events.size() == 4);
+        }
+    }
+
+    @Test
+    void testFailingHandlerDisabled() throws Exception {
+        ThrowingHandler throwing = new ThrowingHandler(new IllegalStateException("expected"));
+        RecordingHandler recording = new RecordingHandler(new CountDownLatch(0));
+        Method method = Object.class.getDeclaredMethod("toString");
+        try (AsyncInvocationEventHandler handler = AsyncInvocationEventHandler.create(
+                "failing",
+                ImmutableList.of(throwing, recording),
+                1024,
+                AsyncInvocationEventHandler.OverflowPolicy.RUN_ON_CALLER)) {
+            for (int i = 0; i < 500; i++) {
+                handler.onSuccess(handler.preInvocation(this, method, EMPTY_ARGS), null);
+            }
+            await().atMost(Duration.ofSeconds(10)).until(() -> recording.events.size() == 500);
+        }
+
+        // The failing handler is disabled after exceeding the default threshold, other handlers are unaffected
+        assertThat(throwing.invocations).hasValueBetween(101, 499);
+    }
+
+    @Test
+    void testConsumerSurvivesErrors() throws Exception {
+        ThrowingHandler throwing = new ThrowingHandler(new AssertionError("expected"));
+        RecordingHandler recording = new RecordingHandler(new CountDownLatch(0));
+        Method method = Object.class.getDeclaredMethod("toString");
+        try (AsyncInvocationEventHandler handler = AsyncInvocationEventHandler.create(
+                "errors", ImmutableList.of(throwing, recording), 16, AsyncInvocationEventHandler.OverflowPolicy.DROP)) {
+            handler.onSuccess(handler.preInvocation(this, method, EMPTY_ARGS), null);
+            await().atMost(Duration.ofSeconds(10)).until(() -> recording.events.size() == 1);
+            handler.onSuccess(handler.preInvocation(this, method, EMPTY_ARGS), null);
+            await().atMost(Duration.ofSeconds(10)).until(() -> recording.events.size() == 2);
+        }
+
+        assertThat(throwing.invocations).hasValue(2);
+    }
+
+    @Test
+    void testIdleConsumerParks() throws Exception {
+        RecordingHandler recording = new RecordingHandler(new CountDownLatch(0));
+        Method method = Object.class.getDeclaredMethod("toString");
+        try (AsyncInvocationEventHandler handler = AsyncInvocationEventHandler.create(
+                "idle", ImmutableList.of(recording), 16, AsyncInvocationEventHandler.OverflowPolicy.DROP)) {
+            Thread consumer = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getName().equals("tritium-async-handler-idle"))
+                    .findFirst()
+                    .orElseThrow(IllegalStateException::new);
+            await().atMost(Duration.ofSeconds(10)).until(() -> consumer.getState() == Thread.State.TIMED_WAITING);
+
+            // Publishing wakes the parked consumer rather than waiting for the park to time out
+            handler.onSuccess(handler.preInvocation(this, method, EMPTY_ARGS), null);
+            await().atMost(Duration.ofMillis(500)).until(() -> recording.events.size() == 1);
+        }
+    }
+
+    @Test
+    void testRequiresSharedContextHandlers() {
+        assertThatThrownBy(() -> AsyncInvocationEventHandler.create(
+                        "invalid",
+                        ImmutableList.of(NoOpInvocationEventHandler.INSTANCE),
+                        16,
+                        AsyncInvocationEventHandler.OverflowPolicy.DROP))
+                .isInstanceOf(SafeIllegalArgumentException.class)
+                .hasMessageContaining("must support shared invocation contexts");
+    }
+
+    private static final class RecordingHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements SharedContextInvocationEventHandler<InvocationContext> {
+
+        private final CountDownLatch blocked;
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final List<String> threads = new CopyOnWriteArrayList<>();
+        private final List<Long> durations = new CopyOnWriteArrayList<>();
+
+        RecordingHandler(CountDownLatch blocked) {
+            this.blocked = blocked;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            throw new UnsupportedOperationException("Expected shared context to be used");
+        }
+
+        @Override
+        public InvocationContext preInvocation(InvocationContext sharedContext) {
+            return sharedContext;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            record(context, "success:" + method(context));
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+            record(context, "failure:" + method(context) + ':' + cause.getClass().getSimpleName());
+        }
+
+        private void record(@Nullable InvocationContext context, String event) {
+            String thread = Thread.currentThread().getName();
+            if (context != null) {
+                durations.add(InvocationClock.elapsedNanos(context));
+            }
+            // Only the consumer blocks, so events run on the caller complete immediately
+            if (thread.startsWith("tritium-async-handler-")) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            threads.add(thread);
+            events.add(event);
+        }
+
+        private static String method(@Nullable InvocationContext context) {
+            return context == null ? "null" : context.getMethod().getName();
+        }
+    }
+
+    private static final class ThrowingHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements SharedContextInvocationEventHandler<InvocationContext> {
+
+        private final AtomicInteger invocations = new AtomicInteger();
+        private final Throwable failure;
+
+        ThrowingHandler(Throwable failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            throw new UnsupportedOperationException("Expected shared context to be used");
+        }
+
+        @Override
+        public InvocationContext preInvocation(InvocationContext sharedContext) {
+            return sharedContext;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {
+            invocations.incrementAndGet();
+            Throwables.throwIfUnchecked(failure);
+            throw new IllegalStateException(failure);
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {
+            invocations.incrementAndGet();
+        }
+    }
+}
@@ -24,11 +24,16 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import com.palantir.tritium.test.event.ThrowingInvocationEventHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.junit.jupiter.api.Test;
@@ -191,6 +196,195 @@ final class CompositeInvocationEventHandlerTest {
         compositeHandler.onFailure(context, new RuntimeException());
     }
 
+    @Test
+    void testRequiresArguments() {
+        InvocationEventHandler<InvocationContext> argumentFree = CompositeInvocationEventHandler.of(
+                Arrays.asList(NoOpInvocationEventHandler.INSTANCE, NoOpInvocationEventHandler.INSTANCE));
+        assertThat(ArgumentsRequirement.requiresArguments(argumentFree)).isFalse();
+
+        InvocationEventHandler<InvocationContext> argumentReading = CompositeInvocationEventHandler.of(
+                Arrays.asList(NoOpInvocationEventHandler.INSTANCE, new SimpleInvocationEventHandler()));
+        assertThat(ArgumentsRequirement.requiresArguments(argumentReading)).isTrue();
+    }
+
+    @Test
+    void testBind() throws NoSuchMethodException {
+        Method method = getToStringMethod();
+        InvocationEventHandler<InvocationContext> unbindable = CompositeInvocationEventHandler.of(
+                Arrays.asList(NoOpInvocationEventHandler.INSTANCE, new SimpleInvocationEventHandler()));
+        assertThat(MethodBindingInvocationEventHandler.bind(unbindable, method)).isSameAs(unbindable);
+
+        InvocationEventHandler<InvocationContext> boundHandler = new SimpleInvocationEventHandler();
+        InvocationEventHandler<InvocationContext> bindable = CompositeInvocationEventHandler.of(
+                Arrays.asList(new SimpleInvocationEventHandler(), new BindingInvocationEventHandler(boundHandler)));
+        InvocationEventHandler<InvocationContext> bound = MethodBindingInvocationEventHandler.bind(bindable, method);
+        assertThat(bound)
+                .isInstanceOf(CompositeInvocationEventHandler.class)
+                .isNotSameAs(bindable)
+                .asString()
+                .contains(boundHandler.toString());
+
+        InvocationContext context = bound.preInvocation(this, method, EMPTY_ARGS);
+        bound.onSuccess(context, "test");
+    }
+
+    @Test
+    void testSharedContext() throws NoSuchMethodException {
+        Method method = getToStringMethod();
+        SharedContextHandler first = new SharedContextHandler();
+        SharedContextHandler second = new SharedContextHandler();
+        InvocationEventHandler<InvocationContext> compositeHandler = CompositeInvocationEventHandler.of(
+                Arrays.asList(first, new SimpleInvocationEventHandler(), second));
+
+        InvocationContext context = compositeHandler.preInvocation(this, method, new Object[] {"arg"});
+        compositeHandler.onSuccess(context, "test");
+
+        assertThat(first.preInvocationContext).isSameAs(context);
+        assertThat(second.preInvocationContext).isSameAs(context);
+        assertThat(first.completionContext).isSameAs(context);
+        assertThat(second.completionContext).isSameAs(context);
+        assertThat(context.getInstance()).isSameAs(this);
+        assertThat(context.getMethod()).isEqualTo(method);
+        assertThat(context.getArgs()).containsExactly("arg");
+    }
+
+    @Test
+    void testPooledContexts() throws NoSuchMethodException {
+        System.setProperty("instrument.pooled-contexts", "true");
+        InstrumentationProperties.reload();
+        try {
+            Method method = getToStringMethod();
+            SharedContextHandler shared = new SharedContextHandler();
+            InvocationEventHandler<InvocationContext> bound = MethodBindingInvocationEventHandler.bind(
+                    CompositeInvocationEventHandler.of(Arrays.asList(shared, new SimpleInvocationEventHandler())),
+                    method);
+
+            InvocationContext first = bound.preInvocation(this, method, new Object[] {"arg"});
+            assertThat(first.getInstance()).isSameAs(this);
+            assertThat(first.getArgs()).containsExactly("arg");
+            bound.onSuccess(first, "test");
+            assertThat(shared.completionContext).isSameAs(first);
+            assertThatThrownBy(first::getMethod).isInstanceOf(SafeIllegalStateException.class);
+
+            InvocationContext second = bound.preInvocation(this, method, EMPTY_ARGS);
+            assertThat(second).isSameAs(first);
+            assertThat(second.getArgs()).isEmpty();
+            bound.onFailure(second, new RuntimeException("expected"));
+            assertThatThrownBy(() -> bound.onSuccess(second, "test"))
+                    .isInstanceOf(SafeIllegalStateException.class)
+                    .hasMessageContaining("must not retain contexts");
+
+            InvocationContext nested = bound.preInvocation(this, method, EMPTY_ARGS);
+            InvocationContext inner = bound.preInvocation(this, method, EMPTY_ARGS);
+            assertThat(inner).isNotSameAs(nested);
+            bound.onSuccess(inner, "inner");
+            bound.onSuccess(nested, "outer");
+
+            Method asyncMethod = CompletableFuture.class.getMethod("thenApply", Function.class);
+            InvocationEventHandler<InvocationContext> asyncBound = MethodBindingInvocationEventHandler.bind(
+                    CompositeInvocationEventHandler.of(Arrays.asList(shared, new SimpleInvocationEventHandler())),
+                    asyncMethod);
+            InvocationContext asyncContext = asyncBound.preInvocation(this, asyncMethod, EMPTY_ARGS);
+            asyncBound.onSuccess(asyncContext, CompletableFuture.completedFuture("test"));
+            assertThat(asyncContext.getMethod()).isEqualTo(asyncMethod);
+        } finally {
+            System.clearProperty("instrument.pooled-contexts");
+            InstrumentationProperties.reload();
+        }
+    }
+
+    @Test
+    void testSpecializesOnFlagChanges() throws NoSuchMethodException {
+        CountingHandler flagged =
+                new CountingHandler(InstrumentationProperties.getSystemPropertySupplier("composite-test"));
+        CountingHandler always = new CountingHandler();
+        InvocationEventHandler<InvocationContext> compositeHandler =
+                CompositeInvocationEventHandler.of(Arrays.asList(flagged, always));
+        try {
+            InvocationContext context = compositeHandler.preInvocation(this, getToStringMethod(), EMPTY_ARGS);
+            assertThat(context).isInstanceOf(CompositeInvocationEventHandler.CompositeInvocationContext.class);
+            compositeHandler.onSuccess(context, "test");
+            assertThat(flagged.invocations).isEqualTo(2);
+            assertThat(always.invocations).isEqualTo(2);
+
+            System.setProperty("instrument.composite-test", "false");
+            InstrumentationProperties.refresh();
+
+            context = compositeHandler.preInvocation(this, getToStringMethod(), EMPTY_ARGS);
+            assertThat(context)
+                    .isInstanceOf(TimedInvocationContext.class)
+                    .isInstanceOf(CompositeInvocationEventHandler.SingleInvocationContext.class);
+            compositeHandler.onFailure(context, new RuntimeException());
+            assertThat(flagged.invocations).isEqualTo(2);
+            assertThat(always.invocations).isEqualTo(4);
+
+            System.clearProperty("instrument.composite-test");
+            InstrumentationProperties.refresh();
+
+            context = compositeHandler.preInvocation(this, getToStringMethod(), EMPTY_ARGS);
+            compositeHandler.onSuccess(context, "test");
+            assertThat(flagged.invocations).isEqualTo(4);
+            assertThat(always.invocations).isEqualTo(6);
+        } finally {
+            System.clearProperty("instrument.composite-test");
+            InstrumentationProperties.refresh();
+        }
+    }
+
+    @Test
+    void testFlagChangedWhileRunning() throws NoSuchMethodException {
+        CountingHandler first =
+                new CountingHandler(InstrumentationProperties.getSystemPropertySupplier("composite-test-first"));
+        CountingHandler second =
+                new CountingHandler(InstrumentationProperties.getSystemPropertySupplier("composite-test-second"));
+        InvocationEventHandler<InvocationContext> compositeHandler =
+                CompositeInvocationEventHandler.of(Arrays.asList(first, second));
+        try {
+            System.setProperty("instrument.composite-test-second", "false");
+            InstrumentationProperties.refresh();
+            InvocationContext context = compositeHandler.preInvocation(this, getToStringMethod(), EMPTY_ARGS);
+
+            System.clearProperty("instrument.composite-test-second");
+            System.setProperty("instrument.composite-test-first", "false");
+            InstrumentationProperties.refresh();
+            compositeHandler.onSuccess(context, "test");
+
+            // Completion is delivered to the handler which observed the start, with the context it created
+            assertThat(first.invocations).isEqualTo(2);
+            assertThat(first.completedContexts).containsExactlyElementsOf(first.createdContexts);
+            assertThat(second.invocations).isZero();
+        } finally {
+            System.clearProperty("instrument.composite-test-first");
+            System.clearProperty("instrument.composite-test-second");
+            InstrumentationProperties.refresh();
+        }
+    }
+
+    @Test
+    void testAllHandlersDisabled() throws NoSuchMethodException {
+        CountingHandler first =
+                new CountingHandler(InstrumentationProperties.getSystemPropertySupplier("composite-test-first"));
+        CountingHandler second =
+                new CountingHandler(InstrumentationProperties.getSystemPropertySupplier("composite-test-second"));
+        InvocationEventHandler<InvocationContext> compositeHandler = CompositeInvocationEventHandler.of(
+                Arrays.asList(NoOpInvocationEventHandler.INSTANCE, first, second));
+        try {
+            System.setProperty("instrument.composite-test-first", "false");
+            System.setProperty("instrument.composite-test-second", "false");
+            InstrumentationProperties.refresh();
+
+            InvocationContext context = compositeHandler.preInvocation(this, getToStringMethod(), EMPTY_ARGS);
+            compositeHandler.onSuccess(context, "test");
+            compositeHandler.onFailure(context, new RuntimeException());
+            assertThat(first.invocations).isZero();
+            assertThat(second.invocations).isZero();
+        } finally {
+            System.clearProperty("instrument.composite-test-first");
+            System.clearProperty("instrument.composite-test-second");
+            InstrumentationProperties.refresh();
+        }
+    }
+
     @Test
     void testToString() {
         InvocationEventHandler<InvocationContext> handler = CompositeInvocationEventHandler.of(
@@ -222,4 +416,99 @@ final class CompositeInvocationEventHandlerTest {
         @Override
         public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
     }
+
+    private static final class CountingHandler extends AbstractInvocationEventHandler<InvocationContext> {
+        private final List<InvocationContext> createdContexts = new ArrayList<>();
+        private final List<InvocationContext> completedContexts = new ArrayList<>();
+        private int invocations;
+
+        CountingHandler() {}
+
+        CountingHandler(java.util.function.BooleanSupplier isEnabledSupplier) {
+            super(isEnabledSupplier);
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            invocations++;
+            InvocationContext context = DefaultInvocationContext.of(instance, method, args);
+            createdContexts.add(context);
+            return context;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            invocations++;
+            completedContexts.add(context);
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {
+            invocations++;
+        }
+    }
+
+    private static final class SharedContextHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements SharedContextInvocationEventHandler<InvocationContext> {
+
+        @Nullable
+        private InvocationContext preInvocationContext;
+
+        @Nullable
+        private InvocationContext completionContext;
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object _instance, @Nonnull Method _method, @Nonnull Object[] _args) {
+            throw new UnsupportedOperationException("Expected shared context to be used");
+        }
+
+        @Override
+        public InvocationContext preInvocation(InvocationContext sharedContext) {
+            preInvocationContext = sharedContext;
+            return sharedContext;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            completionContext = context;
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable _cause) {
+            completionContext = context;
+        }
+    }
+
+    private static final class BindingInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements MethodBindingInvocationEventHandler<InvocationContext> {
+
+        private final InvocationEventHandler<InvocationContext> boundHandler;
+
+        BindingInvocationEventHandler(InvocationEventHandler<InvocationContext> boundHandler) {
+            this.boundHandler = boundHandler;
+        }
+
+        @Override
+        public InvocationEventHandler<InvocationContext> bind(Method _method) {
+            return boundHandler;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object _instance, @Nonnull Method _method, @Nonnull Object[] _args) {
+            throw new UnsupportedOperationException("Expected bound handler to be used");
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {
+            throw new UnsupportedOperationException("Expected bound handler to be used");
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {
+            throw new UnsupportedOperationException("Expected bound handler to be used");
+        }
+    }
 }
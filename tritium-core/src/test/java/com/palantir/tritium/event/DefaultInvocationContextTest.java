@@ -39,4 +39,26 @@ final class DefaultInvocationContextTest {
                 .doesNotContain("args")
                 .doesNotContain("testArgument");
     }
+
+    @Test
+    void testLazyArgs() throws Exception {
+        Object[] args = {"testArgument"};
+        InvocationContext context = DefaultInvocationContext.ofLazyArgs(
+                this, Object.class.getDeclaredMethod("equals", Object.class), args);
+
+        Object[] capturedArgs = context.getArgs();
+        assertThat(capturedArgs).isEqualTo(args).isNotSameAs(args);
+        assertThat(context.getArgs()).isSameAs(capturedArgs);
+
+        capturedArgs[0] = "modified";
+        assertThat(args).containsExactly("testArgument");
+    }
+
+    @Test
+    void testLazyArgsEmpty() throws Exception {
+        InvocationContext context = DefaultInvocationContext.ofLazyArgs(
+                this, Object.class.getDeclaredMethod("hashCode"), null);
+
+        assertThat(context.getArgs()).isEmpty();
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+final class FutureAwareInvocationEventHandlerTest {
+
+    private InvocationEventHandler<InvocationContext> delegate;
+    private InvocationContext context;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void before() {
+        delegate = mock(InvocationEventHandler.class);
+        context = mock(InvocationContext.class);
+    }
+
+    @Test
+    void testBindSynchronousMethod() throws NoSuchMethodException {
+        assertThat(FutureAwareInvocationEventHandler.bind(delegate, AsyncService.class.getMethod("sync")))
+                .isSameAs(delegate);
+        assertThat(FutureAwareInvocationEventHandler.bind(delegate, AsyncService.class.getMethod("completableFuture")))
+                .isInstanceOf(FutureAwareInvocationEventHandler.class);
+        assertThat(FutureAwareInvocationEventHandler.bind(delegate, AsyncService.class.getMethod("completionStage")))
+                .isInstanceOf(FutureAwareInvocationEventHandler.class);
+        assertThat(FutureAwareInvocationEventHandler.bind(delegate, AsyncService.class.getMethod("listenableFuture")))
+                .isInstanceOf(FutureAwareInvocationEventHandler.class);
+    }
+
+    @Test
+    void testSynchronousResult() throws NoSuchMethodException {
+        InvocationEventHandler<InvocationContext> handler = bind("completableFuture");
+        handler.onSuccess(context, "value");
+        verify(delegate).onSuccess(same(context), same("value"));
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void testCompletableFutureSuccess() throws NoSuchMethodException {
+        InvocationEventHandler<InvocationContext> handler = bind("completableFuture");
+        CompletableFuture<String> future = new CompletableFuture<>();
+        handler.onSuccess(context, future);
+        verifyNoMoreInteractions(delegate);
+
+        future.complete("value");
+        verify(delegate).onSuccess(same(context), same("value"));
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void testCompletableFutureFailure() throws NoSuchMethodException {
+        InvocationEventHandler<InvocationContext> handler = bind("completableFuture");
+        CompletableFuture<String> future = new CompletableFuture<>();
+        handler.onSuccess(context, future.thenApply(value -> value));
+        verifyNoMoreInteractions(delegate);
+
+        IllegalStateException failure = new IllegalStateException();
+        future.completeExceptionally(failure);
+        verify(delegate).onFailure(same(context), same(failure));
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void testListenableFutureSuccess() throws NoSuchMethodException {
+        InvocationEventHandler<InvocationContext> handler = bind("listenableFuture");
+        SettableFuture<String> future = SettableFuture.create();
+        handler.onSuccess(context, future);
+        verifyNoMoreInteractions(delegate);
+
+        future.set("value");
+        verify(delegate).onSuccess(same(context), same("value"));
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void testListenableFutureFailure() throws NoSuchMethodException {
+        InvocationEventHandler<InvocationContext> handler = bind("listenableFuture");
+        SettableFuture<String> future = SettableFuture.create();
+        handler.onSuccess(context, future);
+
+        IllegalStateException failure = new IllegalStateException();
+        future.setException(failure);
+        verify(delegate).onFailure(same(context), same(failure));
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void testListenableFutureCancelled() throws NoSuchMethodException {
+        InvocationEventHandler<InvocationContext> handler = bind("listenableFuture");
+        SettableFuture<String> future = SettableFuture.create();
+        handler.onSuccess(context, future);
+
+        future.cancel(true);
+        verify(delegate).onFailure(same(context), isA(CancellationException.class));
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void testFailureIsNotDeferred() throws NoSuchMethodException {
+        InvocationEventHandler<InvocationContext> handler = bind("completableFuture");
+        IllegalStateException failure = new IllegalStateException();
+        handler.onFailure(context, failure);
+        verify(delegate).onFailure(same(context), same(failure));
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void testThrowingDelegateDoesNotFailFuture() throws NoSuchMethodException {
+        doThrow(new IllegalStateException()).when(delegate).onSuccess(any(), any());
+        InvocationEventHandler<InvocationContext> handler = bind("completableFuture");
+        CompletableFuture<String> future = new CompletableFuture<>();
+        handler.onSuccess(context, future);
+
+        future.complete("value");
+        assertThat(future).isCompletedWithValue("value");
+        verify(delegate).onSuccess(same(context), same("value"));
+    }
+
+    private InvocationEventHandler<InvocationContext> bind(String methodName) throws NoSuchMethodException {
+        Method method = AsyncService.class.getMethod(methodName);
+        return FutureAwareInvocationEventHandler.bind(delegate, method);
+    }
+
+    @SuppressWarnings("unused")
+    interface AsyncService {
+        String sync();
+
+        CompletableFuture<String> completableFuture();
+
+        CompletionStage<String> completionStage();
+
+        ListenableFuture<String> listenableFuture();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.base.Ticker;
+import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+final class HandlerCircuitBreakerTest {
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    void testRateLimitsLogging() {
+        HandlerCircuitBreaker breaker = new HandlerCircuitBreaker("test", 0, 1000, ticker);
+        assertThat(breaker.recordFailure()).isTrue();
+        assertThat(breaker.recordFailure()).isFalse();
+        assertThat(breaker.recordFailure()).isFalse();
+
+        ticker.advance(10, TimeUnit.SECONDS);
+        assertThat(breaker.recordFailure()).isTrue();
+        assertThat(breaker.recordFailure()).isFalse();
+        assertThat(breaker.failures()).isEqualTo(5);
+        assertThat(breaker.allowsInvocation()).isTrue();
+    }
+
+    @Test
+    void testTripsAfterThreshold() {
+        HandlerCircuitBreaker breaker = new HandlerCircuitBreaker("test", 3, 1000, ticker);
+        long trips = HandlerCircuitBreaker.totalTrips();
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure();
+        }
+        assertThat(breaker.allowsInvocation()).isTrue();
+
+        breaker.recordFailure();
+        assertThat(breaker.allowsInvocation()).isFalse();
+        assertThat(HandlerCircuitBreaker.totalTrips()).isEqualTo(trips + 1);
+
+        ticker.advance(999, TimeUnit.MILLISECONDS);
+        assertThat(breaker.allowsInvocation()).isFalse();
+        ticker.advance(1, TimeUnit.MILLISECONDS);
+        assertThat(breaker.allowsInvocation()).isTrue();
+
+        // The failure count restarts once the handler is re-enabled
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure();
+        }
+        assertThat(breaker.allowsInvocation()).isTrue();
+    }
+
+    @Test
+    void testFailuresCountedPerWindow() {
+        HandlerCircuitBreaker breaker = new HandlerCircuitBreaker("test", 3, 1000, ticker);
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure();
+            breaker.recordFailure();
+            ticker.advance(1, TimeUnit.SECONDS);
+        }
+        assertThat(breaker.allowsInvocation()).isTrue();
+        assertThat(breaker.failures()).isEqualTo(20);
+    }
+
+    @Test
+    void testCountsPerHandlerName() {
+        List<String> handlers = new ArrayList<>();
+        HandlerCircuitBreaker.addHandlerListener(handlers::add);
+        HandlerCircuitBreaker breaker = new HandlerCircuitBreaker("per-handler-test", 1, 1000, ticker);
+        assertThat(handlers).contains("per-handler-test");
+
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertThat(HandlerCircuitBreaker.failures("per-handler-test")).isEqualTo(2);
+        assertThat(HandlerCircuitBreaker.trips("per-handler-test")).isEqualTo(1);
+        assertThat(HandlerCircuitBreaker.failures("unknown-handler")).isZero();
+    }
+
+    @Test
+    void testSharedPerHandler() {
+        InvocationEventHandler<?> handler = mock(InvocationEventHandler.class);
+        assertThat(HandlerCircuitBreaker.of(handler))
+                .isSameAs(HandlerCircuitBreaker.of(handler))
+                .isNotSameAs(HandlerCircuitBreaker.of(mock(InvocationEventHandler.class)));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThatThrownBy(() -> new HandlerCircuitBreaker("test", -1, 1000, ticker))
+                .isInstanceOf(SafeIllegalArgumentException.class);
+        assertThatThrownBy(() -> new HandlerCircuitBreaker("test", 1, 0, ticker))
+                .isInstanceOf(SafeIllegalArgumentException.class);
+    }
+
+    private static final class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong(42);
+
+        void advance(long duration, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(duration));
+        }
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    }
+}
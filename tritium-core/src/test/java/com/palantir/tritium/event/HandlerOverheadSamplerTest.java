@@ -0,0 +1,145 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+final class HandlerOverheadSamplerTest {
+
+    private final List<String> samples = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void after() {
+        HandlerOverheadSampler.disable();
+    }
+
+    @Test
+    void testDisabledByDefault() {
+        assertThat(HandlerOverheadSampler.sample()).isNull();
+    }
+
+    @Test
+    void testCompositeHandlersMeasured() throws Exception {
+        HandlerOverheadSampler.enable(1, this::record);
+        InvocationEventHandler<InvocationContext> handler = CompositeInvocationEventHandler.of(
+                ImmutableList.of(new SimpleHandler(), new CountingHandler()));
+        Method method = Object.class.getDeclaredMethod("toString");
+
+        handler.onSuccess(handler.preInvocation(this, method, new Object[0]), "result");
+        handler.onFailure(handler.preInvocation(this, method, new Object[0]), new IllegalStateException());
+
+        assertThat(samples)
+                .containsExactly(
+                        "SimpleHandler:pre",
+                        "CountingHandler:pre",
+                        "CountingHandler:post",
+                        "SimpleHandler:post",
+                        "SimpleHandler:pre",
+                        "CountingHandler:pre",
+                        "CountingHandler:post",
+                        "SimpleHandler:post");
+    }
+
+    @Test
+    void testDisable() throws Exception {
+        HandlerOverheadSampler.enable(1, this::record);
+        assertThat(HandlerOverheadSampler.sample()).isNotNull();
+
+        HandlerOverheadSampler.disable();
+        InvocationEventHandler<InvocationContext> handler = CompositeInvocationEventHandler.of(
+                ImmutableList.of(new SimpleHandler(), new CountingHandler()));
+        Method method = Object.class.getDeclaredMethod("toString");
+        handler.onSuccess(handler.preInvocation(this, method, new Object[0]), "result");
+        assertThat(samples).isEmpty();
+    }
+
+    @Test
+    void testSampleInterval() {
+        HandlerOverheadSampler.enable(1000, this::record);
+        int sampled = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (HandlerOverheadSampler.sample() != null) {
+                sampled++;
+            }
+        }
+        assertThat(sampled).isBetween(1, 1000);
+        assertThatThrownBy(() -> HandlerOverheadSampler.enable(0, this::record))
+                .isInstanceOf(SafeIllegalArgumentException.class);
+    }
+
+    @Test
+    void testHandlerName() {
+        assertThat(HandlerOverheadSampler.handlerName(SimpleHandler.class)).isEqualTo("SimpleHandler");
+        assertThat(HandlerOverheadSampler.handlerName(SimpleHandler.Bound.class)).isEqualTo("SimpleHandler");
+        assertThat(HandlerOverheadSampler.handlerName(CompositeInvocationEventHandler.class))
+                .isEqualTo("CompositeInvocationEventHandler");
+    }
+
+    @Test
+    void testFutureAwareHandlersAttributedToDelegate() throws NoSuchMethodException {
+        HandlerOverheadSampler.enable(1, this::record);
+        Method method = CompletableFuture.class.getMethod("thenApply", Function.class);
+        InvocationEventHandler<InvocationContext> futureAware =
+                FutureAwareInvocationEventHandler.bind(new SimpleHandler(), method);
+        assertThat(futureAware).isInstanceOf(FutureAwareInvocationEventHandler.class);
+        InvocationEventHandler<InvocationContext> handler =
+                CompositeInvocationEventHandler.of(ImmutableList.of(futureAware, new CountingHandler()));
+
+        handler.onSuccess(handler.preInvocation(this, method, new Object[0]), "result");
+
+        assertThat(samples)
+                .containsExactly(
+                        "SimpleHandler:pre", "CountingHandler:pre", "CountingHandler:post", "SimpleHandler:post");
+    }
+
+    private void record(String handler, HandlerOverheadSampler.Phase phase, long nanos) {
+        assertThat(nanos).isNotNegative();
+        samples.add(handler + ':' + phase.tag());
+    }
+
+    private static final class CountingHandler extends SimpleHandler {}
+
+    private static class SimpleHandler extends AbstractInvocationEventHandler<InvocationContext> {
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {}
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
+
+        private static final class Bound extends SimpleHandler {}
+    }
+}
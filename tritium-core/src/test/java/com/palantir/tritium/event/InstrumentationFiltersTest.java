@@ -19,6 +19,7 @@ package com.palantir.tritium.event;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import com.palantir.tritium.api.event.InstrumentationFilter;
 import com.palantir.tritium.test.TestImplementation;
 import com.palantir.tritium.test.TestInterface;
@@ -55,6 +56,19 @@ final class InstrumentationFiltersTest {
         assertThat(filter.shouldInstrument(instance, method, args)).isFalse();
     }
 
+    @Test
+    void testFiltersDoNotRequireArguments() {
+        assertThat(ArgumentsRequirement.requiresArguments(InstrumentationFilters.INSTRUMENT_ALL))
+                .isFalse();
+        assertThat(ArgumentsRequirement.requiresArguments(InstrumentationFilters.INSTRUMENT_NONE))
+                .isFalse();
+        assertThat(ArgumentsRequirement.requiresArguments(
+                        InstrumentationFilters.from((java.util.function.BooleanSupplier) () -> true)))
+                .isFalse();
+        assertThat(ArgumentsRequirement.requiresArguments((InstrumentationFilter) (_instance, _method, _args) -> true))
+                .isTrue();
+    }
+
     private static Method testMethod() {
         try {
             return TestInterface.class.getDeclaredMethod("test");
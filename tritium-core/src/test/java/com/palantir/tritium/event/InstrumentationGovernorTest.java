@@ -0,0 +1,210 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+
+final class InstrumentationGovernorTest {
+
+    private static final Object[] EMPTY_ARGS = {};
+    private static final int EVALUATION_INVOCATIONS = 10;
+    // The first window of invocations is a warmup which is not evaluated
+    private static final int WARMUP_INVOCATIONS = EVALUATION_INVOCATIONS;
+    private static final long REEVALUATION_MINUTES = 5;
+
+    private final List<String> events = new ArrayList<>();
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    void testCheapHandlerRemainsInstrumented() {
+        InstrumentationGovernor governor = governor(0);
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(governor.govern(new RecordingHandler(0)), method());
+
+        invoke(handler, WARMUP_INVOCATIONS + EVALUATION_INVOCATIONS, 1);
+
+        assertThat(handler.isEnabled()).isTrue();
+        assertThat(governor.demotedMethods()).isEmpty();
+        assertThat(events).hasSize((WARMUP_INVOCATIONS + EVALUATION_INVOCATIONS) * 2);
+    }
+
+    @Test
+    void testExpensiveHandlerIsDisabled() {
+        InstrumentationGovernor governor = governor(0);
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(governor.govern(new RecordingHandler(1)), method());
+
+        assertThat(handler.isEnabled()).isTrue();
+        invoke(handler, WARMUP_INVOCATIONS + EVALUATION_INVOCATIONS, 0);
+
+        assertThat(governor.demotedMethods()).containsExactly(method());
+        assertThat(governor.isDemoted(method())).isTrue();
+        assertThat(IntStream.range(0, 100).filter(_i -> handler.isEnabled())).isEmpty();
+        // Contexts of the delegate handler are passed through once demoted
+        assertThat(events).hasSize((WARMUP_INVOCATIONS + EVALUATION_INVOCATIONS) * 2);
+    }
+
+    @Test
+    void testExpensiveHandlerIsSampled() {
+        InstrumentationGovernor governor = governor(2);
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(governor.govern(new RecordingHandler(1)), method());
+
+        invoke(handler, WARMUP_INVOCATIONS + EVALUATION_INVOCATIONS, 0);
+
+        assertThat(governor.demotedMethods()).containsExactly(method());
+        assertThat(IntStream.range(0, 10_000).filter(_i -> handler.isEnabled()).count())
+                .isBetween(4_000L, 6_000L);
+    }
+
+    @Test
+    void testWarmupIsNotEvaluated() {
+        InstrumentationGovernor governor = governor(0);
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(governor.govern(new RecordingHandler(1)), method());
+
+        invoke(handler, WARMUP_INVOCATIONS, 0);
+
+        assertThat(governor.demotedMethods()).isEmpty();
+        assertThat(handler.isEnabled()).isTrue();
+    }
+
+    @Test
+    void testDemotedMethodIsPromotedWhenReevaluated() {
+        InstrumentationGovernor governor = governor(0);
+        RecordingHandler recordingHandler = new RecordingHandler(1);
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(governor.govern(recordingHandler), method());
+        invoke(handler, WARMUP_INVOCATIONS + EVALUATION_INVOCATIONS, 0);
+        assertThat(governor.demotedMethods()).containsExactly(method());
+
+        recordingHandler.handlerMillis = 0;
+        ticker.advance(REEVALUATION_MINUTES, TimeUnit.MINUTES);
+        assertThat(IntStream.range(0, 100_000).filter(_i -> handler.isEnabled()).findFirst()).isPresent();
+        assertThat(governor.isDemoted(method())).isFalse();
+
+        invoke(handler, EVALUATION_INVOCATIONS, 1);
+        assertThat(governor.demotedMethods()).isEmpty();
+        assertThat(IntStream.range(0, 100).allMatch(_i -> handler.isEnabled())).isTrue();
+    }
+
+    @Test
+    void testMethodListener() {
+        InstrumentationGovernor governor = governor(0);
+        List<Method> methods = new ArrayList<>();
+        governor.addMethodListener(methods::add);
+        InvocationEventHandler<InvocationContext> handler = governor.govern(new RecordingHandler(0));
+        MethodBindingInvocationEventHandler.bind(handler, method());
+        MethodBindingInvocationEventHandler.bind(handler, method());
+
+        assertThat(methods).containsExactly(method());
+    }
+
+    @Test
+    void testUnboundHandlerIsTransparent() {
+        InstrumentationGovernor governor = governor(0);
+        InvocationEventHandler<InvocationContext> handler = governor.govern(new RecordingHandler(1));
+
+        invoke(handler, EVALUATION_INVOCATIONS, 0);
+
+        assertThat(handler.isEnabled()).isTrue();
+        assertThat(governor.demotedMethods()).isEmpty();
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThatThrownBy(() -> InstrumentationGovernor.disabling(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> InstrumentationGovernor.sampling(1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private InstrumentationGovernor governor(int demotedSampleInterval) {
+        return new InstrumentationGovernor(
+                0.5,
+                demotedSampleInterval,
+                EVALUATION_INVOCATIONS,
+                TimeUnit.MINUTES.toNanos(REEVALUATION_MINUTES),
+                ticker);
+    }
+
+    private void invoke(InvocationEventHandler<InvocationContext> handler, int invocations, long methodMillis) {
+        for (int i = 0; i < invocations; i++) {
+            InvocationContext context = handler.preInvocation(this, method(), EMPTY_ARGS);
+            Uninterruptibles.sleepUninterruptibly(methodMillis, TimeUnit.MILLISECONDS);
+            handler.onSuccess(context, null);
+        }
+    }
+
+    private static Method method() {
+        try {
+            return Object.class.getMethod("hashCode");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final class RecordingHandler extends AbstractInvocationEventHandler<InvocationContext> {
+        private volatile long handlerMillis;
+
+        RecordingHandler(long handlerMillis) {
+            this.handlerMillis = handlerMillis;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            events.add("pre");
+            Uninterruptibles.sleepUninterruptibly(handlerMillis, TimeUnit.MILLISECONDS);
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            assertThat(context).isInstanceOf(DefaultInvocationContext.class);
+            events.add("success");
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {
+            events.add("failure");
+        }
+    }
+
+    private static final class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
@@ -91,6 +91,45 @@ final class InstrumentationPropertiesTest {
         assertThat(supplier.asBoolean()).isTrue();
     }
 
+    @Test
+    void testSystemPropertySupplierRefresh() {
+        BooleanSupplier supplier = InstrumentationProperties.getSystemPropertySupplier("test");
+        BooleanSupplier other = InstrumentationProperties.getSystemPropertySupplier("other");
+        assertThat(supplier.asBoolean()).isTrue();
+
+        System.setProperty("instrument.test", "false");
+        assertThat(supplier.asBoolean()).isTrue();
+        InstrumentationProperties.refresh();
+        assertThat(supplier.asBoolean()).isFalse();
+        assertThat(other.asBoolean()).isTrue();
+
+        System.clearProperty("instrument.test");
+        System.setProperty("instrument", "false");
+        InstrumentationProperties.refresh();
+        assertThat(supplier.asBoolean()).isFalse();
+        assertThat(other.asBoolean()).isFalse();
+
+        System.clearProperty("instrument");
+        InstrumentationProperties.refresh();
+        assertThat(supplier.asBoolean()).isTrue();
+        assertThat(other.asBoolean()).isTrue();
+    }
+
+    @Test
+    void testSystemPropertySupplierHasNoSideEffects() {
+        BooleanSupplier supplier = InstrumentationProperties.getSystemPropertySupplier("test");
+        System.setProperty("instrument.test", "false");
+        System.setProperty("instrument", "false");
+
+        assertThat(InstrumentationProperties.getSystemPropertySupplier("test")).isSameAs(supplier);
+        assertThat(InstrumentationProperties.getSystemPropertySupplier("other").asBoolean())
+                .isTrue();
+        assertThat(supplier.asBoolean()).isTrue();
+
+        InstrumentationProperties.refresh();
+        assertThat(supplier.asBoolean()).isFalse();
+    }
+
     @Test
     @SuppressWarnings("NullAway") // explicitly testing null
     void invalid() {
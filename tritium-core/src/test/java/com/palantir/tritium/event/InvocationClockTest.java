@@ -0,0 +1,132 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+
+final class InvocationClockTest {
+
+    @Test
+    void testSystemClock() {
+        long before = System.nanoTime();
+        long now = InvocationClock.system().nanoTime();
+        assertThat(now).isGreaterThanOrEqualTo(before).isLessThanOrEqualTo(System.nanoTime());
+    }
+
+    @Test
+    void testCoarseClockAdvances() {
+        InvocationClock clock = InvocationClock.coarse();
+        assertThat(InvocationClock.coarse()).isSameAs(clock);
+        long start = clock.nanoTime();
+        await().atMost(Duration.ofSeconds(5)).until(() -> clock.nanoTime() > start);
+        assertThat(clock.nanoTime()).isLessThanOrEqualTo(System.nanoTime());
+    }
+
+    @Test
+    void testCompositeReadsClockOncePerEvent() throws NoSuchMethodException {
+        AtomicLong time = new AtomicLong(100);
+        AtomicLong reads = new AtomicLong();
+        InvocationClock clock = () -> {
+            reads.incrementAndGet();
+            return time.get();
+        };
+        ElapsedRecordingHandler first = new ElapsedRecordingHandler();
+        ElapsedRecordingHandler second = new ElapsedRecordingHandler();
+        InvocationEventHandler<InvocationContext> handler =
+                CompositeInvocationEventHandler.of(Arrays.asList(first, second), clock);
+        Method method = Object.class.getDeclaredMethod("toString");
+
+        InvocationContext context = handler.preInvocation(this, method, new Object[0]);
+        time.set(142);
+        handler.onSuccess(context, "result");
+
+        assertThat(reads).hasValue(2);
+        assertThat(context.getStartTimeNanos()).isEqualTo(100);
+        assertThat(first.elapsed).containsExactly(42L);
+        assertThat(second.elapsed).containsExactly(42L);
+    }
+
+    @Test
+    void testSingleHandlerObservesSpecifiedClock() throws NoSuchMethodException {
+        AtomicLong time = new AtomicLong(100);
+        ElapsedRecordingHandler recording = new ElapsedRecordingHandler();
+        assertThat(CompositeInvocationEventHandler.of(Collections.singletonList(recording))).isSameAs(recording);
+        InvocationEventHandler<InvocationContext> handler =
+                CompositeInvocationEventHandler.of(Collections.singletonList(recording), time::get);
+
+        InvocationContext context =
+                handler.preInvocation(this, Object.class.getDeclaredMethod("toString"), new Object[0]);
+        time.set(142);
+        handler.onSuccess(context, "result");
+
+        assertThat(recording.elapsed).containsExactly(42L);
+    }
+
+    @Test
+    void testElapsedNanosWithoutCompletionTime() throws NoSuchMethodException {
+        long before = System.nanoTime();
+        InvocationContext context =
+                DefaultInvocationContext.of(this, Object.class.getDeclaredMethod("toString"), new Object[0]);
+
+        assertThat(InvocationClock.elapsedNanos(context))
+                .isNotNegative()
+                .isLessThanOrEqualTo(System.nanoTime() - before);
+    }
+
+    private static final class ElapsedRecordingHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements SharedContextInvocationEventHandler<InvocationContext> {
+
+        private final List<Long> elapsed = new ArrayList<>();
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public InvocationContext preInvocation(InvocationContext sharedContext) {
+            return sharedContext;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            if (context != null) {
+                elapsed.add(InvocationClock.elapsedNanos(context));
+            }
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable _cause) {
+            if (context != null) {
+                elapsed.add(InvocationClock.elapsedNanos(context));
+            }
+        }
+    }
+}
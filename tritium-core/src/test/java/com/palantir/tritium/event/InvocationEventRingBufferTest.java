@@ -0,0 +1,82 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+final class InvocationEventRingBufferTest {
+
+    @Test
+    void testOfferAndDrain() {
+        InvocationEventRingBuffer buffer = new InvocationEventRingBuffer(4);
+        IllegalStateException failure = new IllegalStateException();
+        assertThat(buffer.capacity()).isEqualTo(4);
+        assertThat(buffer.offer(1, 10L, 20L, null)).isTrue();
+        assertThat(buffer.offer(2, 30L, 40L, failure)).isTrue();
+        assertThat(buffer.size()).isEqualTo(2);
+
+        List<String> events = new ArrayList<>();
+        assertThat(buffer.drain(recorder(events), 16)).isEqualTo(2);
+        assertThat(events).containsExactly("1:10:20:null", "2:30:40:" + failure);
+        assertThat(buffer.size()).isZero();
+        assertThat(buffer.drain(recorder(events), 16)).isZero();
+    }
+
+    @Test
+    void testFullBuffer() {
+        InvocationEventRingBuffer buffer = new InvocationEventRingBuffer(2);
+        assertThat(buffer.offer(0, 0L, 0L, null)).isTrue();
+        assertThat(buffer.offer(1, 0L, 0L, null)).isTrue();
+        assertThat(buffer.offer(2, 0L, 0L, null)).isFalse();
+        assertThat(buffer.size()).isEqualTo(2);
+
+        List<String> events = new ArrayList<>();
+        assertThat(buffer.drain(recorder(events), 1)).isEqualTo(1);
+        assertThat(buffer.offer(3, 0L, 0L, null)).isTrue();
+        assertThat(buffer.drain(recorder(events), 16)).isEqualTo(2);
+        assertThat(events).containsExactly("0:0:0:null", "1:0:0:null", "3:0:0:null");
+    }
+
+    @Test
+    void testWrapAround() {
+        InvocationEventRingBuffer buffer = new InvocationEventRingBuffer(2);
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            assertThat(buffer.offer(i, i, i, null)).isTrue();
+            assertThat(buffer.drain(recorder(events), 16)).isEqualTo(1);
+        }
+        assertThat(events).hasSize(100).endsWith("99:99:99:null");
+    }
+
+    @Test
+    void testInvalidCapacity() {
+        assertThatThrownBy(() -> new InvocationEventRingBuffer(1)).isInstanceOf(SafeIllegalArgumentException.class);
+        assertThatThrownBy(() -> new InvocationEventRingBuffer(3)).isInstanceOf(SafeIllegalArgumentException.class);
+        assertThatThrownBy(() -> new InvocationEventRingBuffer(0)).isInstanceOf(SafeIllegalArgumentException.class);
+    }
+
+    private static InvocationEventRingBuffer.EventSink recorder(List<String> events) {
+        return (methodIndex, startTimeNanos, durationNanos, cause) ->
+                events.add(methodIndex + ":" + startTimeNanos + ":" + durationNanos + ":" + cause);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+
+final class PooledInvocationContextTest {
+
+    private static final Object[] EMPTY_ARGS = {};
+
+    @Test
+    void testReusedOnAcquiringThread() throws NoSuchMethodException {
+        Method method = Object.class.getMethod("toString");
+        PooledInvocationContext first = PooledInvocationContext.acquire(1L, this, method, new Object[] {"arg"}, 2);
+        first.release();
+
+        PooledInvocationContext second = PooledInvocationContext.acquire(2L, this, method, EMPTY_ARGS, 2);
+        assertThat(second).isSameAs(first);
+        assertThat(second.getStartTimeNanos()).isEqualTo(2L);
+        assertThat(second.isCompleted()).isFalse();
+        second.release();
+    }
+
+    @Test
+    void testReleaseClearsArguments() throws NoSuchMethodException {
+        Method method = Object.class.getMethod("toString");
+        Object[] args = {"arg"};
+        PooledInvocationContext first = PooledInvocationContext.acquire(1L, this, method, args, 1);
+        assertThat(first.getArgs()).containsExactly("arg").isNotSameAs(args);
+        first.attach("attachment");
+        first.getContexts()[0] = DefaultInvocationContext.of(this, method, args);
+        first.complete(3L);
+        first.release();
+        assertThatThrownBy(first::getArgs).isInstanceOf(SafeIllegalStateException.class);
+
+        PooledInvocationContext second = PooledInvocationContext.acquire(4L, this, method, null, 1);
+        assertThat(second).isSameAs(first);
+        assertThat(second.getArgs()).isEmpty();
+        assertThat(second.getAttachment()).isNull();
+        assertThat(second.getContexts()).containsOnlyNulls();
+        assertThat(second.isCompleted()).isFalse();
+        second.release();
+    }
+
+    @Test
+    void testNestedInvocationsUseDistinctContexts() throws NoSuchMethodException {
+        Method method = Object.class.getMethod("toString");
+        PooledInvocationContext outer = PooledInvocationContext.acquire(1L, this, method, EMPTY_ARGS, 1);
+        PooledInvocationContext inner = PooledInvocationContext.acquire(2L, this, method, EMPTY_ARGS, 1);
+        assertThat(inner).isNotSameAs(outer);
+        inner.release();
+        outer.release();
+    }
+
+    @Test
+    void testReleasedOnOtherThreadNotPooled() throws Exception {
+        Method method = Object.class.getMethod("toString");
+        PooledInvocationContext context = PooledInvocationContext.acquire(1L, this, method, EMPTY_ARGS, 1);
+        releaseOnOtherThread(context);
+
+        PooledInvocationContext next = PooledInvocationContext.acquire(2L, this, method, EMPTY_ARGS, 1);
+        assertThat(next).isNotSameAs(context);
+        next.release();
+    }
+
+    private static void releaseOnOtherThread(PooledInvocationContext context)
+            throws ExecutionException, InterruptedException {
+        CompletableFuture.runAsync(context::release).get();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import com.google.common.base.Ticker;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+
+final class SamplingInstrumentationFilterTest {
+
+    private static final Object[] EMPTY_ARGS = {};
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    void testIntervalOfOneInstrumentsEverything() {
+        SamplingInstrumentationFilter filter = InstrumentationFilters.sampling(1);
+        Method method = method("hashCode");
+        for (int i = 0; i < 1000; i++) {
+            assertThat(filter.shouldInstrument(this, method, EMPTY_ARGS)).isTrue();
+        }
+        assertThat(filter.getSampleRate(method)).isEqualTo(1.0);
+    }
+
+    @Test
+    void testFixedInterval() {
+        SamplingInstrumentationFilter filter = InstrumentationFilters.sampling(10);
+        Method method = method("hashCode");
+        assertThat(sampledFraction(filter, method, 100_000)).isCloseTo(0.1, within(0.01));
+        assertThat(filter.getSampleRate(method)).isEqualTo(0.1);
+    }
+
+    @Test
+    void testAdaptiveIntervalConvergesPerMethod() {
+        SamplingInstrumentationFilter filter = new SamplingInstrumentationFilter(1, 100, ticker);
+        Method busy = method("hashCode");
+        Method quiet = method("toString");
+        for (int period = 0; period < 10; period++) {
+            sampledFraction(filter, busy, 100_000);
+            sampledFraction(filter, quiet, 50);
+            ticker.advance(1, TimeUnit.SECONDS);
+        }
+        // 100 of 100,000 invocations per second
+        assertThat(filter.getSampleRate(busy)).isBetween(0.0005, 0.002);
+        // Fewer invocations than the target are all instrumented
+        assertThat(filter.getSampleRate(quiet)).isEqualTo(1.0);
+    }
+
+    @Test
+    void testAdaptiveIntervalRecoversWhenLoadDrops() {
+        SamplingInstrumentationFilter filter = new SamplingInstrumentationFilter(1, 100, ticker);
+        Method method = method("hashCode");
+        for (int period = 0; period < 10; period++) {
+            sampledFraction(filter, method, 100_000);
+            ticker.advance(1, TimeUnit.SECONDS);
+        }
+        assertThat(filter.getSampleRate(method)).isLessThan(0.01);
+        for (int period = 0; period < 10; period++) {
+            sampledFraction(filter, method, 1_000);
+            ticker.advance(1, TimeUnit.SECONDS);
+        }
+        assertThat(filter.getSampleRate(method)).isGreaterThan(0.05);
+    }
+
+    @Test
+    void testSampledHandlerBindsSamplerPerMethod() {
+        SamplingInstrumentationFilter filter = InstrumentationFilters.sampling(10);
+        InvocationEventHandler<InvocationContext> handler = filter.sample(new EnabledHandler());
+        assertThat(handler.isEnabled()).isTrue();
+        assertThat(ArgumentsRequirement.requiresArguments(handler)).isFalse();
+
+        InvocationEventHandler<InvocationContext> bound =
+                MethodBindingInvocationEventHandler.bind(handler, method("hashCode"));
+        int sampled = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (bound.isEnabled()) {
+                sampled++;
+            }
+        }
+        assertThat(sampled / 100_000.0).isCloseTo(0.1, within(0.01));
+    }
+
+    @Test
+    void testMethodListener() {
+        SamplingInstrumentationFilter filter = InstrumentationFilters.sampling(2);
+        filter.shouldInstrument(this, method("hashCode"), EMPTY_ARGS);
+        List<Method> methods = new ArrayList<>();
+        filter.addMethodListener(methods::add);
+        assertThat(methods).containsExactly(method("hashCode"));
+
+        InvocationEventHandler<InvocationContext> handler = filter.sample(new EnabledHandler());
+        MethodBindingInvocationEventHandler.bind(handler, method("toString"));
+        MethodBindingInvocationEventHandler.bind(handler, method("toString"));
+        assertThat(methods).containsExactly(method("hashCode"), method("toString"));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThatThrownBy(() -> InstrumentationFilters.sampling(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> InstrumentationFilters.adaptiveSampling(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testDoesNotRequireArguments() {
+        assertThat(ArgumentsRequirement.requiresArguments(InstrumentationFilters.sampling(2)))
+                .isFalse();
+    }
+
+    private double sampledFraction(SamplingInstrumentationFilter filter, Method method, int invocations) {
+        int sampled = 0;
+        for (int i = 0; i < invocations; i++) {
+            if (filter.shouldInstrument(this, method, EMPTY_ARGS)) {
+                sampled++;
+            }
+        }
+        return (double) sampled / invocations;
+    }
+
+    private static Method method(String name) {
+        try {
+            return Object.class.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class EnabledHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements ArgumentsRequirement {
+        @Override
+        public boolean requiresArguments() {
+            return false;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {}
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
+    }
+
+    private static final class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+
+final class SwappableInvocationEventHandlerTest {
+
+    private static final Object[] EMPTY_ARGS = {};
+
+    private final List<String> events = new ArrayList<>();
+
+    @Test
+    void testSwapBoundHandler() {
+        SwappableInvocationEventHandler swappable =
+                SwappableInvocationEventHandler.of(ImmutableList.of(new RecordingHandler("first")));
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(swappable, method());
+
+        invoke(handler);
+        swappable.setHandlers(ImmutableList.of(new RecordingHandler("second"), new RecordingHandler("third")));
+        invoke(handler);
+
+        assertThat(events)
+                .containsExactly(
+                        "first:pre",
+                        "first:success",
+                        "second:pre",
+                        "third:pre",
+                        "third:success",
+                        "second:success");
+    }
+
+    @Test
+    void testInFlightInvocationCompletesWithOriginalHandlers() {
+        SwappableInvocationEventHandler swappable =
+                SwappableInvocationEventHandler.of(ImmutableList.of(new RecordingHandler("first")));
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(swappable, method());
+
+        InvocationContext context = handler.preInvocation(this, method(), EMPTY_ARGS);
+        swappable.setHandlers(ImmutableList.of(new RecordingHandler("second")));
+        handler.onFailure(context, new RuntimeException());
+        invoke(swappable);
+
+        assertThat(events).containsExactly("first:pre", "first:failure", "second:pre", "second:success");
+    }
+
+    @Test
+    void testEmptyHandlersDisabled() {
+        SwappableInvocationEventHandler swappable =
+                SwappableInvocationEventHandler.of(ImmutableList.of(new RecordingHandler("first")));
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(swappable, method());
+        assertThat(handler.isEnabled()).isTrue();
+
+        swappable.setHandlers(ImmutableList.of());
+
+        assertThat(swappable.getHandlers()).isEmpty();
+        assertThat(swappable.isEnabled()).isFalse();
+        assertThat(handler.isEnabled()).isFalse();
+        assertThat(swappable.requiresArguments()).isTrue();
+    }
+
+    @Test
+    void testBoundHandlerEnabledBySpecializedFlags() {
+        RecordingHandler flagged = new RecordingHandler(
+                "flagged", InstrumentationProperties.getSystemPropertySupplier("swappable-test"));
+        SwappableInvocationEventHandler swappable = SwappableInvocationEventHandler.of(ImmutableList.of(flagged));
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(swappable, method());
+        assertThat(handler.isEnabled()).isTrue();
+
+        System.setProperty("instrument.swappable-test", "false");
+        try {
+            InstrumentationProperties.refresh();
+            assertThat(handler.isEnabled()).isFalse();
+        } finally {
+            System.clearProperty("instrument.swappable-test");
+            InstrumentationProperties.refresh();
+        }
+        assertThat(handler.isEnabled()).isTrue();
+    }
+
+    @Test
+    void testAlwaysRequiresArguments() {
+        SwappableInvocationEventHandler swappable =
+                SwappableInvocationEventHandler.of(ImmutableList.of(new ArgumentFreeHandler()));
+        assertThat(swappable.requiresArguments()).isTrue();
+
+        swappable.setHandlers(ImmutableList.of(new ArgumentFreeHandler(), new RecordingHandler("first")));
+        assertThat(swappable.requiresArguments()).isTrue();
+    }
+
+    @Test
+    void testBoundHandlerRequiresArgumentsOfCurrentChain() {
+        SwappableInvocationEventHandler swappable =
+                SwappableInvocationEventHandler.of(ImmutableList.of(new ArgumentFreeHandler()));
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(swappable, method());
+        assertThat(ArgumentsRequirement.requiresArguments(handler)).isFalse();
+
+        swappable.setHandlers(ImmutableList.of(new ArgumentFreeHandler(), new RecordingHandler("first")));
+        assertThat(ArgumentsRequirement.requiresArguments(handler)).isTrue();
+    }
+
+    @Test
+    void testContextsCreatedByChain() {
+        SwappableInvocationEventHandler swappable =
+                SwappableInvocationEventHandler.of(ImmutableList.of(new RecordingHandler("first")));
+        InvocationEventHandler<InvocationContext> handler =
+                MethodBindingInvocationEventHandler.bind(swappable, method());
+
+        InvocationContext context = handler.preInvocation(this, method(), EMPTY_ARGS);
+
+        assertThat(CompositeInvocationEventHandler.ownerOf(context)).isNotNull();
+        handler.onSuccess(context, null);
+        assertThat(events).containsExactly("first:pre", "first:success");
+    }
+
+    private void invoke(InvocationEventHandler<InvocationContext> handler) {
+        InvocationContext context = handler.preInvocation(this, method(), EMPTY_ARGS);
+        handler.onSuccess(context, null);
+    }
+
+    private static Method method() {
+        try {
+            return Object.class.getMethod("hashCode");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class ArgumentFreeHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements ArgumentsRequirement {
+
+        @Override
+        public boolean requiresArguments() {
+            return false;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {}
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
+    }
+
+    private final class RecordingHandler extends AbstractInvocationEventHandler<InvocationContext> {
+        private final String name;
+
+        RecordingHandler(String name) {
+            this.name = name;
+        }
+
+        RecordingHandler(String name, BooleanSupplier isEnabledSupplier) {
+            super(isEnabledSupplier);
+            this.name = name;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            events.add(name + ":pre");
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {
+            events.add(name + ":success");
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {
+            events.add(name + ":failure");
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.palantir.tritium.event.InstrumentationProperties;
+import com.palantir.tritium.event.log.LoggingInvocationEventHandler;
+import com.palantir.tritium.event.log.LoggingLevel;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.proxy.Instrumentation;
+import com.palantir.tritium.tracing.TracingInvocationEventHandler;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares composite handler dispatch with handlers fused into the generated class when many handler types are in use,
+ * as is common in services with many instrumented components. Each instrumented service uses a different combination
+ * of handlers so that shared call sites observe several handler types.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway"})
+public class HandlerDispatchBenchmark {
+
+    @Param({"COMPOSITE", "FUSED"})
+    private DispatchMode mode;
+
+    @SuppressWarnings("unused")
+    public enum DispatchMode {
+        COMPOSITE,
+        FUSED;
+
+        void initialize() {
+            System.setProperty("instrument.fused-handlers", Boolean.toString(this.equals(FUSED)));
+            InstrumentationProperties.reload();
+        }
+    }
+
+    private ProxyBenchmark.Service metricsAndTracing;
+    private ProxyBenchmark.Service taggedMetricsAndLogging;
+    private ProxyBenchmark.Service tracingAndBlackhole;
+    private ProxyBenchmark.Service everything;
+
+    @Setup
+    public void before(Blackhole blackhole) {
+        mode.initialize();
+        ProxyBenchmark.Service raw = input -> input;
+        Class<ProxyBenchmark.Service> serviceInterface = ProxyBenchmark.Service.class;
+
+        metricsAndTracing = Instrumentation.builder(serviceInterface, raw)
+                .withMetrics(new MetricRegistry())
+                .withHandler(TracingInvocationEventHandler.create(serviceInterface.getName()))
+                .build();
+
+        taggedMetricsAndLogging = Instrumentation.builder(serviceInterface, raw)
+                .withTaggedMetrics(new DefaultTaggedMetricRegistry())
+                .withLogging(
+                        Instrumentation.getPerformanceLoggerForInterface(serviceInterface),
+                        LoggingLevel.TRACE,
+                        (LongPredicate) LoggingInvocationEventHandler.NEVER_LOG)
+                .build();
+
+        tracingAndBlackhole = Instrumentation.builder(serviceInterface, raw)
+                .withHandler(TracingInvocationEventHandler.create(serviceInterface.getName()))
+                .withHandler(new BlackholeInvocationEventHandler(blackhole))
+                .build();
+
+        everything = Instrumentation.builder(serviceInterface, raw)
+                .withMetrics(new MetricRegistry())
+                .withTaggedMetrics(new DefaultTaggedMetricRegistry())
+                .withHandler(TracingInvocationEventHandler.create(serviceInterface.getName()))
+                .withHandler(new BlackholeInvocationEventHandler(blackhole))
+                .build();
+    }
+
+    @TearDown
+    public void after() {
+        System.clearProperty("instrument.fused-handlers");
+        InstrumentationProperties.reload();
+    }
+
+    @Benchmark
+    public void manyHandlerTypes(Blackhole blackhole) {
+        blackhole.consume(metricsAndTracing.echo("test"));
+        blackhole.consume(taggedMetricsAndLogging.echo("test"));
+        blackhole.consume(tracingAndBlackhole.echo("test"));
+        blackhole.consume(everything.echo("test"));
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(HandlerDispatchBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
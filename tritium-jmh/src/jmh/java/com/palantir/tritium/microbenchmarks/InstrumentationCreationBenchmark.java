@@ -50,16 +50,18 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 @SuppressWarnings({"designforextension", "NullAway"})
 public class InstrumentationCreationBenchmark {
 
-    @Param({"BYTE_BUDDY", "DYNAMIC_PROXY"})
+    @Param({"BYTE_BUDDY", "DYNAMIC_PROXY", "GENERATED"})
     private InstrumentationMode mode;
 
     @SuppressWarnings("unused")
     public enum InstrumentationMode {
         BYTE_BUDDY,
-        DYNAMIC_PROXY;
+        DYNAMIC_PROXY,
+        GENERATED;
 
         void initialize() {
             System.setProperty("instrument.dynamic-proxy", Boolean.toString(this.equals(DYNAMIC_PROXY)));
+            System.setProperty("instrument.generated-classes", Boolean.toString(this.equals(GENERATED)));
             InstrumentationProperties.reload();
         }
     }
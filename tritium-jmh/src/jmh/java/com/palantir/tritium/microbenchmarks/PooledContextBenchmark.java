@@ -0,0 +1,170 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
+import com.palantir.tritium.event.AbstractInvocationEventHandler;
+import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.InstrumentationProperties;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.SharedContextInvocationEventHandler;
+import com.palantir.tritium.proxy.Instrumentation;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures allocation of invocations through a composite of handlers sharing a single context, with and without
+ * thread local context pooling. Running {@link #main} fails if pooled invocations allocate in steady state.
+ *
+ * <p>Only composites of several handlers pool contexts. A single handler is not wrapped in a composite, so invocations
+ * allocate whatever context that handler creates regardless of the mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway"})
+public class PooledContextBenchmark {
+
+    // Secondary results of the GC profiler are prefixed with a middle dot
+    private static final String ALLOCATION_RATE_NORM = "\u00b7gc.alloc.rate.norm";
+
+    /** Bytes allocated per operation tolerated as measurement noise. */
+    private static final double MAX_POOLED_BYTES_PER_OP = 1.0;
+
+    @Param({"DEFAULT", "POOLED"})
+    private ContextMode mode;
+
+    @SuppressWarnings("unused")
+    public enum ContextMode {
+        DEFAULT,
+        POOLED;
+
+        void initialize() {
+            System.setProperty("instrument.pooled-contexts", Boolean.toString(this.equals(POOLED)));
+            InstrumentationProperties.reload();
+        }
+    }
+
+    private ProxyBenchmark.Service service;
+
+    @Setup
+    public void before(Blackhole blackhole) {
+        mode.initialize();
+        ProxyBenchmark.Service raw = input -> input;
+        service = Instrumentation.builder(ProxyBenchmark.Service.class, raw)
+                .withHandler(new SharedContextTimingHandler(blackhole))
+                .withHandler(new SharedContextTimingHandler(blackhole))
+                .build();
+    }
+
+    @TearDown
+    public void after() {
+        System.clearProperty("instrument.pooled-contexts");
+        InstrumentationProperties.reload();
+    }
+
+    @Benchmark
+    public String sharedContextHandlers() {
+        return service.echo("test");
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(PooledContextBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        for (RunResult result : results) {
+            if (ContextMode.POOLED.name().equals(result.getParams().getParam("mode"))) {
+                Result<?> allocation = result.getSecondaryResults().get(ALLOCATION_RATE_NORM);
+                if (allocation == null || allocation.getScore() > MAX_POOLED_BYTES_PER_OP) {
+                    throw new SafeIllegalStateException(
+                            "Pooled invocation contexts allocated in steady state",
+                            SafeArg.of("bytesPerOp", allocation == null ? null : allocation.getScore()));
+                }
+            }
+        }
+    }
+
+    /** Allocation free handler recording durations using the shared invocation context. */
+    private static final class SharedContextTimingHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements ArgumentsRequirement, SharedContextInvocationEventHandler<InvocationContext> {
+
+        private final Blackhole blackhole;
+
+        SharedContextTimingHandler(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return false;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public InvocationContext preInvocation(InvocationContext sharedContext) {
+            return sharedContext;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            if (context != null) {
+                blackhole.consume(System.nanoTime() - context.getStartTimeNanos());
+            }
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable _cause) {
+            if (context != null) {
+                blackhole.consume(System.nanoTime() - context.getStartTimeNanos());
+            }
+        }
+    }
+}
@@ -21,6 +21,8 @@ import com.google.common.collect.ImmutableList;
 import com.palantir.logsafe.exceptions.SafeIllegalStateException;
 import com.palantir.tracing.Tracer;
 import com.palantir.tritium.Tritium;
+import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.event.InstrumentationFilters;
 import com.palantir.tritium.event.InstrumentationProperties;
 import com.palantir.tritium.event.log.LoggingInvocationEventHandler;
 import com.palantir.tritium.event.log.LoggingLevel;
@@ -67,16 +69,20 @@ public class ProxyBenchmark {
 
     private static final String DEFAULT_LOG_LEVEL = "org.slf4j.simpleLogger.defaultLogLevel";
 
-    @Param({"BYTE_BUDDY", "DYNAMIC_PROXY"})
+    @Param({"BYTE_BUDDY", "FUSED_BYTE_BUDDY", "DYNAMIC_PROXY", "METHOD_HANDLE_PROXY"})
     private InstrumentationMode mode;
 
     @SuppressWarnings("unused")
     public enum InstrumentationMode {
         BYTE_BUDDY,
-        DYNAMIC_PROXY;
+        FUSED_BYTE_BUDDY,
+        DYNAMIC_PROXY,
+        METHOD_HANDLE_PROXY;
 
         void initialize() {
             System.setProperty("instrument.dynamic-proxy", Boolean.toString(this.equals(DYNAMIC_PROXY)));
+            System.setProperty("instrument.method-handle-proxy", Boolean.toString(this.equals(METHOD_HANDLE_PROXY)));
+            System.setProperty("instrument.fused-handlers", Boolean.toString(this.equals(FUSED_BYTE_BUDDY)));
             InstrumentationProperties.reload();
         }
     }
@@ -90,6 +96,9 @@ public class ProxyBenchmark {
     private Service instrumentedWithMetrics;
     private Service instrumentedWithTaggedMetrics;
     private Service instrumentedWithEverything;
+    private Service instrumentedWithEverythingSampled1In10;
+    private Service instrumentedWithEverythingSampled1In100;
+    private Service instrumentedWithEverythingAdaptiveSampling;
     private Service instrumentedWithTracing;
     private Service instrumentedWithTracingNested;
     private Service instrumentedWithRemoting;
@@ -145,15 +154,14 @@ public class ProxyBenchmark {
                         serviceInterface.getName(), Remoting3Tracer.INSTANCE))
                 .build();
 
-        instrumentedWithEverything = Instrumentation.builder(serviceInterface, raw)
-                .withMetrics(MetricRegistries.createWithHdrHistogramReservoirs())
-                // similar to .withPerformanceTraceLogging() but always log
-                .withLogging(
-                        Instrumentation.getPerformanceLoggerForInterface(serviceInterface),
-                        LoggingLevel.TRACE,
-                        (LongPredicate) LoggingInvocationEventHandler.LOG_ALL_DURATIONS)
-                .withHandler(TracingInvocationEventHandler.create(serviceInterface.getName()))
-                .build();
+        instrumentedWithEverything = instrumentWithEverything(InstrumentationFilters.INSTRUMENT_ALL);
+
+        instrumentedWithEverythingSampled1In10 = instrumentWithEverything(InstrumentationFilters.sampling(10));
+
+        instrumentedWithEverythingSampled1In100 = instrumentWithEverything(InstrumentationFilters.sampling(100));
+
+        instrumentedWithEverythingAdaptiveSampling =
+                instrumentWithEverything(InstrumentationFilters.adaptiveSampling(1000));
 
         instrumentedDefaultUntagged = Tritium.instrument(serviceInterface, raw, new MetricRegistry());
 
@@ -175,6 +183,19 @@ public class ProxyBenchmark {
         Tracer.subscribe("jmh", blackhole::consume);
     }
 
+    private Service instrumentWithEverything(InstrumentationFilter filter) {
+        return Instrumentation.builder(Service.class, raw)
+                .withMetrics(MetricRegistries.createWithHdrHistogramReservoirs())
+                // similar to .withPerformanceTraceLogging() but always log
+                .withLogging(
+                        Instrumentation.getPerformanceLoggerForInterface(Service.class),
+                        LoggingLevel.TRACE,
+                        (LongPredicate) LoggingInvocationEventHandler.LOG_ALL_DURATIONS)
+                .withHandler(TracingInvocationEventHandler.create(Service.class.getName()))
+                .withFilter(filter)
+                .build();
+    }
+
     @TearDown
     public void after() throws Exception {
         Tracer.unsubscribe("jmh");
@@ -235,6 +256,21 @@ public class ProxyBenchmark {
         return instrumentedWithEverything.echo("test");
     }
 
+    @Benchmark
+    public String instrumentedWithEverythingSampled1In10() {
+        return instrumentedWithEverythingSampled1In10.echo("test");
+    }
+
+    @Benchmark
+    public String instrumentedWithEverythingSampled1In100() {
+        return instrumentedWithEverythingSampled1In100.echo("test");
+    }
+
+    @Benchmark
+    public String instrumentedWithEverythingAdaptiveSampling() {
+        return instrumentedWithEverythingAdaptiveSampling.echo("test");
+    }
+
     @Benchmark
     public String instrumentedDefaultUntagged() {
         return instrumentedDefaultUntagged.echo("test");
@@ -16,6 +16,8 @@
 
 package com.palantir.tritium.microbenchmarks;
 
+import com.palantir.tritium.api.annotations.Instrument;
+
 public final class Stubs {
 
     private Stubs() {}
@@ -2198,6 +2200,7 @@ public final class Stubs {
         void iface98method9();
     }
 
+    @Instrument
     public interface Iface99 extends Iface98 {
         void iface99method0();
 
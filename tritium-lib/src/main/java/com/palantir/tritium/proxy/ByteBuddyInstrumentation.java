@@ -22,19 +22,29 @@ import static com.palantir.logsafe.Preconditions.checkState;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.palantir.logsafe.SafeArg;
 import com.palantir.logsafe.UnsafeArg;
 import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.api.event.MethodInstrumentationFilter;
 import com.palantir.tritium.event.CompositeInvocationEventHandler;
+import com.palantir.tritium.event.HandlerCircuitBreaker;
+import com.palantir.tritium.event.InstrumentationFilters;
+import com.palantir.tritium.event.InstrumentationProperties;
 import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.MethodBindingInvocationEventHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import net.bytebuddy.ByteBuddy;
@@ -44,6 +54,7 @@ import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.modifier.Visibility;
 import net.bytebuddy.dynamic.DynamicType;
 import net.bytebuddy.implementation.FieldAccessor;
+import net.bytebuddy.implementation.Implementation;
 import net.bytebuddy.implementation.LoadedTypeInitializer;
 import net.bytebuddy.implementation.MethodCall;
 import net.bytebuddy.implementation.bytecode.assign.Assigner;
@@ -58,12 +69,21 @@ final class ByteBuddyInstrumentation {
     // Offset to avoid duplicate fqcns
     private static final AtomicInteger offset = new AtomicInteger();
     // Reuse generated classes when possible
-    private static final TypeCache<ImmutableList<Class<?>>> cache =
+    private static final TypeCache<InstrumentationClassKey> cache =
             new TypeCache.WithInlineExpunction<>(TypeCache.Sort.WEAK);
     private static final Joiner UNDERSCORE_JOINER = Joiner.on('_');
     private static final String LOGGER_FIELD = "log";
     private static final String METHODS_FIELD = "methods";
+    private static final String HANDLERS_FIELD = "invocationEventHandlers";
+    private static final String CIRCUIT_BREAKERS_FIELD = "circuitBreakers";
     private static final String DISABLED_HANDLER_SENTINEL_FIELD = "DISABLED_HANDLER_SENTINEL";
+    private static final String NO_ARGUMENTS_FIELD = "NO_ARGUMENTS";
+    private static final String FUSED_HANDLERS_PROPERTY = "fused-handlers";
+    private static final String SHARED_CLASSES_PROPERTY = "shared-classes";
+    private static final Object[] NO_ARGUMENTS = {};
+    // Class file size of each generated class which has not been unloaded
+    private static final ConcurrentMap<Class<?>, Integer> generatedClasses =
+            new MapMaker().weakKeys().makeMap();
 
     private ByteBuddyInstrumentation() {
         throw new UnsupportedOperationException();
@@ -102,12 +122,28 @@ final class ByteBuddyInstrumentation {
         }
         @SuppressWarnings("unchecked")
         ImmutableList<Class<?>> additionalInterfaces =
-                getAdditionalInterfaces(classLoader, interfaceClass, (Class<? extends U>) delegate.getClass());
+                additionalInterfaces(classLoader, interfaceClass, (Class<? extends U>) delegate.getClass());
+        InvocationEventHandler<InvocationContext> eventHandler = CompositeInvocationEventHandler.of(handlers);
+        InstrumentationFilter invocationFilter = invocationFilter(instrumentationFilter);
+        List<InvocationEventHandler<InvocationContext>> layers = layers(handlers, eventHandler, invocationFilter);
 
         try {
-            return newInstrumentationClass(classLoader, interfaceClass, additionalInterfaces)
-                    .getConstructor(interfaceClass, InvocationEventHandler.class, InstrumentationFilter.class)
-                    .newInstance(delegate, CompositeInvocationEventHandler.of(handlers), instrumentationFilter);
+            Class<? extends T> instrumentationClass = newInstrumentationClass(
+                    classLoader,
+                    interfaceClass,
+                    additionalInterfaces,
+                    instrumentationFilter,
+                    requiresArguments(eventHandler, invocationFilter),
+                    layers.size());
+            InvocationEventHandler<?>[] boundHandlers = bindHandlers(instrumentationClass, layers);
+            return instrumentationClass
+                    .getConstructor(
+                            interfaceClass,
+                            InvocationEventHandler[].class,
+                            HandlerCircuitBreaker[].class,
+                            InstrumentationFilter.class)
+                    .newInstance(
+                            delegate, boundHandlers, circuitBreakers(boundHandlers.length, layers), invocationFilter);
         } catch (ReflectiveOperationException | RuntimeException e) {
             log.error(
                     "Failed to instrument interface {}. Delegate {} of type {} will not be instrumented",
@@ -119,9 +155,146 @@ final class ByteBuddyInstrumentation {
         }
     }
 
+    /**
+     * Generates and loads the instrumentation classes used for the interface when the delegate implements no additional
+     * interfaces and a single event handler is applied, with and without capturing arguments. The argument free class
+     * is generated first, as it is the shape produced by {@link com.palantir.tritium.Tritium} whose metrics and tracing
+     * handlers do not require arguments.
+     */
+    static void prewarm(Class<?> interfaceClass) {
+        ClassLoader classLoader = prewarmClassLoader(interfaceClass);
+        if (classLoader != null) {
+            newInstrumentationClass(
+                    classLoader, interfaceClass, ImmutableList.of(), InstrumentationFilters.INSTRUMENT_ALL, false, 1);
+            newInstrumentationClass(
+                    classLoader, interfaceClass, ImmutableList.of(), InstrumentationFilters.INSTRUMENT_ALL, true, 1);
+        }
+    }
+
+    /**
+     * Generates and loads the class {@link #instrument(Class, Object, List, InstrumentationFilter)} uses for delegates
+     * of the specified class instrumented with the handlers and filter.
+     */
+    static <T, U extends T> void prewarm(
+            Class<T> interfaceClass,
+            Class<U> delegateClass,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InstrumentationFilter instrumentationFilter) {
+        checkNotNull(delegateClass, "delegateClass");
+        checkNotNull(handlers, "handlers");
+        checkNotNull(instrumentationFilter, "instrumentationFilter");
+        ClassLoader classLoader = prewarmClassLoader(interfaceClass);
+        if (classLoader != null) {
+            InvocationEventHandler<InvocationContext> eventHandler = CompositeInvocationEventHandler.of(handlers);
+            InstrumentationFilter invocationFilter = invocationFilter(instrumentationFilter);
+            newInstrumentationClass(
+                    classLoader,
+                    interfaceClass,
+                    additionalInterfaces(classLoader, interfaceClass, delegateClass),
+                    instrumentationFilter,
+                    requiresArguments(eventHandler, invocationFilter),
+                    layers(handlers, eventHandler, invocationFilter).size());
+        }
+    }
+
+    /** Returns the class loader instrumentation classes are generated in, or null if the interface is unsupported. */
+    @Nullable
+    private static ClassLoader prewarmClassLoader(Class<?> interfaceClass) {
+        checkNotNull(interfaceClass, "interfaceClass");
+        if (!isAccessible(interfaceClass)) {
+            log.debug("Not prewarming inaccessible interface {}", SafeArg.of("interface", interfaceClass));
+            return null;
+        }
+        ClassLoader classLoader = getClassLoader(interfaceClass);
+        if (!isClassLoadable(classLoader, InvocationEventHandler.class)) {
+            log.debug(
+                    "Not prewarming interface {} which is not loadable alongside Tritium",
+                    SafeArg.of("interface", interfaceClass));
+            return null;
+        }
+        return classLoader;
+    }
+
+    /** Shared classes implement only the requested interface, so delegates of any type reuse a single class. */
+    private static <T, U extends T> ImmutableList<Class<?>> additionalInterfaces(
+            ClassLoader classLoader, Class<T> interfaceClass, Class<U> delegateClass) {
+        return InstrumentationProperties.isSpecificEnabled(SHARED_CLASSES_PROPERTY, false)
+                ? ImmutableList.of()
+                : getAdditionalInterfaces(classLoader, interfaceClass, delegateClass);
+    }
+
+    /** Method filters are applied when generating the class, excluded methods delegate without advice. */
+    private static InstrumentationFilter invocationFilter(InstrumentationFilter instrumentationFilter) {
+        return instrumentationFilter instanceof MethodInstrumentationFilter
+                ? InstrumentationFilters.INSTRUMENT_ALL
+                : instrumentationFilter;
+    }
+
+    private static boolean requiresArguments(
+            InvocationEventHandler<InvocationContext> eventHandler, InstrumentationFilter invocationFilter) {
+        return ArgumentsRequirement.requiresArguments(eventHandler)
+                || ArgumentsRequirement.requiresArguments(invocationFilter);
+    }
+
+    /**
+     * Fused instrumentation generates one layer of advice per handler rather than delegating to a composite. Each layer
+     * evaluates the filter, so handlers are only fused when the filter accepts every invocation, otherwise stateful
+     * filters such as sampling would select a different subset of invocations per handler.
+     */
+    private static List<InvocationEventHandler<InvocationContext>> layers(
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InvocationEventHandler<InvocationContext> eventHandler,
+            InstrumentationFilter invocationFilter) {
+        return handlers.size() > 1
+                        && invocationFilter == InstrumentationFilters.INSTRUMENT_ALL
+                        && InstrumentationProperties.isSpecificEnabled(FUSED_HANDLERS_PROPERTY, false)
+                ? handlers
+                : Collections.singletonList(eventHandler);
+    }
+
+    /**
+     * Binds each layer's event handler to each instrumented method, in the order of the generated class methods field.
+     * Handlers for a method are stored contiguously, see {@link #handlerIndex(int, int, int)}.
+     */
+    private static InvocationEventHandler<?>[] bindHandlers(
+            Class<?> instrumentationClass, List<InvocationEventHandler<InvocationContext>> layers)
+            throws ReflectiveOperationException {
+        Method[] methods = (Method[]) instrumentationClass.getField(METHODS_FIELD).get(null);
+        InvocationEventHandler<?>[] boundHandlers = new InvocationEventHandler<?>[methods.length * layers.size()];
+        for (int methodIndex = 0; methodIndex < methods.length; methodIndex++) {
+            for (int layer = 0; layer < layers.size(); layer++) {
+                boundHandlers[handlerIndex(methodIndex, layer, layers.size())] =
+                        MethodBindingInvocationEventHandler.bind(layers.get(layer), methods[methodIndex]);
+            }
+        }
+        return boundHandlers;
+    }
+
+    /**
+     * Returns the circuit breaker of each layer's event handler, in the same order as
+     * {@link #bindHandlers(Class, List)}. Breakers are shared by all methods bound from the same handler.
+     */
+    private static HandlerCircuitBreaker[] circuitBreakers(
+            int boundHandlers, List<InvocationEventHandler<InvocationContext>> layers) {
+        HandlerCircuitBreaker[] breakers = new HandlerCircuitBreaker[boundHandlers];
+        for (int i = 0; i < boundHandlers; i++) {
+            breakers[i] = HandlerCircuitBreaker.of(layers.get(i % layers.size()));
+        }
+        return breakers;
+    }
+
+    private static int handlerIndex(int methodIndex, int layer, int layers) {
+        return methodIndex * layers + layer;
+    }
+
     @SuppressWarnings("unchecked")
     private static <T> Class<? extends T> newInstrumentationClass(
-            ClassLoader classLoader, Class<T> interfaceClass, ImmutableList<Class<?>> additionalInterfaces) {
+            ClassLoader classLoader,
+            Class<T> interfaceClass,
+            ImmutableList<Class<?>> additionalInterfaces,
+            InstrumentationFilter instrumentationFilter,
+            boolean requiresArguments,
+            int layers) {
         checkNotNull(classLoader, "classLoader");
         checkNotNull(interfaceClass, "interfaceClass");
         checkNotNull(additionalInterfaces, "additionalInterfaces");
@@ -134,20 +307,27 @@ final class ByteBuddyInstrumentation {
                 .add(interfaceClass)
                 .addAll(additionalInterfaces)
                 .build();
-        return (Class<? extends T>) cache.findOrInsert(classLoader, interfaces, () -> {
+        ImmutableSet<Method> uninstrumentedMethods = uninstrumentedMethods(interfaces, instrumentationFilter);
+        InstrumentationClassKey key =
+                new InstrumentationClassKey(interfaces, uninstrumentedMethods, requiresArguments, layers);
+        return (Class<? extends T>) cache.findOrInsert(classLoader, key, () -> {
             DynamicType.Builder.MethodDefinition.ReceiverTypeDefinition<Object> builder = new ByteBuddy(
                             ClassFileVersion.ofThisVm(ClassFileVersion.JAVA_V8))
                     .subclass(Object.class)
                     .modifiers(Modifier.FINAL | Modifier.PUBLIC)
                     .name(className(interfaces))
                     .defineConstructor(Visibility.PUBLIC)
-                    .withParameters(interfaceClass, InvocationEventHandler.class, InstrumentationFilter.class)
+                    .withParameters(
+                            interfaceClass,
+                            InvocationEventHandler[].class,
+                            HandlerCircuitBreaker[].class,
+                            InstrumentationFilter.class)
                     .intercept(MethodCall.invoke(Object.class.getDeclaredConstructor())
                             .andThen(FieldAccessor.ofField("delegate").setsArgumentAt(0))
-                            .andThen(FieldAccessor.ofField("invocationEventHandler")
-                                    .setsArgumentAt(1))
+                            .andThen(FieldAccessor.ofField(HANDLERS_FIELD).setsArgumentAt(1))
+                            .andThen(FieldAccessor.ofField(CIRCUIT_BREAKERS_FIELD).setsArgumentAt(2))
                             .andThen(FieldAccessor.ofField("instrumentationFilter")
-                                    .setsArgumentAt(2)))
+                                    .setsArgumentAt(3)))
                     .implement(interfaces)
                     .method(ElementMatchers.isToString())
                     .intercept(MethodCall.invokeSelf().onField("delegate"));
@@ -157,33 +337,33 @@ final class ByteBuddyInstrumentation {
                 for (Method method : iface.getMethods()) {
                     int index = allMethods.size();
                     allMethods.add(method);
+                    Implementation delegateInvocation = allowDirectAccess
+                            ? MethodCall.invokeSelf().onField("delegate").withAllArguments()
+                            : MethodCall.invokeSelf()
+                                    // Byte buddy doesn't seem to allow casting from fields, but
+                                    // we can cast the result of a trivial call (in this case
+                                    // Objects.requireNonNull) into the desired type.
+                                    .onMethodCall(passThroughMethod().withField("delegate"))
+                                    .withAllArguments()
+                                    .withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC);
                     // Retain tritium proxy detail where hashcode, equals, and toString cannot be instrumented.
                     builder = builder.method(ElementMatchers.not(ElementMatchers.isHashCode()
                                             .or(ElementMatchers.isEquals())
                                             .or(ElementMatchers.isToString()))
                                     .and(ElementMatchers.is(method)))
-                            .intercept(Advice.withCustomMapping()
-                                    .bind(ByteBuddyInstrumentationAdvice.MethodIndex.class, index)
-                                    .to(ByteBuddyInstrumentationAdvice.class)
-                                    .wrap(
-                                            allowDirectAccess
-                                                    ? MethodCall.invokeSelf()
-                                                            .onField("delegate")
-                                                            .withAllArguments()
-                                                    : MethodCall.invokeSelf()
-                                                            // Byte buddy doesn't seem to allow casting from fields, but
-                                                            // we can cast the result of a trivial call (in this case
-                                                            // Objects.requireNonNull) into the desired type.
-                                                            .onMethodCall(passThroughMethod()
-                                                                    .withField("delegate"))
-                                                            .withAllArguments()
-                                                            .withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC)));
+                            .intercept(
+                                    uninstrumentedMethods.contains(method)
+                                            ? delegateInvocation
+                                            : instrument(index, requiresArguments, layers, delegateInvocation));
                 }
             }
-            return builder.defineField("delegate", interfaceClass, Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)
+            DynamicType.Unloaded<Object> unloaded = builder.defineField(
+                            "delegate", interfaceClass, Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)
+                    .defineField(
+                            HANDLERS_FIELD, InvocationEventHandler[].class, Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)
                     .defineField(
-                            "invocationEventHandler",
-                            InvocationEventHandler.class,
+                            CIRCUIT_BREAKERS_FIELD,
+                            HandlerCircuitBreaker[].class,
                             Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)
                     .defineField(
                             "instrumentationFilter",
@@ -195,16 +375,92 @@ final class ByteBuddyInstrumentation {
                             DISABLED_HANDLER_SENTINEL_FIELD,
                             InvocationContext.class,
                             Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC)
+                    .defineField(NO_ARGUMENTS_FIELD, Object[].class, Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC)
                     .initializer(new StaticFieldLoadedTypeInitializer(METHODS_FIELD, allMethods.toArray(new Method[0])))
                     .initializer(new StaticFieldLoadedTypeInitializer(
                             DISABLED_HANDLER_SENTINEL_FIELD, DisabledHandlerSentinel.INSTANCE))
+                    .initializer(new StaticFieldLoadedTypeInitializer(NO_ARGUMENTS_FIELD, NO_ARGUMENTS))
                     .initializer(LoggerInitializer.INSTANCE)
-                    .make()
-                    .load(classLoader)
-                    .getLoaded();
+                    .make();
+            Class<?> loaded = unloaded.load(classLoader).getLoaded();
+            generatedClasses.put(loaded, unloaded.getBytes().length);
+            return loaded;
         });
     }
 
+    /** Returns the number of generated instrumentation classes which have not been unloaded. */
+    static int generatedClassCount() {
+        return generatedClasses.size();
+    }
+
+    /**
+     * Returns the total class file size in bytes of generated instrumentation classes which have not been unloaded,
+     * as an estimate of the metaspace they occupy.
+     */
+    static long generatedClassBytes() {
+        long bytes = 0;
+        for (int classBytes : generatedClasses.values()) {
+            bytes += classBytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Wraps the delegate invocation in one layer of advice per handler. The first handler is the outermost layer so
+     * that handlers observe invocations in the same order as {@link CompositeInvocationEventHandler}. Each layer is
+     * inlined separately, giving every handler its own call sites in the generated class.
+     */
+    private static Implementation instrument(
+            int methodIndex, boolean requiresArguments, int layers, Implementation delegateInvocation) {
+        Implementation implementation = delegateInvocation;
+        for (int layer = layers - 1; layer >= 0; layer--) {
+            implementation = advice(methodIndex, handlerIndex(methodIndex, layer, layers), requiresArguments)
+                    .wrap(implementation);
+        }
+        return implementation;
+    }
+
+    private static Advice advice(int methodIndex, int handlerIndex, boolean requiresArguments) {
+        Advice.WithCustomMapping mapping = Advice.withCustomMapping()
+                .bind(ByteBuddyInstrumentationAdvice.MethodIndex.class, methodIndex)
+                .bind(ByteBuddyInstrumentationAdvice.HandlerIndex.class, handlerIndex);
+        if (requiresArguments) {
+            return mapping.to(ByteBuddyInstrumentationAdvice.class);
+        }
+        // Argument free instrumentation shares the exit advice, only the enter advice differs.
+        return mapping.to(ByteBuddyInstrumentationAdvice.ArgumentFree.class, ByteBuddyInstrumentationAdvice.class);
+    }
+
+    /** Returns the methods excluded from instrumentation by a {@link MethodInstrumentationFilter}. */
+    private static ImmutableSet<Method> uninstrumentedMethods(
+            List<Class<?>> interfaces, InstrumentationFilter instrumentationFilter) {
+        if (!(instrumentationFilter instanceof MethodInstrumentationFilter)) {
+            return ImmutableSet.of();
+        }
+        MethodInstrumentationFilter methodFilter = (MethodInstrumentationFilter) instrumentationFilter;
+        ImmutableSet.Builder<Method> uninstrumentedMethods = ImmutableSet.builder();
+        for (Class<?> iface : interfaces) {
+            for (Method method : iface.getMethods()) {
+                if (!shouldInstrument(methodFilter, method)) {
+                    uninstrumentedMethods.add(method);
+                }
+            }
+        }
+        return uninstrumentedMethods.build();
+    }
+
+    private static boolean shouldInstrument(MethodInstrumentationFilter methodFilter, Method method) {
+        try {
+            return methodFilter.shouldInstrument(method);
+        } catch (RuntimeException | Error e) {
+            log.warn(
+                    "Method filter failed, method {} will not be instrumented",
+                    SafeArg.of("method", method.toString()),
+                    e);
+            return false;
+        }
+    }
+
     private static MethodCall.WithoutSpecifiedTarget passThroughMethod() throws NoSuchMethodException {
         return MethodCall.invoke(Objects.class.getMethod("requireNonNull", Object.class));
     }
@@ -352,6 +608,53 @@ final class ByteBuddyInstrumentation {
         }
     }
 
+    /**
+     * Generated classes are specific to the implemented interfaces, the methods which are instrumented, and the shape
+     * of the generated advice.
+     */
+    private static final class InstrumentationClassKey {
+
+        private final ImmutableList<Class<?>> interfaces;
+        private final ImmutableSet<Method> uninstrumentedMethods;
+        private final boolean requiresArguments;
+        private final int layers;
+
+        InstrumentationClassKey(
+                ImmutableList<Class<?>> interfaces,
+                ImmutableSet<Method> uninstrumentedMethods,
+                boolean requiresArguments,
+                int layers) {
+            this.interfaces = interfaces;
+            this.uninstrumentedMethods = uninstrumentedMethods;
+            this.requiresArguments = requiresArguments;
+            this.layers = layers;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || getClass() != other.getClass()) {
+                return false;
+            }
+            InstrumentationClassKey that = (InstrumentationClassKey) other;
+            return requiresArguments == that.requiresArguments
+                    && layers == that.layers
+                    && interfaces.equals(that.interfaces)
+                    && uninstrumentedMethods.equals(that.uninstrumentedMethods);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = interfaces.hashCode();
+            result = 31 * result + uninstrumentedMethods.hashCode();
+            result = 31 * result + Boolean.hashCode(requiresArguments);
+            result = 31 * result + layers;
+            return result;
+        }
+    }
+
     private static String className(List<Class<?>> interfaceClasses) {
         return "com.palantir.tritium.proxy.Instrumented"
                 + UNDERSCORE_JOINER.join(Lists.transform(interfaceClasses, Class::getSimpleName))
@@ -19,6 +19,8 @@ package com.palantir.tritium.proxy;
 import com.palantir.logsafe.SafeArg;
 import com.palantir.logsafe.UnsafeArg;
 import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.event.HandlerCircuitBreaker;
+import com.palantir.tritium.event.HandlerOverheadSampler;
 import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.event.InvocationEventHandler;
 import java.lang.annotation.ElementType;
@@ -43,25 +45,46 @@ final class ByteBuddyInstrumentationAdvice {
     @java.lang.annotation.Target(ElementType.PARAMETER)
     @interface MethodIndex {}
 
+    /**
+     * Index of the event handler invoked by the current advice. When handlers are fused into the generated class, each
+     * method is wrapped in one advice layer per handler, and each layer is bound to its own handler.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @java.lang.annotation.Target(ElementType.PARAMETER)
+    @interface HandlerIndex {}
+
     @Nullable
     @Advice.OnMethodEnter
     static InvocationContext enter(
             @Advice.This Object proxy,
             @Advice.AllArguments Object[] arguments,
             @Advice.FieldValue("instrumentationFilter") InstrumentationFilter filter,
-            @Advice.FieldValue("invocationEventHandler") InvocationEventHandler<?> eventHandler,
+            @Advice.FieldValue("invocationEventHandlers") InvocationEventHandler<?>[] eventHandlers,
+            @Advice.FieldValue("circuitBreakers") HandlerCircuitBreaker[] circuitBreakers,
             @Advice.FieldValue("methods") Method[] methods,
             @Advice.FieldValue("log") Logger logger,
             @Advice.FieldValue("DISABLED_HANDLER_SENTINEL") InvocationContext disabledHandlerSentinel,
-            @MethodIndex int index) {
+            @MethodIndex int index,
+            @HandlerIndex int handlerIndex) {
         Method method = methods[index];
+        InvocationEventHandler<?> eventHandler = eventHandlers[handlerIndex];
+        HandlerCircuitBreaker circuitBreaker = circuitBreakers[handlerIndex];
         try {
-            if (eventHandler.isEnabled() && filter.shouldInstrument(proxy, method, arguments)) {
-                return eventHandler.preInvocation(proxy, method, arguments);
+            if (eventHandler.isEnabled()
+                    && circuitBreaker.allowsInvocation()
+                    && filter.shouldInstrument(proxy, method, arguments)) {
+                HandlerOverheadSampler sampler = HandlerOverheadSampler.sample();
+                if (sampler == null) {
+                    return eventHandler.preInvocation(proxy, method, arguments);
+                }
+                long startNanos = System.nanoTime();
+                InvocationContext context = eventHandler.preInvocation(proxy, method, arguments);
+                sampler.record(eventHandler, HandlerOverheadSampler.Phase.PRE, startNanos);
+                return context;
             }
             return disabledHandlerSentinel;
         } catch (RuntimeException | Error t) {
-            if (logger.isWarnEnabled()) {
+            if (circuitBreaker.recordFailure() && logger.isWarnEnabled()) {
                 logger.warn(
                         "Failure occurred handling 'preInvocation' invocation on: {}",
                         UnsafeArg.of("instance", Objects.toString(proxy)),
@@ -75,11 +98,16 @@ final class ByteBuddyInstrumentationAdvice {
     static void exit(
             @Advice.Return(typing = Assigner.Typing.DYNAMIC) Object result,
             @Advice.Thrown Throwable thrown,
-            @Advice.FieldValue("invocationEventHandler") InvocationEventHandler<?> eventHandler,
+            @Advice.FieldValue("invocationEventHandlers") InvocationEventHandler<?>[] eventHandlers,
+            @Advice.FieldValue("circuitBreakers") HandlerCircuitBreaker[] circuitBreakers,
             @Advice.FieldValue("log") Logger logger,
             @Advice.FieldValue("DISABLED_HANDLER_SENTINEL") InvocationContext disabledHandlerSentinel,
-            @Advice.Enter InvocationContext context) {
+            @Advice.Enter InvocationContext context,
+            @HandlerIndex int handlerIndex) {
         if (context != disabledHandlerSentinel) {
+            InvocationEventHandler<?> eventHandler = eventHandlers[handlerIndex];
+            HandlerOverheadSampler sampler = HandlerOverheadSampler.sample();
+            long startNanos = (sampler != null) ? System.nanoTime() : 0L;
             try {
                 if (thrown == null) {
                     eventHandler.onSuccess(context, result);
@@ -87,7 +115,7 @@ final class ByteBuddyInstrumentationAdvice {
                     eventHandler.onFailure(context, thrown);
                 }
             } catch (RuntimeException | Error t) {
-                if (logger.isWarnEnabled()) {
+                if (circuitBreakers[handlerIndex].recordFailure() && logger.isWarnEnabled()) {
                     Object value = thrown == null ? result : thrown;
                     logger.warn(
                             "Failure occurred handling post-invocation: {}, {}",
@@ -98,6 +126,59 @@ final class ByteBuddyInstrumentationAdvice {
                             t);
                 }
             }
+            if (sampler != null) {
+                sampler.record(eventHandler, HandlerOverheadSampler.Phase.POST, startNanos);
+            }
+        }
+    }
+
+    /**
+     * Enter advice used when neither the handler nor the filter require arguments, avoiding allocation of the argument
+     * array and boxing of primitive arguments on every invocation.
+     */
+    static final class ArgumentFree {
+
+        private ArgumentFree() {}
+
+        @Nullable
+        @Advice.OnMethodEnter
+        static InvocationContext enter(
+                @Advice.This Object proxy,
+                @Advice.FieldValue("instrumentationFilter") InstrumentationFilter filter,
+                @Advice.FieldValue("invocationEventHandlers") InvocationEventHandler<?>[] eventHandlers,
+                @Advice.FieldValue("circuitBreakers") HandlerCircuitBreaker[] circuitBreakers,
+                @Advice.FieldValue("methods") Method[] methods,
+                @Advice.FieldValue("log") Logger logger,
+                @Advice.FieldValue("DISABLED_HANDLER_SENTINEL") InvocationContext disabledHandlerSentinel,
+                @Advice.FieldValue("NO_ARGUMENTS") Object[] noArguments,
+                @MethodIndex int index,
+                @HandlerIndex int handlerIndex) {
+            Method method = methods[index];
+            InvocationEventHandler<?> eventHandler = eventHandlers[handlerIndex];
+            HandlerCircuitBreaker circuitBreaker = circuitBreakers[handlerIndex];
+            try {
+                if (eventHandler.isEnabled()
+                        && circuitBreaker.allowsInvocation()
+                        && filter.shouldInstrument(proxy, method, noArguments)) {
+                    HandlerOverheadSampler sampler = HandlerOverheadSampler.sample();
+                    if (sampler == null) {
+                        return eventHandler.preInvocation(proxy, method, noArguments);
+                    }
+                    long startNanos = System.nanoTime();
+                    InvocationContext context = eventHandler.preInvocation(proxy, method, noArguments);
+                    sampler.record(eventHandler, HandlerOverheadSampler.Phase.PRE, startNanos);
+                    return context;
+                }
+                return disabledHandlerSentinel;
+            } catch (RuntimeException | Error t) {
+                if (circuitBreaker.recordFailure() && logger.isWarnEnabled()) {
+                    logger.warn(
+                            "Failure occurred handling 'preInvocation' invocation on: {}",
+                            UnsafeArg.of("instance", Objects.toString(proxy)),
+                            t);
+                }
+                return null;
+            }
         }
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.UnsafeArg;
+import com.palantir.tritium.api.annotations.Instrument;
+import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.event.CompositeInvocationEventHandler;
+import com.palantir.tritium.event.GeneratedInstrumentationSupport;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
+import java.lang.reflect.Constructor;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instruments interfaces annotated with {@link Instrument} using the classes generated at build time by the
+ * {@code tritium-processor} annotation processor.
+ */
+final class GeneratedInstrumentation {
+
+    private static final Logger log = LoggerFactory.getLogger(GeneratedInstrumentation.class);
+
+    private static final ClassValue<Optional<Constructor<?>>> constructors =
+            new ClassValue<Optional<Constructor<?>>>() {
+                @Override
+                protected Optional<Constructor<?>> computeValue(Class<?> type) {
+                    return findConstructor(type);
+                }
+            };
+
+    private GeneratedInstrumentation() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns an instance of the generated instrumentation class for the interface, or null if the interface has no
+     * generated instrumentation.
+     */
+    @Nullable
+    static <T, U extends T> T instrument(
+            Class<T> interfaceClass,
+            U delegate,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InstrumentationFilter instrumentationFilter) {
+        Optional<Constructor<?>> constructor = constructors.get(interfaceClass);
+        if (!constructor.isPresent()) {
+            return null;
+        }
+        try {
+            return interfaceClass.cast(constructor
+                    .get()
+                    .newInstance(delegate, CompositeInvocationEventHandler.of(handlers), instrumentationFilter));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.error(
+                    "Failed to create generated instrumentation for interface {}. Delegate {} of type {} will be "
+                            + "instrumented at runtime",
+                    SafeArg.of("interface", interfaceClass),
+                    UnsafeArg.of("delegate", delegate),
+                    SafeArg.of("delegateType", delegate.getClass()),
+                    e);
+            return null;
+        }
+    }
+
+    /** Returns true if generated instrumentation exists for the interface, loading the generated class on first use. */
+    static boolean isAvailable(Class<?> interfaceClass) {
+        return constructors.get(interfaceClass).isPresent();
+    }
+
+    private static Optional<Constructor<?>> findConstructor(Class<?> interfaceClass) {
+        ClassLoader classLoader = interfaceClass.getClassLoader();
+        if (!interfaceClass.isAnnotationPresent(Instrument.class) || classLoader == null) {
+            return Optional.empty();
+        }
+        String generatedClassName = GeneratedInstrumentationSupport.generatedClassName(interfaceClass);
+        try {
+            Class<?> generatedClass = Class.forName(generatedClassName, true, classLoader);
+            if (!interfaceClass.isAssignableFrom(generatedClass)) {
+                log.warn(
+                        "Generated instrumentation class {} does not implement {}",
+                        SafeArg.of("generatedClass", generatedClass),
+                        SafeArg.of("interface", interfaceClass));
+                return Optional.empty();
+            }
+            return Optional.of(generatedClass.getConstructor(
+                    interfaceClass, InvocationEventHandler.class, InstrumentationFilter.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn(
+                    "Interface {} is annotated with @Instrument but generated class {} could not be loaded, "
+                            + "is the tritium-processor annotation processor configured?",
+                    SafeArg.of("interface", interfaceClass),
+                    SafeArg.of("generatedClass", generatedClassName),
+                    e);
+            return Optional.empty();
+        }
+    }
+}
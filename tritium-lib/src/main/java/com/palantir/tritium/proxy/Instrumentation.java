@@ -21,25 +21,42 @@ import static com.palantir.logsafe.Preconditions.checkNotNull;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.palantir.logsafe.SafeArg;
 import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.event.CompositeInvocationEventHandler;
+import com.palantir.tritium.event.HandlerCircuitBreaker;
+import com.palantir.tritium.event.HandlerOverheadSampler;
 import com.palantir.tritium.event.InstrumentationFilters;
+import com.palantir.tritium.event.InstrumentationGovernor;
 import com.palantir.tritium.event.InstrumentationProperties;
+import com.palantir.tritium.event.InvocationClock;
 import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.SamplingInstrumentationFilter;
+import com.palantir.tritium.event.SwappableInvocationEventHandler;
 import com.palantir.tritium.event.log.LoggingInvocationEventHandler;
 import com.palantir.tritium.event.log.LoggingLevel;
 import com.palantir.tritium.event.metrics.MetricsInvocationEventHandler;
 import com.palantir.tritium.event.metrics.TaggedMetricsServiceInvocationEventHandler;
+import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.LongPredicate;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /** Instrument arbitrary service interfaces with optional metrics and invocation logging. */
 public final class Instrumentation {
 
+    private static final Logger log = LoggerFactory.getLogger(Instrumentation.class);
+
     private Instrumentation() {
         throw new UnsupportedOperationException();
     }
@@ -58,14 +75,275 @@ public final class Instrumentation {
             return delegate;
         }
 
+        if (InstrumentationProperties.isSpecificEnabled("flatten-nested", true)) {
+            // Merge with existing instrumentation of the delegate, so nested instrumentation costs a single layer
+            NestedInstrumentation.Layer nested =
+                    NestedInstrumentation.find(delegate, interfaceClass, instrumentationFilter);
+            if (nested != null) {
+                return wrap(
+                        interfaceClass,
+                        interfaceClass.cast(nested.delegate()),
+                        nested.merge(handlers),
+                        instrumentationFilter);
+            }
+        }
+        T instrumented = instrument(interfaceClass, delegate, handlers, instrumentationFilter);
+        NestedInstrumentation.register(instrumented, interfaceClass, delegate, handlers, instrumentationFilter);
+        return instrumented;
+    }
+
+    private static <T, U extends T> T instrument(
+            Class<T> interfaceClass,
+            U delegate,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InstrumentationFilter instrumentationFilter) {
+        if (instrumentationFilter instanceof SamplingInstrumentationFilter) {
+            // Resolve the sampler of each method once when binding handlers rather than on every invocation
+            InvocationEventHandler<InvocationContext> sampled = ((SamplingInstrumentationFilter) instrumentationFilter)
+                    .sample(CompositeInvocationEventHandler.of(handlers));
+            return instrument(
+                    interfaceClass, delegate, ImmutableList.of(sampled), InstrumentationFilters.INSTRUMENT_ALL);
+        }
+        if (InstrumentationProperties.isSpecificEnabled("method-handle-proxy", false)) {
+            // Dynamic proxies dispatching through precomputed method handles, for environments without byte-buddy
+            return Proxies.newProxy(
+                    interfaceClass,
+                    delegate,
+                    MethodHandleInstrumentationProxy.create(interfaceClass, delegate, handlers, instrumentationFilter));
+        }
         if (InstrumentationProperties.isSpecificEnabled("dynamic-proxy", false)) {
             return Proxies.newProxy(
                     interfaceClass, delegate, new InstrumentationProxy<>(instrumentationFilter, handlers, delegate));
-        } else {
-            return ByteBuddyInstrumentation.instrument(interfaceClass, delegate, handlers, instrumentationFilter);
+        }
+        if (InstrumentationProperties.isSpecificEnabled("generated-classes", true)) {
+            // Prefer classes generated at build time for interfaces annotated with @Instrument
+            T generated =
+                    GeneratedInstrumentation.instrument(interfaceClass, delegate, handlers, instrumentationFilter);
+            if (generated != null) {
+                return generated;
+            }
+        }
+        return ByteBuddyInstrumentation.instrument(interfaceClass, delegate, handlers, instrumentationFilter);
+    }
+
+    /**
+     * Generates instrumentation classes for the provided interfaces in parallel on the common fork join pool, allowing
+     * class generation to overlap with other startup work.
+     *
+     * @see #prewarm(Collection, Executor)
+     */
+    public static CompletableFuture<Void> prewarm(Collection<? extends Class<?>> interfaceClasses) {
+        return prewarm(interfaceClasses, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates instrumentation classes for the provided interfaces using the executor, so subsequent {@link
+     * Builder#build()} calls for those interfaces reuse the loaded classes rather than generating them on the calling
+     * thread. Each interface is generated as a separate task. Prewarming is best effort: failures are logged and the
+     * returned future completes normally once all tasks have finished.
+     *
+     * <p>Classes are generated for delegates implementing no additional interfaces, instrumented by a single handler or
+     * composite, both with and without capturing arguments, which covers the default handlers of
+     * {@link com.palantir.tritium.Tritium}. Builds with other delegates or fused handlers may still generate a class,
+     * see {@link #prewarm(Class, Class, List, InstrumentationFilter, Executor)}.
+     *
+     * @param interfaceClasses service interfaces which will be instrumented
+     * @param executor executor used to generate instrumentation classes
+     * @return future which completes once all classes have been generated
+     */
+    public static CompletableFuture<Void> prewarm(Collection<? extends Class<?>> interfaceClasses, Executor executor) {
+        checkNotNull(interfaceClasses, "interfaceClasses");
+        checkNotNull(executor, "executor");
+        return CompletableFuture.allOf(interfaceClasses.stream()
+                .map(interfaceClass -> CompletableFuture.runAsync(
+                        () -> prewarm(interfaceClass, () -> ByteBuddyInstrumentation.prewarm(interfaceClass)),
+                        executor))
+                .toArray(CompletableFuture<?>[]::new));
+    }
+
+    /**
+     * Generates the instrumentation class used when delegates of the provided class are instrumented with the handlers
+     * and filter, using the executor. Unlike {@link #prewarm(Collection, Executor)}, the generated class matches
+     * delegates implementing additional interfaces, handlers which do not require arguments and fused handlers.
+     * Delegates which are already instrumented are merged with their existing instrumentation when built, so may still
+     * generate a class. Prewarming is best effort: failures are logged and the returned future completes normally.
+     *
+     * @param interfaceClass service interface which will be instrumented
+     * @param delegateClass class of the delegates which will be instrumented
+     * @param handlers event handlers the delegates will be instrumented with
+     * @param instrumentationFilter filter the delegates will be instrumented with
+     * @param executor executor used to generate the instrumentation class
+     * @return future which completes once the class has been generated
+     */
+    public static <T> CompletableFuture<Void> prewarm(
+            Class<T> interfaceClass,
+            Class<? extends T> delegateClass,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InstrumentationFilter instrumentationFilter,
+            Executor executor) {
+        checkNotNull(interfaceClass, "interfaceClass");
+        checkNotNull(delegateClass, "delegateClass");
+        checkNotNull(handlers, "handlers");
+        checkNotNull(instrumentationFilter, "instrumentationFilter");
+        checkNotNull(executor, "executor");
+        if (handlers.isEmpty() || instrumentationFilter == InstrumentationFilters.INSTRUMENT_NONE) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<InvocationEventHandler<InvocationContext>> handlersCopy = ImmutableList.copyOf(handlers);
+        return CompletableFuture.runAsync(
+                () -> prewarm(
+                        interfaceClass,
+                        () -> ByteBuddyInstrumentation.prewarm(
+                                interfaceClass, delegateClass, handlersCopy, instrumentationFilter)),
+                executor);
+    }
+
+    /**
+     * Registers gauges describing instrumentation classes generated at runtime which have not been unloaded.
+     *
+     * <ul>
+     *   <li>tritium.instrumentation.classes.count: the number of generated classes
+     *   <li>tritium.instrumentation.classes.bytes: the total class file size of generated classes, an estimate of
+     *       the metaspace they occupy
+     * </ul>
+     *
+     * <p>Setting {@code instrument.shared-classes=true} generates a single class per interface, rather than one per
+     * combination of the interface and additional interfaces implemented by delegates, at the cost of instrumented
+     * instances not implementing those additional interfaces.
+     */
+    public static void registerGeneratedClassMetrics(TaggedMetricRegistry registry) {
+        checkNotNull(registry, "registry");
+        registry.registerWithReplacement(
+                MetricName.builder().safeName("tritium.instrumentation.classes.count").build(),
+                ByteBuddyInstrumentation::generatedClassCount);
+        registry.registerWithReplacement(
+                MetricName.builder().safeName("tritium.instrumentation.classes.bytes").build(),
+                ByteBuddyInstrumentation::generatedClassBytes);
+    }
+
+    /**
+     * Registers gauges counting exceptions thrown by event handlers, see {@link HandlerCircuitBreaker}. Gauges are
+     * tagged with the handler class, as {@code tritium.handler.overhead} is, and are registered for handlers as they
+     * are first instrumented.
+     *
+     * <ul>
+     *   <li>tritium.handler.failures: the number of exceptions thrown by the handler
+     *   <li>tritium.handler.trips: the number of times the handler has been disabled after repeated failures
+     * </ul>
+     */
+    public static void registerHandlerFailureMetrics(TaggedMetricRegistry registry) {
+        checkNotNull(registry, "registry");
+        HandlerCircuitBreaker.addHandlerListener(handler -> {
+            registry.registerWithReplacement(
+                    MetricName.builder()
+                            .safeName("tritium.handler.failures")
+                            .putSafeTags("handler", handler)
+                            .build(),
+                    () -> HandlerCircuitBreaker.failures(handler));
+            registry.registerWithReplacement(
+                    MetricName.builder()
+                            .safeName("tritium.handler.trips")
+                            .putSafeTags("handler", handler)
+                            .build(),
+                    () -> HandlerCircuitBreaker.trips(handler));
+        });
+    }
+
+    /**
+     * Measures the time spent inside event handlers for one in every {@code sampleInterval} invocations, recording it
+     * in nanoseconds to the {@code tritium.handler.overhead} histogram tagged with the handler class and the phase,
+     * either {@code pre} or {@code post} invocation. Composite handlers are measured both as a whole and per handler.
+     * Measurement applies to all instrumented instances and continues until {@link HandlerOverheadSampler#disable()}
+     * is called.
+     */
+    public static void registerHandlerOverheadMetrics(TaggedMetricRegistry registry, int sampleInterval) {
+        checkNotNull(registry, "registry");
+        HandlerOverheadSampler.enable(
+                sampleInterval,
+                (handler, phase, nanos) -> registry.histogram(MetricName.builder()
+                                .safeName("tritium.handler.overhead")
+                                .putSafeTags("handler", handler)
+                                .putSafeTags("phase", phase.tag())
+                                .build())
+                        .update(nanos));
+    }
+
+    private static void prewarm(Class<?> interfaceClass, Runnable generator) {
+        try {
+            if (!isCheapToInstrument(interfaceClass)) {
+                generator.run();
+            }
+        } catch (RuntimeException | Error e) {
+            log.warn("Failed to prewarm instrumentation for interface {}", SafeArg.of("interface", interfaceClass), e);
         }
     }
 
+    /**
+     * Returns a proxy which forwards to the uninstrumented delegate until the instrumentation class has been generated
+     * using the executor, at which point invocations are atomically switched to the instance {@link #wrap(Class,
+     * Object, List, InstrumentationFilter)} returns. The proxy remains in place after the switch, see {@link
+     * UpgradingInvocationHandler} for its cost.
+     */
+    static <T, U extends T> T wrapAsync(
+            Class<T> interfaceClass,
+            U delegate,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InstrumentationFilter instrumentationFilter,
+            Executor executor) {
+        checkNotNull(interfaceClass, "interfaceClass");
+        checkNotNull(delegate, "delegate");
+        checkNotNull(instrumentationFilter, "instrumentationFilter");
+        checkNotNull(handlers, "handlers");
+        checkNotNull(executor, "executor");
+
+        if (handlers.isEmpty()
+                || instrumentationFilter == InstrumentationFilters.INSTRUMENT_NONE
+                || isCheapToInstrument(interfaceClass)) {
+            return wrap(interfaceClass, delegate, handlers, instrumentationFilter);
+        }
+
+        UpgradingInvocationHandler upgradingHandler = new UpgradingInvocationHandler(delegate);
+        T proxy;
+        try {
+            proxy = Proxies.newProxy(interfaceClass, delegate, upgradingHandler);
+        } catch (IllegalArgumentException e) {
+            log.debug(
+                    "Unable to create a forwarding proxy for interface {}, instrumenting synchronously",
+                    SafeArg.of("interface", interfaceClass),
+                    e);
+            return wrap(interfaceClass, delegate, handlers, instrumentationFilter);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    upgradingHandler.upgrade(wrap(interfaceClass, delegate, handlers, instrumentationFilter));
+                } catch (RuntimeException | Error e) {
+                    log.warn(
+                            "Failed to instrument interface {}, delegate will remain uninstrumented",
+                            SafeArg.of("interface", interfaceClass),
+                            e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug(
+                    "Asynchronous instrumentation of interface {} was rejected, instrumenting synchronously",
+                    SafeArg.of("interface", interfaceClass),
+                    e);
+            return wrap(interfaceClass, delegate, handlers, instrumentationFilter);
+        }
+        // Instrumenting the proxy merges with its handlers, as for instances returned by wrap
+        NestedInstrumentation.register(proxy, interfaceClass, delegate, handlers, instrumentationFilter);
+        return proxy;
+    }
+
+    /** Dynamic proxies and build time generated classes do not require runtime class generation. */
+    private static boolean isCheapToInstrument(Class<?> interfaceClass) {
+        return InstrumentationProperties.isSpecificEnabled("method-handle-proxy", false)
+                || InstrumentationProperties.isSpecificEnabled("dynamic-proxy", false)
+                || (InstrumentationProperties.isSpecificEnabled("generated-classes", true)
+                        && GeneratedInstrumentation.isAvailable(interfaceClass));
+    }
+
     /**
      * Wraps delegate with instrumentation.
      *
@@ -113,6 +391,12 @@ public final class Instrumentation {
                 ImmutableList.builder();
         private InstrumentationFilter filter = InstrumentationFilters.INSTRUMENT_ALL;
 
+        @Nullable
+        private InstrumentationGovernor governor;
+
+        @Nullable
+        private InvocationClock clock;
+
         private Builder(Class<T> interfaceClass, U delegate) {
             this.interfaceClass = checkNotNull(interfaceClass, "class");
             this.delegate = checkNotNull(delegate, "delegate");
@@ -199,8 +483,73 @@ public final class Instrumentation {
             return this;
         }
 
+        /**
+         * Demotes instrumentation of methods for which the overhead of the configured handlers is excessive relative to
+         * the duration of the method, see {@link InstrumentationGovernor}.
+         */
+        public Builder<T, U> withGovernor(InstrumentationGovernor instrumentationGovernor) {
+            this.governor = checkNotNull(instrumentationGovernor, "instrumentationGovernor");
+            return this;
+        }
+
+        /**
+         * Reads the specified clock once when each invocation starts and completes, sharing the time with all handlers.
+         * For example {@link InvocationClock#coarse()} is cheaper to read for handlers which only need millisecond
+         * resolution, but then all handlers of this instrumentation, including metrics, time invocations to the
+         * millisecond. By default handlers use {@link System#nanoTime()}.
+         */
+        public Builder<T, U> withInvocationClock(InvocationClock invocationClock) {
+            this.clock = checkNotNull(invocationClock, "invocationClock");
+            return this;
+        }
+
         public T build() {
-            return wrap(interfaceClass, delegate, handlers.build(), filter);
+            return wrap(interfaceClass, delegate, buildHandlers(), filter);
+        }
+
+        /**
+         * Returns a proxy which immediately forwards uninstrumented invocations to the delegate while the
+         * instrumentation class is generated on the common fork join pool. Once generated, invocations are atomically
+         * switched to the instrumented instance. Invocations made before the switch are not instrumented, and
+         * invocations after it still pass through the forwarding dynamic proxy, so {@link #build()} is preferable where
+         * the cost of generating the class on the calling thread is acceptable.
+         */
+        public T buildAsync() {
+            return buildAsync(ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Returns a proxy which immediately forwards uninstrumented invocations to the delegate while the
+         * instrumentation class is generated using the executor.
+         *
+         * @see #buildAsync()
+         */
+        public T buildAsync(Executor executor) {
+            return wrapAsync(interfaceClass, delegate, buildHandlers(), filter, executor);
+        }
+
+        /**
+         * Returns instrumentation whose handlers may be replaced on the live instance, see
+         * {@link SwappableInstrumentation}. The filter and governor apply to all handlers subsequently set.
+         */
+        public SwappableInstrumentation<T> buildSwappable() {
+            SwappableInvocationEventHandler swappable = SwappableInvocationEventHandler.of(
+                    handlers.build(), (clock == null) ? InvocationClock.system() : clock);
+            InvocationEventHandler<InvocationContext> handler =
+                    governor == null ? swappable : governor.govern(swappable);
+            return new SwappableInstrumentation<>(
+                    wrap(interfaceClass, delegate, ImmutableList.of(handler), filter), swappable);
+        }
+
+        private List<InvocationEventHandler<InvocationContext>> buildHandlers() {
+            List<InvocationEventHandler<InvocationContext>> builtHandlers = handlers.build();
+            if ((governor == null && clock == null) || builtHandlers.isEmpty()) {
+                return builtHandlers;
+            }
+            InvocationEventHandler<InvocationContext> handler = (clock == null)
+                    ? CompositeInvocationEventHandler.of(builtHandlers)
+                    : CompositeInvocationEventHandler.of(builtHandlers, clock);
+            return ImmutableList.of((governor == null) ? handler : governor.govern(handler));
         }
     }
 }
@@ -24,14 +24,20 @@ import com.palantir.logsafe.SafeArg;
 import com.palantir.logsafe.UnsafeArg;
 import com.palantir.logsafe.exceptions.SafeIllegalStateException;
 import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.api.event.MethodInstrumentationFilter;
 import com.palantir.tritium.event.CompositeInvocationEventHandler;
+import com.palantir.tritium.event.HandlerCircuitBreaker;
 import com.palantir.tritium.event.InstrumentationFilters;
 import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.MethodBindingInvocationEventHandler;
+import com.palantir.tritium.event.NoOpInvocationEventHandler;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +48,12 @@ abstract class InvocationEventProxy implements InvocationHandler {
     private static final Object[] EMPTY_ARRAY = new Object[0];
 
     private final InstrumentationFilter filter;
-    private final InvocationEventHandler<?> eventHandler;
+    private final InvocationEventHandler<InvocationContext> eventHandler;
+    private final HandlerCircuitBreaker circuitBreaker;
+    @Nullable
+    private final MethodInstrumentationFilter methodFilter;
+    private final boolean bindable;
+    private final ConcurrentMap<Method, InvocationEventHandler<?>> boundHandlers = new ConcurrentHashMap<>();
 
     /**
      * Always enabled instrumentation handler.
@@ -58,7 +69,12 @@ abstract class InvocationEventProxy implements InvocationHandler {
         checkNotNull(filter, "filter");
         checkNotNull(handlers, "handlers");
         this.eventHandler = CompositeInvocationEventHandler.of(handlers);
-        this.filter = filter;
+        // Handlers bound to methods share the circuit breaker of the handler they were bound from
+        this.circuitBreaker = HandlerCircuitBreaker.of(eventHandler);
+        this.methodFilter = filter instanceof MethodInstrumentationFilter ? (MethodInstrumentationFilter) filter : null;
+        this.bindable = eventHandler instanceof MethodBindingInvocationEventHandler || methodFilter != null;
+        // Method filter decisions are resolved once per method when handlers are bound
+        this.filter = methodFilter == null ? filter : InstrumentationFilters.INSTRUMENT_ALL;
     }
 
     /**
@@ -78,9 +94,22 @@ abstract class InvocationEventProxy implements InvocationHandler {
      *
      * @return whether instrumentation handling is enabled
      */
-    private boolean isEnabled(Object instance, Method method, Object[] args) {
+    private boolean isEnabled(InvocationEventHandler<?> handler, Object instance, Method method, Object[] args) {
+        return isEnabled(filter, handler, circuitBreaker, instance, method, args);
+    }
+
+    /** Handlers tripped off by their circuit breaker after repeated failures are treated as disabled. */
+    static boolean isEnabled(
+            InstrumentationFilter filter,
+            InvocationEventHandler<?> handler,
+            HandlerCircuitBreaker breaker,
+            Object instance,
+            Method method,
+            Object[] args) {
         try {
-            return eventHandler.isEnabled() && filter.shouldInstrument(instance, method, args);
+            return handler.isEnabled()
+                    && breaker.allowsInvocation()
+                    && filter.shouldInstrument(instance, method, args);
         } catch (RuntimeException | Error t) {
             logInvocationWarning("isEnabled", instance, method, t);
             return false;
@@ -95,15 +124,16 @@ abstract class InvocationEventProxy implements InvocationHandler {
         if (isSpecialMethod(method, arguments)) {
             return handleSpecialMethod(proxy, method, arguments);
         }
-        if (isEnabled(proxy, method, arguments)) {
-            InvocationContext context = handlePreInvocation(proxy, method, arguments);
+        InvocationEventHandler<?> handler = getHandler(method);
+        if (isEnabled(handler, proxy, method, arguments)) {
+            InvocationContext context = handlePreInvocation(handler, circuitBreaker, proxy, method, arguments);
             try {
                 Object result = method.invoke(getDelegate(), arguments);
-                return handleOnSuccess(context, result);
+                return handleOnSuccess(handler, circuitBreaker, context, result);
             } catch (InvocationTargetException ite) {
-                throw handleOnFailure(context, ite.getCause());
+                throw handleOnFailure(handler, circuitBreaker, context, ite.getCause());
             } catch (IllegalAccessException | RuntimeException | Error t) {
-                throw handleOnFailure(context, t);
+                throw handleOnFailure(handler, circuitBreaker, context, t);
             }
         } else {
             try {
@@ -114,6 +144,41 @@ abstract class InvocationEventProxy implements InvocationHandler {
         }
     }
 
+    /** Returns the event handler bound to the specified method, binding it on first invocation. */
+    private InvocationEventHandler<?> getHandler(Method method) {
+        if (bindable) {
+            return boundHandlers.computeIfAbsent(method, this::bindHandler);
+        }
+        return eventHandler;
+    }
+
+    private InvocationEventHandler<?> bindHandler(Method method) {
+        return bindHandler(eventHandler, methodFilter, method);
+    }
+
+    /**
+     * Binds the handler to the method, see {@link MethodBindingInvocationEventHandler}, or returns a disabled handler
+     * if the method is excluded by the method filter.
+     */
+    static InvocationEventHandler<?> bindHandler(
+            InvocationEventHandler<InvocationContext> eventHandler,
+            @Nullable MethodInstrumentationFilter methodFilter,
+            Method method) {
+        if (methodFilter != null && !shouldInstrument(methodFilter, method)) {
+            return NoOpInvocationEventHandler.INSTANCE;
+        }
+        return MethodBindingInvocationEventHandler.bind(eventHandler, method);
+    }
+
+    private static boolean shouldInstrument(MethodInstrumentationFilter methodFilter, Method method) {
+        try {
+            return methodFilter.shouldInstrument(method);
+        } catch (RuntimeException | Error t) {
+            logInvocationWarning("shouldInstrument", method.getDeclaringClass(), method, t);
+            return false;
+        }
+    }
+
     private static boolean isSpecialMethod(Method method, Object[] arguments) {
         return isHashCode(method, arguments) || isEquals(method, arguments) || isToString(method, arguments);
     }
@@ -150,30 +215,64 @@ abstract class InvocationEventProxy implements InvocationHandler {
     @Nullable
     @VisibleForTesting
     final InvocationContext handlePreInvocation(Object instance, Method method, Object[] args) {
+        return handlePreInvocation(getHandler(method), circuitBreaker, instance, method, args);
+    }
+
+    @Nullable
+    @VisibleForTesting
+    final Object handleOnSuccess(@Nullable InvocationContext context, @Nullable Object result) {
+        return handleOnSuccess(eventHandler, circuitBreaker, context, result);
+    }
+
+    final Throwable handleOnFailure(@Nullable InvocationContext context, Throwable cause) {
+        return handleOnFailure(eventHandler, circuitBreaker, context, cause);
+    }
+
+    /** Failures are recorded by the circuit breaker, which also rate limits logging them. */
+    @Nullable
+    static InvocationContext handlePreInvocation(
+            InvocationEventHandler<?> handler,
+            HandlerCircuitBreaker breaker,
+            Object instance,
+            Method method,
+            Object[] args) {
         try {
-            return eventHandler.preInvocation(instance, method, args);
+            return handler.preInvocation(instance, method, args);
         } catch (RuntimeException e) {
-            logInvocationWarning("preInvocation", instance, method, e);
+            if (breaker.recordFailure()) {
+                logInvocationWarning("preInvocation", instance, method, e);
+            }
         }
         return null;
     }
 
     @Nullable
-    @VisibleForTesting
-    final Object handleOnSuccess(@Nullable InvocationContext context, @Nullable Object result) {
+    static Object handleOnSuccess(
+            InvocationEventHandler<?> handler,
+            HandlerCircuitBreaker breaker,
+            @Nullable InvocationContext context,
+            @Nullable Object result) {
         try {
-            eventHandler.onSuccess(context, result);
+            handler.onSuccess(context, result);
         } catch (RuntimeException e) {
-            logInvocationWarningOnSuccess(context, result, e);
+            if (breaker.recordFailure()) {
+                logInvocationWarningOnSuccess(context, result, e);
+            }
         }
         return result;
     }
 
-    final Throwable handleOnFailure(@Nullable InvocationContext context, Throwable cause) {
+    static Throwable handleOnFailure(
+            InvocationEventHandler<?> handler,
+            HandlerCircuitBreaker breaker,
+            @Nullable InvocationContext context,
+            Throwable cause) {
         try {
-            eventHandler.onFailure(context, cause);
+            handler.onFailure(context, cause);
         } catch (RuntimeException e) {
-            logInvocationWarningOnFailure(context, cause, e);
+            if (breaker.recordFailure()) {
+                logInvocationWarningOnFailure(context, cause, e);
+            }
         }
         return cause;
     }
@@ -0,0 +1,206 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableMap;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.api.event.MethodInstrumentationFilter;
+import com.palantir.tritium.event.CompositeInvocationEventHandler;
+import com.palantir.tritium.event.HandlerCircuitBreaker;
+import com.palantir.tritium.event.InstrumentationFilters;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.NoOpInvocationEventHandler;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Dynamic proxy invocation handler which dispatches to the delegate through {@link MethodHandle}s rather than
+ * {@link Method#invoke}. Method handles, bound event handlers and the detection of {@code equals}, {@code hashCode} and
+ * {@code toString} are computed once for each method when the proxy is created, rather than on each invocation.
+ */
+final class MethodHandleInstrumentationProxy implements InvocationHandler {
+
+    private static final Object[] EMPTY_ARRAY = {};
+    private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final MethodHandle INVOKE_REFLECTIVELY = findInvokeReflectively();
+
+    private final Object delegate;
+    private final InstrumentationFilter filter;
+    private final HandlerCircuitBreaker circuitBreaker;
+    private final ImmutableMap<Method, ProxyMethod> methods;
+
+    private MethodHandleInstrumentationProxy(
+            Object delegate,
+            InstrumentationFilter filter,
+            HandlerCircuitBreaker circuitBreaker,
+            ImmutableMap<Method, ProxyMethod> methods) {
+        this.delegate = delegate;
+        this.filter = filter;
+        this.circuitBreaker = circuitBreaker;
+        this.methods = methods;
+    }
+
+    static <T, U extends T> MethodHandleInstrumentationProxy create(
+            Class<T> interfaceClass,
+            U delegate,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InstrumentationFilter filter) {
+        checkNotNull(interfaceClass, "interfaceClass");
+        checkNotNull(delegate, "delegate");
+        checkNotNull(handlers, "handlers");
+        checkNotNull(filter, "filter");
+        InvocationEventHandler<InvocationContext> eventHandler = CompositeInvocationEventHandler.of(handlers);
+        MethodInstrumentationFilter methodFilter =
+                filter instanceof MethodInstrumentationFilter ? (MethodInstrumentationFilter) filter : null;
+
+        Map<Method, ProxyMethod> methods = new HashMap<>();
+        for (Class<?> iface : Proxies.interfaces(interfaceClass, delegate.getClass())) {
+            for (Method method : iface.getMethods()) {
+                if (Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                methods.computeIfAbsent(method, _method -> new ProxyMethod(
+                        Special.NONE,
+                        delegateHandle(delegate, method),
+                        InvocationEventProxy.bindHandler(eventHandler, methodFilter, method)));
+            }
+        }
+        try {
+            methods.put(Object.class.getMethod("equals", Object.class), ProxyMethod.special(Special.EQUALS));
+            methods.put(Object.class.getMethod("hashCode"), ProxyMethod.special(Special.HASH_CODE));
+            methods.put(Object.class.getMethod("toString"), ProxyMethod.special(Special.TO_STRING));
+        } catch (NoSuchMethodException e) {
+            throw new SafeIllegalStateException("Object methods not found", e);
+        }
+        // Method filter decisions are resolved once per method when handlers are bound
+        InstrumentationFilter invocationFilter = methodFilter == null ? filter : InstrumentationFilters.INSTRUMENT_ALL;
+        return new MethodHandleInstrumentationProxy(
+                delegate, invocationFilter, HandlerCircuitBreaker.of(eventHandler), ImmutableMap.copyOf(methods));
+    }
+
+    @Override
+    @Nullable
+    public Object invoke(Object proxy, Method method, @Nullable Object[] nullableArgs) throws Throwable {
+        Object[] arguments = nullableArgs == null ? EMPTY_ARRAY : nullableArgs;
+        ProxyMethod proxyMethod = methods.get(method);
+        if (proxyMethod == null) {
+            throw new SafeIllegalStateException("Unknown proxy method", SafeArg.of("method", method));
+        }
+        switch (proxyMethod.special) {
+            case EQUALS:
+                return arguments[0] != null && proxy == arguments[0];
+            case HASH_CODE:
+                return hashCode();
+            case TO_STRING:
+                return toString();
+            case NONE:
+                break;
+        }
+        InvocationEventHandler<?> handler = proxyMethod.handler;
+        if (InvocationEventProxy.isEnabled(filter, handler, circuitBreaker, proxy, method, arguments)) {
+            InvocationContext context =
+                    InvocationEventProxy.handlePreInvocation(handler, circuitBreaker, proxy, method, arguments);
+            try {
+                Object result = proxyMethod.handle.invokeExact(arguments);
+                return InvocationEventProxy.handleOnSuccess(handler, circuitBreaker, context, result);
+            } catch (Throwable t) {
+                throw InvocationEventProxy.handleOnFailure(handler, circuitBreaker, context, t);
+            }
+        }
+        return proxyMethod.handle.invokeExact(arguments);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(delegate);
+    }
+
+    /**
+     * Returns a handle invoking the method on the delegate, accepting arguments as an array. Methods of interfaces
+     * which are not accessible to Tritium are invoked reflectively.
+     */
+    static MethodHandle delegateHandle(Object delegate, Method method) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup()
+                    .unreflect(method)
+                    .bindTo(delegate)
+                    .asSpreader(Object[].class, method.getParameterCount());
+        } catch (IllegalAccessException e) {
+            handle = MethodHandles.insertArguments(INVOKE_REFLECTIVELY, 0, method, delegate);
+        }
+        return handle.asType(SPREAD_TYPE);
+    }
+
+    @Nullable
+    private static Object invokeReflectively(Method method, Object delegate, Object[] arguments) throws Throwable {
+        try {
+            return method.invoke(delegate, arguments);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static MethodHandle findInvokeReflectively() {
+        try {
+            return MethodHandles.lookup()
+                    .findStatic(
+                            MethodHandleInstrumentationProxy.class,
+                            "invokeReflectively",
+                            MethodType.methodType(Object.class, Method.class, Object.class, Object[].class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new SafeIllegalStateException("Failed to find reflective invocation", e);
+        }
+    }
+
+    private enum Special {
+        NONE,
+        EQUALS,
+        HASH_CODE,
+        TO_STRING
+    }
+
+    private static final class ProxyMethod {
+        private final Special special;
+        private final MethodHandle handle;
+        private final InvocationEventHandler<?> handler;
+
+        ProxyMethod(Special special, MethodHandle handle, InvocationEventHandler<?> handler) {
+            this.special = special;
+            this.handle = handle;
+            this.handler = handler;
+        }
+
+        static ProxyMethod special(Special special) {
+            return new ProxyMethod(special, INVOKE_REFLECTIVELY, NoOpInvocationEventHandler.INSTANCE);
+        }
+    }
+}
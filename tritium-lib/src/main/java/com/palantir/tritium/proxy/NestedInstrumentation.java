@@ -0,0 +1,105 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Tracks instrumented instances so that instrumenting an already instrumented instance produces a single layer of
+ * instrumentation over the innermost delegate, rather than one proxy per layer each with its own dispatch and
+ * invocation contexts.
+ */
+final class NestedInstrumentation {
+
+    /**
+     * Instrumented instances are weakly referenced and compared by identity, so tracking does not retain them nor
+     * invoke their {@code equals} and {@code hashCode} methods.
+     */
+    private static final ConcurrentMap<Object, Layer> layers =
+            new MapMaker().weakKeys().concurrencyLevel(4).makeMap();
+
+    private NestedInstrumentation() {
+        throw new UnsupportedOperationException();
+    }
+
+    static void register(
+            Object instrumented,
+            Class<?> interfaceClass,
+            Object delegate,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InstrumentationFilter filter) {
+        if (instrumented != delegate) {
+            layers.put(instrumented, new Layer(interfaceClass, delegate, handlers, filter));
+        }
+    }
+
+    /**
+     * Returns the instrumentation layer of the delegate if it may be merged with instrumentation of the same interface
+     * using the specified filter, otherwise null.
+     */
+    @Nullable
+    static Layer find(Object delegate, Class<?> interfaceClass, InstrumentationFilter filter) {
+        Layer layer = layers.get(delegate);
+        if (layer != null && layer.interfaceClass == interfaceClass && layer.filter.equals(filter)) {
+            return layer;
+        }
+        return null;
+    }
+
+    static final class Layer {
+        private final Class<?> interfaceClass;
+        private final Object delegate;
+        private final ImmutableList<InvocationEventHandler<InvocationContext>> handlers;
+        private final InstrumentationFilter filter;
+
+        private Layer(
+                Class<?> interfaceClass,
+                Object delegate,
+                List<InvocationEventHandler<InvocationContext>> handlers,
+                InstrumentationFilter filter) {
+            this.interfaceClass = interfaceClass;
+            this.delegate = delegate;
+            this.handlers = ImmutableList.copyOf(handlers);
+            this.filter = filter;
+        }
+
+        /** Returns the innermost uninstrumented delegate. */
+        Object delegate() {
+            return delegate;
+        }
+
+        /**
+         * Returns the handlers of an outer layer followed by those of this layer, so events are ordered as if the
+         * layers were nested, omitting handlers present in both.
+         */
+        List<InvocationEventHandler<InvocationContext>> merge(List<InvocationEventHandler<InvocationContext>> outer) {
+            return ImmutableSet.<InvocationEventHandler<InvocationContext>>builder()
+                    .addAll(outer)
+                    .addAll(handlers)
+                    .build()
+                    .asList();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.SwappableInvocationEventHandler;
+import java.util.List;
+
+/**
+ * An instrumented instance together with a handle to atomically replace its handlers, for example to remove handlers
+ * which have been disabled rather than polling them on every invocation. Invocations in progress complete with the
+ * handlers they started with.
+
+ * <p>Arguments are always captured, as handlers set later may require them.
+ *
+ * @param <T> instrumented interface type
+ */
+public final class SwappableInstrumentation<T> {
+
+    private final T instance;
+    private final SwappableInvocationEventHandler handler;
+
+    SwappableInstrumentation(T instance, SwappableInvocationEventHandler handler) {
+        this.instance = checkNotNull(instance, "instance");
+        this.handler = checkNotNull(handler, "handler");
+    }
+
+    /** Returns the instrumented instance. */
+    public T getInstance() {
+        return instance;
+    }
+
+    /** Returns the handlers currently invoked by the instrumented instance. */
+    public List<InvocationEventHandler<InvocationContext>> getHandlers() {
+        return handler.getHandlers();
+    }
+
+    /** Atomically replaces the handlers invoked by the instrumented instance. */
+    public void setHandlers(List<InvocationEventHandler<InvocationContext>> handlers) {
+        handler.setHandlers(handlers);
+    }
+
+    @Override
+    public String toString() {
+        return "SwappableInstrumentation{instance=" + instance + ", handlers=" + getHandlers() + '}';
+    }
+}
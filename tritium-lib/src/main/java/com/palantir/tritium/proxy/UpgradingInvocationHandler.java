@@ -0,0 +1,90 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Forwards invocations to the uninstrumented delegate until {@link #upgrade(Object)} atomically switches the target
+ * to an instrumented instance.
+ *
+ * <p>Each method is dispatched through a method handle bound to the current target, created on first use and again
+ * once after the upgrade, rather than through reflection. The dynamic proxy itself remains, so every invocation
+ * still pays for proxy dispatch, boxing of arguments into an array and a map lookup in addition to the instrumented
+ * instance; callers sensitive to this overhead should instrument synchronously.
+ */
+final class UpgradingInvocationHandler implements InvocationHandler {
+
+    private static final Object[] EMPTY_ARRAY = {};
+
+    private final Object delegate;
+    private final ConcurrentMap<Method, Dispatch> dispatches = new ConcurrentHashMap<>();
+    private volatile Object target;
+
+    UpgradingInvocationHandler(Object delegate) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.target = delegate;
+    }
+
+    void upgrade(Object instrumented) {
+        this.target = checkNotNull(instrumented, "instrumented");
+    }
+
+    @Override
+    @Nullable
+    public Object invoke(Object proxy, Method method, @Nullable Object[] nullableArgs) throws Throwable {
+        Object[] arguments = nullableArgs == null ? EMPTY_ARRAY : nullableArgs;
+        if (arguments.length == 0 && "hashCode".equals(method.getName())) {
+            return hashCode();
+        }
+        if (arguments.length == 1
+                && "equals".equals(method.getName())
+                && method.getParameterTypes()[0] == Object.class) {
+            return proxy == arguments[0];
+        }
+        if (arguments.length == 0 && "toString".equals(method.getName())) {
+            return delegate.toString();
+        }
+        Object current = target;
+        Dispatch dispatch = dispatches.get(method);
+        if (dispatch == null || dispatch.target != current) {
+            // A dispatch created concurrently with the upgrade is replaced by the next invocation
+            dispatch = new Dispatch(current, method, delegate);
+            dispatches.put(method, dispatch);
+        }
+        return dispatch.handle.invokeExact(arguments);
+    }
+
+    private static final class Dispatch {
+        private final Object target;
+        private final MethodHandle handle;
+
+        Dispatch(Object target, Method method, Object delegate) {
+            this.target = target;
+            // The instrumented instance may not implement every interface of the delegate
+            Object receiver = method.getDeclaringClass().isInstance(target) ? target : delegate;
+            this.handle = MethodHandleInstrumentationProxy.delegateHandle(receiver, method);
+        }
+    }
+}
@@ -29,22 +29,34 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Slf4jReporter;
 import com.codahale.metrics.Slf4jReporter.LoggingLevel;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Runnables;
 import com.palantir.logsafe.exceptions.SafeRuntimeException;
 import com.palantir.tritium.Tagged;
+import com.palantir.tritium.api.annotations.Instrument;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.api.event.MethodInstrumentationFilter;
+import com.palantir.tritium.event.AbstractInvocationEventHandler;
 import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.GeneratedInstrumentationSupport;
+import com.palantir.tritium.event.HandlerOverheadSampler;
 import com.palantir.tritium.event.InstrumentationFilters;
+import com.palantir.tritium.event.InstrumentationGovernor;
 import com.palantir.tritium.event.InstrumentationProperties;
+import com.palantir.tritium.event.InvocationClock;
 import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.MethodBindingInvocationEventHandler;
+import com.palantir.tritium.event.SharedContextInvocationEventHandler;
 import com.palantir.tritium.event.log.LoggingInvocationEventHandler;
 import com.palantir.tritium.event.metrics.MetricsInvocationEventHandler;
 import com.palantir.tritium.event.metrics.TaggedMetricsServiceInvocationEventHandler;
@@ -57,16 +69,25 @@ import com.palantir.tritium.test.LessSpecificReturn;
 import com.palantir.tritium.test.TestImplementation;
 import com.palantir.tritium.test.TestInterface;
 import com.palantir.tritium.tracing.TracingInvocationEventHandler;
+import java.io.Closeable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -103,9 +124,15 @@ public abstract class InstrumentationTest {
 
     abstract boolean useByteBuddy();
 
+    /** Whether dynamic proxies dispatch through method handles rather than reflection. */
+    boolean useMethodHandles() {
+        return false;
+    }
+
     @BeforeEach
     void before() {
         System.setProperty("instrument.dynamic-proxy", Boolean.toString(!useByteBuddy()));
+        System.setProperty("instrument.method-handle-proxy", Boolean.toString(useMethodHandles()));
         InstrumentationProperties.reload();
     }
 
@@ -119,6 +146,7 @@ public abstract class InstrumentationTest {
             Tagged.report(reporter, taggedMetricRegistry);
         }
         System.clearProperty("instrument.dynamic-proxy");
+        System.clearProperty("instrument.method-handle-proxy");
         InstrumentationProperties.reload();
     }
 
@@ -314,6 +342,174 @@ public abstract class InstrumentationTest {
         verifyNoMoreInteractions(mockHandler);
     }
 
+    @Test
+    void testArgumentFreeHandler() {
+        List<Object[]> capturedArguments = new ArrayList<>();
+        ArgumentFreeHandler handler = new ArgumentFreeHandler(capturedArguments);
+        TestInterface instrumented = Instrumentation.builder(TestInterface.class, new TestImplementation())
+                .withHandler(handler)
+                .build();
+
+        ImmutableSet<String> testSet = ImmutableSet.of("test");
+        instrumented.bulk(testSet);
+        assertThat(capturedArguments).hasSize(1);
+        if (useByteBuddy()) {
+            assertThat(capturedArguments.get(0)).isEmpty();
+        } else {
+            // dynamic proxies always receive materialized arguments
+            assertThat(capturedArguments.get(0)).containsExactly(testSet);
+        }
+    }
+
+    @Test
+    void testArgumentFreeHandlerWithArgumentFilter() {
+        List<Object[]> capturedArguments = new ArrayList<>();
+        ArgumentFreeHandler handler = new ArgumentFreeHandler(capturedArguments);
+        TestInterface instrumented = Instrumentation.builder(TestInterface.class, new TestImplementation())
+                .withFilter((instance, method, args) -> args.length == 1)
+                .withHandler(handler)
+                .build();
+
+        ImmutableSet<String> testSet = ImmutableSet.of("test");
+        instrumented.bulk(testSet);
+        assertThat(capturedArguments).hasSize(1);
+        assertThat(capturedArguments.get(0)).containsExactly(testSet);
+    }
+
+    @Test
+    void testMethodBindingHandler() throws NoSuchMethodException {
+        List<Method> boundMethods = new ArrayList<>();
+        MethodBindingInvocationEventHandler<InvocationContext> handler = new BindingHandler(boundMethods);
+        TestInterface instrumented = Instrumentation.builder(TestInterface.class, new TestImplementation())
+                .withHandler(handler)
+                .build();
+
+        assertThat(instrumented.test()).isEqualTo("hello");
+        assertThat(boundMethods).contains(TestInterface.class.getMethod("test"));
+    }
+
+    private static final class BindingHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements MethodBindingInvocationEventHandler<InvocationContext> {
+
+        private final List<Method> boundMethods;
+
+        BindingHandler(List<Method> boundMethods) {
+            this.boundMethods = boundMethods;
+        }
+
+        @Override
+        public InvocationEventHandler<InvocationContext> bind(Method method) {
+            boundMethods.add(method);
+            return this;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {}
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
+    }
+
+    private static final class ArgumentFreeHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements ArgumentsRequirement {
+
+        private final List<Object[]> capturedArguments;
+
+        ArgumentFreeHandler(List<Object[]> capturedArguments) {
+            this.capturedArguments = capturedArguments;
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return false;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            capturedArguments.add(args);
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {}
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
+    }
+
+    private static final class CapturingHandler extends AbstractInvocationEventHandler<InvocationContext> {
+
+        private final List<Object[]> capturedArguments;
+
+        CapturingHandler(List<Object[]> capturedArguments) {
+            this.capturedArguments = capturedArguments;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            capturedArguments.add(args);
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {}
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
+    }
+
+    @Test
+    void testInvocationClock() {
+        AtomicLong time = new AtomicLong();
+        List<Long> elapsed = new ArrayList<>();
+        TestInterface instrumented = Instrumentation.builder(TestInterface.class, new TestImplementation())
+                .withInvocationClock(() -> time.addAndGet(1_000))
+                .withHandler(new ElapsedHandler(elapsed))
+                .build();
+
+        assertThat(instrumented.test()).isEqualTo("hello");
+        assertThat(elapsed).containsExactly(1_000L);
+    }
+
+    private static final class ElapsedHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements SharedContextInvocationEventHandler<InvocationContext> {
+
+        private final List<Long> elapsed;
+
+        ElapsedHandler(List<Long> elapsed) {
+            this.elapsed = elapsed;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public InvocationContext preInvocation(InvocationContext sharedContext) {
+            return sharedContext;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            if (context != null) {
+                elapsed.add(InvocationClock.elapsedNanos(context));
+            }
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
+    }
+
     @Test
     void testNullInterface() {
         assertThatExceptionOfType(NullPointerException.class)
@@ -398,6 +594,29 @@ public abstract class InstrumentationTest {
                 .isEqualTo(1L);
     }
 
+    @Test
+    void testTaggedMetricsTimeFutureCompletion() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        FutureService instrumented = Instrumentation.builder(FutureService.class, (FutureService) () -> future)
+                .withTaggedMetrics(taggedMetricRegistry, "futurePrefix")
+                .build();
+        MetricName timerName = MetricName.builder()
+                .safeName("futurePrefix")
+                .putSafeTags("service-name", "FutureService")
+                .putSafeTags("endpoint", "get")
+                .build();
+
+        assertThat(instrumented.get()).isNotDone();
+        assertThat(taggedMetricRegistry.timer(timerName).getCount()).isZero();
+
+        future.complete("done");
+        assertThat(taggedMetricRegistry.timer(timerName).getCount()).isOne();
+    }
+
+    public interface FutureService {
+        CompletableFuture<String> get();
+    }
+
     @Test
     void testInaccessibleConstructor() throws NoSuchMethodException {
         Constructor<Instrumentation> constructor = Instrumentation.class.getDeclaredConstructor();
@@ -583,7 +802,8 @@ public abstract class InstrumentationTest {
         // The value isn't particularly important, this test exists to force us to acknowledge changes in
         // stack trace length due to Tritium instrumentation. It's not uncommon to have >10 Tritium proxies
         // in a single trace, so increases in frames can make debugging more difficult.
-        int instrumentedStackSize = useByteBuddy() ? 1 : 6;
+        // Method handle dispatch frames are hidden, unlike reflective invocation
+        int instrumentedStackSize = useByteBuddy() ? 1 : (useMethodHandles() ? 2 : 6);
         assertThat(instrumentedStack).hasSize(rawStack.length + instrumentedStackSize);
     }
 
@@ -606,6 +826,419 @@ public abstract class InstrumentationTest {
         assertThat(singleHandlerInstrumentedStackTrace).hasSameSizeAs(multipleHandlerInstrumentedStack);
     }
 
+    @Test
+    void testFusedHandlers() {
+        System.setProperty("instrument.fused-handlers", "true");
+        InstrumentationProperties.reload();
+        try {
+            List<String> events = new ArrayList<>();
+            TestInterface instrumented = Instrumentation.builder(TestInterface.class, new TestImplementation())
+                    .withHandler(new RecordingHandler("first", events))
+                    .withHandler(new RecordingHandler("second", events))
+                    .build();
+
+            assertThat(instrumented.test()).isEqualTo("hello");
+            assertThat(events)
+                    .containsExactly("first:pre:test", "second:pre:test", "second:success", "first:success");
+
+            events.clear();
+            assertThatThrownBy(instrumented::throwsThrowable).isInstanceOf(TestImplementation.TestThrowable.class);
+            assertThat(events)
+                    .containsExactly(
+                            "first:pre:throwsThrowable",
+                            "second:pre:throwsThrowable",
+                            "second:failure",
+                            "first:failure");
+
+            StackTraceSupplier stackTraceSupplier = () -> cleanStackTrace(new Exception().getStackTrace());
+            StackTraceSupplier singleHandlerInstrumentedStackSupplier = Instrumentation.builder(
+                            StackTraceSupplier.class, stackTraceSupplier)
+                    .withHandler(new RecordingHandler("single", new ArrayList<>()))
+                    .build();
+            StackTraceSupplier fusedInstrumentedStackSupplier = Instrumentation.builder(
+                            StackTraceSupplier.class, stackTraceSupplier)
+                    .withHandler(new RecordingHandler("first", new ArrayList<>()))
+                    .withHandler(new RecordingHandler("second", new ArrayList<>()))
+                    .build();
+            assertThat(fusedInstrumentedStackSupplier.get())
+                    .hasSameSizeAs(singleHandlerInstrumentedStackSupplier.get());
+        } finally {
+            System.clearProperty("instrument.fused-handlers");
+            InstrumentationProperties.reload();
+        }
+    }
+
+    @Test
+    void testFusedHandlersShareFilterDecision() {
+        System.setProperty("instrument.fused-handlers", "true");
+        InstrumentationProperties.reload();
+        try {
+            List<String> events = new ArrayList<>();
+            AtomicInteger evaluations = new AtomicInteger();
+            // Instruments every other evaluation, as a sampling filter would
+            InstrumentationFilter alternatingFilter =
+                    (_instance, _method, _args) -> evaluations.getAndIncrement() % 2 == 0;
+            TestInterface instrumented = Instrumentation.builder(TestInterface.class, new TestImplementation())
+                    .withFilter(alternatingFilter)
+                    .withHandler(new RecordingHandler("first", events))
+                    .withHandler(new RecordingHandler("second", events))
+                    .build();
+
+            for (int i = 0; i < 4; i++) {
+                assertThat(instrumented.test()).isEqualTo("hello");
+            }
+            assertThat(evaluations).hasValue(4);
+            assertThat(events)
+                    .containsExactly(
+                            "first:pre:test",
+                            "second:pre:test",
+                            "second:success",
+                            "first:success",
+                            "first:pre:test",
+                            "second:pre:test",
+                            "second:success",
+                            "first:success");
+        } finally {
+            System.clearProperty("instrument.fused-handlers");
+            InstrumentationProperties.reload();
+        }
+    }
+
+    @Test
+    void testFailingHandlerDisabled() {
+        List<String> events = new ArrayList<>();
+        FailingHandler failing = new FailingHandler();
+        TestInterface instrumented = Instrumentation.builder(TestInterface.class, new TestImplementation())
+                .withHandler(new RecordingHandler("recording", events))
+                .withHandler(failing)
+                .build();
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(instrumented.test()).isEqualTo("hello");
+        }
+
+        // The failing handler is disabled after exceeding the default threshold, other handlers are unaffected
+        assertThat(failing.invocations).hasValueBetween(101, 999);
+        assertThat(events).filteredOn(event -> event.endsWith(":pre:test")).hasSize(1000);
+
+        TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+        Instrumentation.registerHandlerFailureMetrics(registry);
+        Gauge<Object> failures = registry.gauge(MetricName.builder()
+                        .safeName("tritium.handler.failures")
+                        .putSafeTags("handler", "FailingHandler")
+                        .build())
+                .get();
+        Gauge<Object> trips = registry.gauge(MetricName.builder()
+                        .safeName("tritium.handler.trips")
+                        .putSafeTags("handler", "FailingHandler")
+                        .build())
+                .get();
+        assertThat((Long) failures.getValue()).isGreaterThanOrEqualTo(failing.invocations.get());
+        assertThat((Long) trips.getValue()).isPositive();
+    }
+
+    @Test
+    void testFailingSingleHandlerDisabled() {
+        FailingHandler failing = new FailingHandler();
+        TestInterface instrumented = Instrumentation.builder(TestInterface.class, new TestImplementation())
+                .withHandler(failing)
+                .build();
+        FailingHandler generatedFailing = new FailingHandler();
+        AnnotatedService generated = Instrumentation.builder(AnnotatedService.class, input -> input)
+                .withHandler(generatedFailing)
+                .build();
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(instrumented.test()).isEqualTo("hello");
+            assertThat(generated.echo("test")).isEqualTo("test");
+        }
+
+        // Handlers invoked without a composite are disabled by every instrumentation strategy
+        assertThat(failing.invocations).hasValueBetween(101, 999);
+        assertThat(generatedFailing.invocations).hasValueBetween(101, 999);
+    }
+
+    @Test
+    void testHandlerOverheadMetrics() {
+        TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+        Instrumentation.registerHandlerOverheadMetrics(registry, 1);
+        try {
+            TestInterface instrumented = Instrumentation.builder(TestInterface.class, new TestImplementation())
+                    .withHandler(new RecordingHandler("first", new ArrayList<>()))
+                    .withHandler(new FailingHandler())
+                    .build();
+            assertThat(instrumented.test()).isEqualTo("hello");
+        } finally {
+            HandlerOverheadSampler.disable();
+        }
+
+        assertThat(registry.getMetrics().keySet())
+                .filteredOn(name -> name.safeName().equals("tritium.handler.overhead"))
+                .extracting(MetricName::safeTags)
+                .contains(
+                        ImmutableMap.of("handler", "RecordingHandler", "phase", "pre"),
+                        ImmutableMap.of("handler", "RecordingHandler", "phase", "post"),
+                        ImmutableMap.of("handler", "FailingHandler", "phase", "pre"));
+    }
+
+    private static final class FailingHandler extends AbstractInvocationEventHandler<InvocationContext> {
+
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object _instance, @Nonnull Method _method, @Nonnull Object[] _args) {
+            invocations.incrementAndGet();
+            throw new IllegalStateException("expected");
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {}
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {}
+    }
+
+    private static final class RecordingHandler extends AbstractInvocationEventHandler<InvocationContext> {
+
+        private final String name;
+        private final List<String> events;
+
+        RecordingHandler(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            events.add(name + ":pre:" + method.getName());
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object _result) {
+            events.add(name + ":success");
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable _cause) {
+            events.add(name + ":failure");
+        }
+    }
+
+    @Test
+    void testGeneratedInstrumentation() {
+        List<String> events = new ArrayList<>();
+        AnnotatedService instrumented = Instrumentation.builder(AnnotatedService.class, input -> input + '!')
+                .withHandler(new RecordingHandler("generated", events))
+                .build();
+
+        assertThat(instrumented.echo("test")).isEqualTo("test!");
+        assertThat(events).containsExactly("generated:pre:echo", "generated:success");
+        if (useByteBuddy()) {
+            assertThat(instrumented.getClass().getName())
+                    .isEqualTo(GeneratedInstrumentationSupport.generatedClassName(AnnotatedService.class))
+                    .endsWith("InstrumentedInstrumentationTest_AnnotatedService");
+        } else {
+            assertThat(Proxy.isProxyClass(instrumented.getClass())).isTrue();
+        }
+    }
+
+    @Test
+    void testBuildAsync() {
+        List<Runnable> tasks = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+        PrewarmedService delegate = input -> input + '!';
+        PrewarmedService instrumented = Instrumentation.builder(PrewarmedService.class, delegate)
+                .withHandler(new RecordingHandler("async", events))
+                .buildAsync(tasks::add);
+
+        if (useByteBuddy()) {
+            assertThat(tasks).hasSize(1);
+            assertThat(instrumented.echo("before")).isEqualTo("before!");
+            assertThat(events).isEmpty();
+            tasks.forEach(Runnable::run);
+        } else {
+            assertThat(tasks).isEmpty();
+        }
+        assertThat(instrumented.echo("after")).isEqualTo("after!");
+        assertThat(events).containsExactly("async:pre:echo", "async:success");
+        assertThat(instrumented).hasToString(delegate.toString()).isEqualTo(instrumented);
+    }
+
+    @Test
+    void testBuildAsyncIsFlattened() {
+        List<Runnable> tasks = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+        RecordingHandler shared = new RecordingHandler("shared", events);
+        PrewarmedService delegate = input -> input;
+        PrewarmedService inner = Instrumentation.builder(PrewarmedService.class, delegate)
+                .withHandler(new RecordingHandler("inner", events))
+                .withHandler(shared)
+                .build();
+        PrewarmedService outer = Instrumentation.builder(PrewarmedService.class, inner)
+                .withHandler(new RecordingHandler("outer", events))
+                .withHandler(shared)
+                .buildAsync(tasks::add);
+        tasks.forEach(Runnable::run);
+
+        assertThat(outer.echo("test")).isEqualTo("test");
+        assertThat(events)
+                .containsExactly(
+                        "outer:pre:echo",
+                        "shared:pre:echo",
+                        "inner:pre:echo",
+                        "inner:success",
+                        "shared:success",
+                        "outer:success");
+    }
+
+    @Test
+    void testBuildAsyncRejected() {
+        List<String> events = new ArrayList<>();
+        PrewarmedService delegate = input -> input;
+        PrewarmedService instrumented = Instrumentation.builder(PrewarmedService.class, delegate)
+                .withHandler(new RecordingHandler("rejected", events))
+                .buildAsync(_task -> {
+                    throw new RejectedExecutionException();
+                });
+
+        assertThat(instrumented.echo("test")).isEqualTo("test");
+        assertThat(events).containsExactly("rejected:pre:echo", "rejected:success");
+    }
+
+    @Test
+    void testMethodInstrumentationFilter() {
+        List<String> events = new ArrayList<>();
+        AtomicInteger filterInvocations = new AtomicInteger();
+        MethodInstrumentationFilter filter = method -> {
+            filterInvocations.incrementAndGet();
+            return !method.getName().equals("count");
+        };
+        FilteredService delegate = new FilteredService() {
+            @Override
+            public String echo(String input) {
+                return input;
+            }
+
+            @Override
+            public int count() {
+                return 1;
+            }
+        };
+        FilteredService instrumented = Instrumentation.builder(FilteredService.class, delegate)
+                .withHandler(new RecordingHandler("filtered", events))
+                .withFilter(filter)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(instrumented.echo("test")).isEqualTo("test");
+            assertThat(instrumented.count()).isOne();
+        }
+        assertThat(events)
+                .containsExactly(
+                        "filtered:pre:echo",
+                        "filtered:success",
+                        "filtered:pre:echo",
+                        "filtered:success",
+                        "filtered:pre:echo",
+                        "filtered:success");
+        // Evaluated once per method rather than once per invocation
+        assertThat(filterInvocations).hasValue(2);
+    }
+
+    public interface FilteredService {
+        String echo(String input);
+
+        int count();
+    }
+
+    @Test
+    void testGovernor() {
+        List<String> events = new ArrayList<>();
+        InstrumentationGovernor governor = InstrumentationGovernor.disabling(Double.MAX_VALUE);
+        PrewarmedService delegate = input -> input;
+        PrewarmedService instrumented = Instrumentation.builder(PrewarmedService.class, delegate)
+                .withHandler(new RecordingHandler("governed", events))
+                .withGovernor(governor)
+                .build();
+
+        assertThat(instrumented.echo("test")).isEqualTo("test");
+        assertThat(events).containsExactly("governed:pre:echo", "governed:success");
+        assertThat(governor.demotedMethods()).isEmpty();
+    }
+
+    @Test
+    void testSwappableHandlers() {
+        List<String> events = new ArrayList<>();
+        PrewarmedService delegate = input -> input;
+        SwappableInstrumentation<PrewarmedService> swappable = Instrumentation.builder(PrewarmedService.class, delegate)
+                .withHandler(new RecordingHandler("first", events))
+                .buildSwappable();
+        PrewarmedService instrumented = swappable.getInstance();
+
+        assertThat(instrumented.echo("test")).isEqualTo("test");
+        assertThat(events).containsExactly("first:pre:echo", "first:success");
+
+        events.clear();
+        RecordingHandler second = new RecordingHandler("second", events);
+        swappable.setHandlers(Collections.singletonList(second));
+        assertThat(swappable.getHandlers()).containsExactly(second);
+        assertThat(instrumented.echo("test")).isEqualTo("test");
+        assertThat(events).containsExactly("second:pre:echo", "second:success");
+
+        events.clear();
+        swappable.setHandlers(Collections.emptyList());
+        assertThat(instrumented.echo("test")).isEqualTo("test");
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    void testSwappableHandlersAlwaysCaptureArguments() {
+        List<Object[]> argumentFree = new ArrayList<>();
+        List<Object[]> capturing = new ArrayList<>();
+        SwappableInstrumentation<TestInterface> swappable = Instrumentation.builder(
+                        TestInterface.class, new TestImplementation())
+                .withHandler(new ArgumentFreeHandler(argumentFree))
+                .buildSwappable();
+        TestInterface initial = swappable.getInstance();
+        ImmutableSet<String> testSet = ImmutableSet.of("test");
+        initial.bulk(testSet);
+
+        swappable.setHandlers(Collections.singletonList(new CapturingHandler(capturing)));
+        initial.bulk(testSet);
+
+        assertThat(swappable.getInstance()).isSameAs(initial);
+        assertThat(argumentFree).hasSize(1);
+        assertThat(argumentFree.get(0)).containsExactly(testSet);
+        assertThat(capturing).hasSize(1);
+        assertThat(capturing.get(0)).containsExactly(testSet);
+    }
+
+    public interface PrewarmedService {
+        String echo(String input);
+    }
+
+    public interface PrewarmedFromHandlersService {
+        String echo(String input);
+    }
+
+    public static final class ClosablePrewarmedService implements PrewarmedFromHandlersService, Closeable {
+        @Override
+        public String echo(String input) {
+            return input;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    @Instrument
+    public interface AnnotatedService {
+        String echo(String input);
+    }
+
     public interface StackTraceSupplier {
         StackTraceElement[] get();
     }
@@ -629,6 +1262,62 @@ public abstract class InstrumentationTest {
         return (instance, method, args) -> method.getName().equals(methodName);
     }
 
+    @Test
+    void testPrewarmFromHandlers() {
+        List<InvocationEventHandler<InvocationContext>> handlers =
+                Collections.singletonList(new ArgumentFreeHandler(new ArrayList<>()));
+        CompletableFuture<Void> future = Instrumentation.prewarm(
+                PrewarmedFromHandlersService.class,
+                ClosablePrewarmedService.class,
+                handlers,
+                InstrumentationFilters.INSTRUMENT_ALL,
+                Runnable::run);
+        assertThat(future).isCompletedWithValue(null);
+        int generatedClasses = ByteBuddyInstrumentation.generatedClassCount();
+
+        PrewarmedFromHandlersService instrumented = Instrumentation.builder(
+                        PrewarmedFromHandlersService.class, new ClosablePrewarmedService())
+                .withHandlers(handlers)
+                .build();
+        assertThat(instrumented.echo("prewarmed")).isEqualTo("prewarmed");
+        assertThat(ByteBuddyInstrumentation.generatedClassCount()).isLessThanOrEqualTo(generatedClasses);
+        if (useByteBuddy()) {
+            assertThat(instrumented).isInstanceOf(Closeable.class);
+        }
+    }
+
+    @Test
+    void testPrewarm() {
+        List<Runnable> tasks = new ArrayList<>();
+        CompletableFuture<Void> future = Instrumentation.prewarm(
+                Arrays.asList(PrewarmedService.class, String.class, AnnotatedService.class), task -> {
+                    tasks.add(task);
+                    task.run();
+                });
+        // Failures are logged rather than propagated
+        assertThat(future).isCompletedWithValue(null);
+        assertThat(tasks).hasSize(3);
+        int generatedClasses = ByteBuddyInstrumentation.generatedClassCount();
+
+        PrewarmedService delegate = input -> input;
+        PrewarmedService instrumented = Instrumentation.builder(PrewarmedService.class, delegate)
+                .withPerformanceTraceLogging()
+                .build();
+        assertThat(instrumented.echo("prewarmed")).isEqualTo("prewarmed");
+        PrewarmedService argumentFree = Instrumentation.builder(PrewarmedService.class, delegate)
+                .withHandler(new ArgumentFreeHandler(new ArrayList<>()))
+                .build();
+        assertThat(argumentFree.echo("prewarmed")).isEqualTo("prewarmed");
+        // Both argument capturing and argument free classes were generated by prewarming
+        assertThat(ByteBuddyInstrumentation.generatedClassCount()).isLessThanOrEqualTo(generatedClasses);
+        if (useByteBuddy()) {
+            assertThat(instrumented.getClass().getName())
+                    .startsWith("com.palantir.tritium.proxy.InstrumentedPrewarmedService$");
+        } else {
+            assertThat(Proxy.isProxyClass(instrumented.getClass())).isTrue();
+        }
+    }
+
     @Test
     void testMultipleTritiumWrappersResultInSameClass() {
         Runnable raw = () -> {};
@@ -644,6 +1333,84 @@ public abstract class InstrumentationTest {
                 .isEqualTo(instrumented.getClass());
     }
 
+    @Test
+    void testNestedInstrumentationIsFlattened() {
+        List<String> events = new ArrayList<>();
+        RecordingHandler shared = new RecordingHandler("shared", events);
+        PrewarmedService delegate = input -> input;
+        PrewarmedService inner = Instrumentation.builder(PrewarmedService.class, delegate)
+                .withHandler(new RecordingHandler("inner", events))
+                .withHandler(shared)
+                .build();
+        PrewarmedService outer = Instrumentation.builder(PrewarmedService.class, inner)
+                .withHandler(new RecordingHandler("outer", events))
+                .withHandler(shared)
+                .build();
+
+        assertThat(outer.echo("test")).isEqualTo("test");
+        assertThat(events)
+                .containsExactly(
+                        "outer:pre:echo",
+                        "shared:pre:echo",
+                        "inner:pre:echo",
+                        "inner:success",
+                        "shared:success",
+                        "outer:success");
+
+        StackTraceSupplier stackTraceSupplier = () -> cleanStackTrace(new Exception().getStackTrace());
+        StackTraceSupplier once = Instrumentation.builder(StackTraceSupplier.class, stackTraceSupplier)
+                .withPerformanceTraceLogging()
+                .build();
+        StackTraceSupplier twice = Instrumentation.builder(StackTraceSupplier.class, once)
+                .withPerformanceTraceLogging()
+                .build();
+        assertThat(twice.get()).hasSameSizeAs(once.get());
+    }
+
+    @Test
+    void testSharedClasses() {
+        Runnable plain = () -> {};
+        CloseableRunnable closeable = new CloseableRunnable();
+        assertThat(Instrumentation.builder(Runnable.class, closeable)
+                        .withPerformanceTraceLogging()
+                        .build())
+                .isInstanceOf(Closeable.class);
+
+        System.setProperty("instrument.shared-classes", "true");
+        InstrumentationProperties.reload();
+        try {
+            Runnable instrumentedPlain = Instrumentation.builder(Runnable.class, plain)
+                    .withPerformanceTraceLogging()
+                    .build();
+            Runnable instrumentedCloseable = Instrumentation.builder(Runnable.class, closeable)
+                    .withPerformanceTraceLogging()
+                    .build();
+            if (useByteBuddy()) {
+                assertThat(instrumentedCloseable)
+                        .isNotInstanceOf(Closeable.class)
+                        .hasSameClassAs(instrumentedPlain);
+            }
+        } finally {
+            System.clearProperty("instrument.shared-classes");
+            InstrumentationProperties.reload();
+        }
+
+        TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+        Instrumentation.registerGeneratedClassMetrics(registry);
+        Gauge<Object> classCount = registry.gauge(MetricName.builder()
+                        .safeName("tritium.instrumentation.classes.count")
+                        .build())
+                .get();
+        Gauge<Object> classBytes = registry.gauge(MetricName.builder()
+                        .safeName("tritium.instrumentation.classes.bytes")
+                        .build())
+                .get();
+        if (useByteBuddy()) {
+            assertThat((Integer) classCount.getValue()).isPositive();
+            assertThat((Long) classBytes.getValue()).isPositive();
+        }
+    }
+
     @Test
     void testHigherParentSpecificity() {
         Parent instrumentedService = Instrumentation.builder(Parent.class, new Impl())
@@ -797,6 +1564,14 @@ public abstract class InstrumentationTest {
         verifyNoMoreInteractions(handler);
     }
 
+    private static final class CloseableRunnable implements Runnable, Closeable {
+        @Override
+        public void run() {}
+
+        @Override
+        public void close() {}
+    }
+
     public interface Parent extends LessSpecificReturn {
         int run();
     }
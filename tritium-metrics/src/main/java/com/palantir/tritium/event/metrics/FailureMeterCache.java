@@ -0,0 +1,95 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event.metrics;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Meter;
+import com.palantir.logsafe.SafeArg;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Bounded cache of failure meters keyed by exception class, used so that recording a failure for a previously seen
+ * cause is a single map lookup rather than building a metric name and resolving it against the registry.
+ *
+ * <p>Once {@code maxCauses} distinct exception classes have been recorded, failures of any further class are marked on
+ * a single overflow meter, bounding both memory use and metric cardinality when an unexpected variety of exceptions is
+ * thrown. The bound is approximate under concurrent insertion.
+ */
+final class FailureMeterCache {
+
+    /** Tag value or metric name suffix used for the overflow meter. */
+    static final String OVERFLOW_CAUSE = "other";
+
+    static final int DEFAULT_MAX_CAUSES = 32;
+
+    private final ConcurrentMap<Class<?>, Meter> meters = new ConcurrentHashMap<>();
+    private final Function<Class<?>, Meter> meterFactory;
+    private final Supplier<Meter> overflowMeterFactory;
+    private final int maxCauses;
+
+    @Nullable
+    private volatile Meter overflowMeter;
+
+    FailureMeterCache(Function<Class<?>, Meter> meterFactory, Supplier<Meter> overflowMeterFactory, int maxCauses) {
+        checkArgument(maxCauses >= 0, "maxCauses must be non-negative", SafeArg.of("maxCauses", maxCauses));
+        this.meterFactory = checkNotNull(meterFactory, "meterFactory");
+        this.overflowMeterFactory = checkNotNull(overflowMeterFactory, "overflowMeterFactory");
+        this.maxCauses = maxCauses;
+    }
+
+    FailureMeterCache(Function<Class<?>, Meter> meterFactory, Supplier<Meter> overflowMeterFactory) {
+        this(meterFactory, overflowMeterFactory, DEFAULT_MAX_CAUSES);
+    }
+
+    /** Returns the meter to mark for a failure caused by the given throwable. */
+    Meter get(Throwable cause) {
+        Class<?> causeClass = cause.getClass();
+        Meter meter = meters.get(causeClass);
+        if (meter != null) {
+            return meter;
+        }
+        if (meters.size() < maxCauses) {
+            return meters.computeIfAbsent(causeClass, meterFactory);
+        }
+        return getOverflowMeter();
+    }
+
+    private Meter getOverflowMeter() {
+        Meter meter = overflowMeter;
+        if (meter == null) {
+            // Registered lazily so the overflow metric only exists once the limit has actually been reached
+            meter = overflowMeterFactory.get();
+            overflowMeter = meter;
+        }
+        return meter;
+    }
+
+    int size() {
+        return meters.size();
+    }
+
+    @Override
+    public String toString() {
+        return "FailureMeterCache{size=" + meters.size() + ", maxCauses=" + maxCauses + '}';
+    }
+}
@@ -18,23 +18,36 @@ package com.palantir.tritium.event.metrics;
 
 import static com.palantir.logsafe.Preconditions.checkNotNull;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import com.palantir.tritium.event.AbstractInvocationEventHandler;
 import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.FutureAwareInvocationEventHandler;
 import com.palantir.tritium.event.InstrumentationProperties;
+import com.palantir.tritium.event.InvocationClock;
 import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.MethodBindingInvocationEventHandler;
+import com.palantir.tritium.event.SharedContextInvocationEventHandler;
 import com.palantir.tritium.event.metrics.annotations.AnnotationHelper;
 import com.palantir.tritium.event.metrics.annotations.MetricGroup;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /** {@link InvocationEventHandler} that records method timing and failures using Dropwizard metrics. */
-public final class MetricsInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext> {
+public final class MetricsInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext>
+        implements ArgumentsRequirement,
+                MethodBindingInvocationEventHandler<InvocationContext>,
+                SharedContextInvocationEventHandler<InvocationContext> {
 
     private static final String FAILURES = "failures";
 
@@ -47,6 +60,13 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
     @Nullable
     private final String globalGroupPrefix;
 
+    private final ConcurrentMap<Method, FailureMeterCache> failureMeterCache = new ConcurrentHashMap<>();
+    private final Function<Method, FailureMeterCache> failureMeterCacheMappingFunction =
+            method -> createFailureMeters(serviceName + '.' + method.getName() + '.' + FAILURES);
+
+    @Nullable
+    private volatile Meter globalFailureMeter;
+
     @SuppressWarnings("WeakerAccess") // public API
     public MetricsInvocationEventHandler(MetricRegistry metricRegistry, String serviceName) {
         super(getEnabledSupplier(serviceName));
@@ -100,9 +120,26 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
         return InstrumentationProperties.getSystemPropertySupplier(serviceName);
     }
 
+    @Override
+    public boolean requiresArguments() {
+        return false;
+    }
+
+    @Override
+    public InvocationEventHandler<InvocationContext> bind(Method method) {
+        checkNotNull(method, "method");
+        // Futures are timed until completion rather than until they are returned
+        return FutureAwareInvocationEventHandler.bind(new MethodBoundHandler(this, method), method);
+    }
+
     @Override
     public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
-        return DefaultInvocationContext.of(instance, method, args);
+        return DefaultInvocationContext.ofLazyArgs(instance, method, args);
+    }
+
+    @Override
+    public InvocationContext preInvocation(InvocationContext sharedContext) {
+        return sharedContext;
     }
 
     @Override
@@ -110,7 +147,7 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
         debugIfNullContext(context);
         if (context != null) {
             long nanos = updateTimer(context);
-            handleSuccessAnnotations(context, nanos);
+            handleSuccessAnnotations(getAnnotatedMetricName(context), nanos);
         }
     }
 
@@ -119,18 +156,15 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
         markGlobalFailure();
         debugIfNullContext(context);
         if (context != null) {
-            String failuresMetricName = getBaseMetricName(context) + '.' + FAILURES;
-            metricRegistry.meter(failuresMetricName).mark();
-            metricRegistry
-                    .meter(failuresMetricName + '.' + cause.getClass().getName())
-                    .mark();
+            metricRegistry.meter(getBaseMetricName(context) + '.' + FAILURES).mark();
+            getFailureMeters(context.getMethod()).get(cause).mark();
             long nanos = updateTimer(context);
-            handleFailureAnnotations(context, nanos);
+            handleFailureAnnotations(getAnnotatedMetricName(context), nanos);
         }
     }
 
     private long updateTimer(InvocationContext context) {
-        long nanos = System.nanoTime() - context.getStartTimeNanos();
+        long nanos = InvocationClock.elapsedNanos(context);
         metricRegistry.timer(getBaseMetricName(context)).update(nanos, TimeUnit.NANOSECONDS);
         return nanos;
     }
@@ -140,11 +174,26 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
     }
 
     private void markGlobalFailure() {
-        metricRegistry.meter(FAILURES).mark();
+        Meter meter = globalFailureMeter;
+        if (meter == null) {
+            // Registered lazily to avoid creating the failures metric until a failure occurs
+            meter = metricRegistry.meter(FAILURES);
+            globalFailureMeter = meter;
+        }
+        meter.mark();
+    }
+
+    private FailureMeterCache getFailureMeters(Method method) {
+        return failureMeterCache.computeIfAbsent(method, failureMeterCacheMappingFunction);
     }
 
-    private void handleSuccessAnnotations(InvocationContext context, long nanos) {
-        String metricName = getAnnotatedMetricName(context);
+    private FailureMeterCache createFailureMeters(String failuresMetricName) {
+        return new FailureMeterCache(
+                causeClass -> metricRegistry.meter(failuresMetricName + '.' + causeClass.getName()),
+                () -> metricRegistry.meter(failuresMetricName + '.' + FailureMeterCache.OVERFLOW_CAUSE));
+    }
+
+    private void handleSuccessAnnotations(@Nullable String metricName, long nanos) {
         if (metricName != null) {
             metricRegistry.timer(serviceName + '.' + metricName).update(nanos, TimeUnit.NANOSECONDS);
 
@@ -154,8 +203,7 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
         }
     }
 
-    private void handleFailureAnnotations(InvocationContext context, long nanos) {
-        String metricName = getAnnotatedMetricName(context);
+    private void handleFailureAnnotations(@Nullable String metricName, long nanos) {
         if (metricName != null) {
             metricRegistry
                     .timer(serviceName + '.' + metricName + '.' + FAILURES)
@@ -173,4 +221,103 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
     private String getAnnotatedMetricName(InvocationContext context) {
         return metricGroups.get(AnnotationHelper.MethodSignature.of(context.getMethod()));
     }
+
+    /**
+     * Handler bound to a single method, computing metric names once and resolving the method timer and failure meters
+     * on first use rather than on every invocation.
+     */
+    private static final class MethodBoundHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements ArgumentsRequirement, SharedContextInvocationEventHandler<InvocationContext> {
+
+        private final MetricsInvocationEventHandler parent;
+        private final String baseMetricName;
+        private final String failuresMetricName;
+
+        private final FailureMeterCache failureMeters;
+
+        @Nullable
+        private final String annotatedMetricName;
+
+        @Nullable
+        private volatile Timer timer;
+
+        @Nullable
+        private volatile Meter failuresMeter;
+
+        MethodBoundHandler(MetricsInvocationEventHandler parent, Method method) {
+            super(parent);
+            this.parent = parent;
+            this.baseMetricName = parent.serviceName + '.' + method.getName();
+            this.failuresMetricName = baseMetricName + '.' + FAILURES;
+            this.failureMeters = parent.getFailureMeters(method);
+            this.annotatedMetricName = parent.metricGroups.get(AnnotationHelper.MethodSignature.of(method));
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return false;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            return DefaultInvocationContext.ofLazyArgs(instance, method, args);
+        }
+
+        @Override
+        public InvocationContext preInvocation(InvocationContext sharedContext) {
+            return sharedContext;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            debugIfNullContext(context);
+            if (context != null) {
+                long nanos = updateTimer(context);
+                parent.handleSuccessAnnotations(annotatedMetricName, nanos);
+            }
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+            parent.markGlobalFailure();
+            debugIfNullContext(context);
+            if (context != null) {
+                getFailuresMeter().mark();
+                failureMeters.get(cause).mark();
+                long nanos = updateTimer(context);
+                parent.handleFailureAnnotations(annotatedMetricName, nanos);
+            }
+        }
+
+        private long updateTimer(InvocationContext context) {
+            long nanos = InvocationClock.elapsedNanos(context);
+            getTimer().update(nanos, TimeUnit.NANOSECONDS);
+            return nanos;
+        }
+
+        private Timer getTimer() {
+            Timer current = timer;
+            if (current == null) {
+                // Timers are registered lazily to avoid creating metrics for methods which are never invoked
+                current = parent.metricRegistry.timer(baseMetricName);
+                timer = current;
+            }
+            return current;
+        }
+
+        private Meter getFailuresMeter() {
+            Meter current = failuresMeter;
+            if (current == null) {
+                current = parent.metricRegistry.meter(failuresMetricName);
+                failuresMeter = current;
+            }
+            return current;
+        }
+
+        @Override
+        public String toString() {
+            return "MethodBoundHandler{parent=" + parent + ", metric=" + baseMetricName + '}';
+        }
+    }
 }
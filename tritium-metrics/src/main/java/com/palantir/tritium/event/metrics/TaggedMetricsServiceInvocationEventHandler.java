@@ -20,10 +20,16 @@ import static com.palantir.logsafe.Preconditions.checkNotNull;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import com.palantir.tritium.event.AbstractInvocationEventHandler;
 import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.FutureAwareInvocationEventHandler;
 import com.palantir.tritium.event.InstrumentationProperties;
+import com.palantir.tritium.event.InvocationClock;
 import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.MethodBindingInvocationEventHandler;
+import com.palantir.tritium.event.SharedContextInvocationEventHandler;
 import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import java.lang.reflect.Method;
@@ -48,7 +54,10 @@ import javax.annotation.Nullable;
  *   <li>Tag - cause: When an error is hit, this will be filled with the full class name of the cause.
  * </ul>
  */
-public class TaggedMetricsServiceInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext> {
+public class TaggedMetricsServiceInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext>
+        implements ArgumentsRequirement,
+                MethodBindingInvocationEventHandler<InvocationContext>,
+                SharedContextInvocationEventHandler<InvocationContext> {
 
     private static final String FAILURES_METRIC_NAME = "failures";
     private static final MetricName FAILURES_METRIC =
@@ -59,6 +68,8 @@ public class TaggedMetricsServiceInvocationEventHandler extends AbstractInvocati
     private final Meter globalFailureMeter;
     private final ConcurrentMap<Method, Timer> timerCache = new ConcurrentHashMap<>();
     private final Function<Method, Timer> onSuccessTimerMappingFunction;
+    private final ConcurrentMap<Method, FailureMeterCache> failureMeterCache = new ConcurrentHashMap<>();
+    private final Function<Method, FailureMeterCache> failureMeterCacheMappingFunction;
 
     public TaggedMetricsServiceInvocationEventHandler(TaggedMetricRegistry taggedMetricRegistry, String serviceName) {
         super(getEnabledSupplier(serviceName));
@@ -70,6 +81,9 @@ public class TaggedMetricsServiceInvocationEventHandler extends AbstractInvocati
                 .putSafeTags("service-name", method.getDeclaringClass().getSimpleName())
                 .putSafeTags("endpoint", method.getName())
                 .build());
+        this.failureMeterCacheMappingFunction = method -> new FailureMeterCache(
+                causeClass -> getFailureMeter(method, causeClass.getName()),
+                () -> getFailureMeter(method, FailureMeterCache.OVERFLOW_CAUSE));
     }
 
     @SuppressWarnings("NoFunctionalReturnType") // helper
@@ -77,17 +91,34 @@ public class TaggedMetricsServiceInvocationEventHandler extends AbstractInvocati
         return InstrumentationProperties.getSystemPropertySupplier(serviceName);
     }
 
+    @Override
+    public final boolean requiresArguments() {
+        return false;
+    }
+
+    @Override
+    public final InvocationEventHandler<InvocationContext> bind(Method method) {
+        checkNotNull(method, "method");
+        // Futures are timed until completion rather than until they are returned
+        return FutureAwareInvocationEventHandler.bind(new MethodBoundHandler(this, method), method);
+    }
+
     @Override
     public final InvocationContext preInvocation(
             @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
-        return DefaultInvocationContext.of(instance, method, args);
+        return DefaultInvocationContext.ofLazyArgs(instance, method, args);
+    }
+
+    @Override
+    public final InvocationContext preInvocation(InvocationContext sharedContext) {
+        return sharedContext;
     }
 
     @Override
     public final void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
         debugIfNullContext(context);
         if (context != null) {
-            long nanos = System.nanoTime() - context.getStartTimeNanos();
+            long nanos = InvocationClock.elapsedNanos(context);
             getSuccessTimer(context.getMethod()).update(nanos, TimeUnit.NANOSECONDS);
         }
     }
@@ -101,15 +132,91 @@ public class TaggedMetricsServiceInvocationEventHandler extends AbstractInvocati
         globalFailureMeter.mark();
         debugIfNullContext(context);
         if (context != null) {
-            MetricName failuresMetricName = MetricName.builder()
-                    .safeName(serviceName + "-" + FAILURES_METRIC_NAME)
-                    .putSafeTags(
-                            "service-name",
-                            context.getMethod().getDeclaringClass().getSimpleName())
-                    .putSafeTags("endpoint", context.getMethod().getName())
-                    .putSafeTags("cause", cause.getClass().getName())
-                    .build();
-            taggedMetricRegistry.meter(failuresMetricName).mark();
+            getFailureMeters(context.getMethod()).get(cause).mark();
+        }
+    }
+
+    private FailureMeterCache getFailureMeters(Method method) {
+        return failureMeterCache.computeIfAbsent(method, failureMeterCacheMappingFunction);
+    }
+
+    private Meter getFailureMeter(Method method, String cause) {
+        return taggedMetricRegistry.meter(MetricName.builder()
+                .safeName(serviceName + "-" + FAILURES_METRIC_NAME)
+                .putSafeTags("service-name", method.getDeclaringClass().getSimpleName())
+                .putSafeTags("endpoint", method.getName())
+                .putSafeTags("cause", cause)
+                .build());
+    }
+
+    /**
+     * Handler bound to a single method, resolving the success timer once and failure meters once per cause rather than
+     * on every invocation.
+     */
+    private static final class MethodBoundHandler extends AbstractInvocationEventHandler<InvocationContext>
+            implements ArgumentsRequirement, SharedContextInvocationEventHandler<InvocationContext> {
+
+        private final TaggedMetricsServiceInvocationEventHandler parent;
+        private final Method method;
+        private final FailureMeterCache failureMeters;
+
+        @Nullable
+        private volatile Timer successTimer;
+
+        MethodBoundHandler(TaggedMetricsServiceInvocationEventHandler parent, Method method) {
+            super(parent);
+            this.parent = parent;
+            this.method = method;
+            this.failureMeters = parent.getFailureMeters(method);
+        }
+
+        @Override
+        public boolean requiresArguments() {
+            return false;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method invokedMethod, @Nonnull Object[] args) {
+            return DefaultInvocationContext.ofLazyArgs(instance, invokedMethod, args);
+        }
+
+        @Override
+        public InvocationContext preInvocation(InvocationContext sharedContext) {
+            return sharedContext;
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+            debugIfNullContext(context);
+            if (context != null) {
+                long nanos = InvocationClock.elapsedNanos(context);
+                getSuccessTimer().update(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private Timer getSuccessTimer() {
+            Timer timer = successTimer;
+            if (timer == null) {
+                // Timers are registered lazily to avoid creating metrics for methods which are never invoked
+                timer = parent.getSuccessTimer(method);
+                successTimer = timer;
+            }
+            return timer;
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
+            parent.globalFailureMeter.mark();
+            debugIfNullContext(context);
+            if (context != null) {
+                failureMeters.get(cause).mark();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "MethodBoundHandler{parent=" + parent + ", method=" + method + '}';
         }
     }
 }
@@ -39,6 +39,9 @@ import com.palantir.logsafe.Preconditions;
 import com.palantir.logsafe.Safe;
 import com.palantir.logsafe.SafeArg;
 import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
+import com.palantir.tritium.event.AsyncInvocationEventHandler;
+import com.palantir.tritium.event.InstrumentationGovernor;
+import com.palantir.tritium.event.SamplingInstrumentationFilter;
 import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import java.time.ZoneOffset;
@@ -310,6 +313,96 @@ public final class MetricRegistries {
         MemoryPoolMetrics.register(checkNotNull(registry, "TaggedMetricRegistry is required"));
     }
 
+    /**
+     * Adds gauges describing an {@link AsyncInvocationEventHandler} to the given metric registry, tagged with
+     *
+     * <pre>{handler: NAME}</pre>
+     *
+     * .
+     *
+     * <ul>
+     *   <li>tritium.async.handler.queue.depth: the number of events published but not yet handled
+     *   <li>tritium.async.handler.dropped: the number of events discarded because the queue was full
+     * </ul>
+     *
+     * @param registry metric registry
+     * @param handler asynchronous handler
+     * @param name handler name
+     */
+    public static void registerAsyncHandler(
+            TaggedMetricRegistry registry, AsyncInvocationEventHandler handler, @Safe String name) {
+        checkNotNull(registry, "metric registry");
+        checkNotNull(handler, "handler");
+        checkNotNull(name, "name");
+        registry.registerWithReplacement(
+                MetricName.builder()
+                        .safeName("tritium.async.handler.queue.depth")
+                        .putSafeTags("handler", name)
+                        .build(),
+                handler::queueDepth);
+        registry.registerWithReplacement(
+                MetricName.builder()
+                        .safeName("tritium.async.handler.dropped")
+                        .putSafeTags("handler", name)
+                        .build(),
+                handler::droppedEvents);
+    }
+
+    /**
+     * Registers a gauge for each method governed by the governor reporting whether its instrumentation is currently
+     * demoted due to excessive overhead. Methods governed after registration are registered when first bound.
+     *
+     * <ul>
+     *   <li>tritium.governor.demoted: 1 if the method is demoted, otherwise 0, tagged with the governor name and method
+     *       name
+     * </ul>
+     *
+     * @param registry metric registry
+     * @param governor instrumentation governor
+     * @param name governor name
+     */
+    public static void registerGovernor(
+            TaggedMetricRegistry registry, InstrumentationGovernor governor, @Safe String name) {
+        checkNotNull(registry, "metric registry");
+        checkNotNull(governor, "governor");
+        checkNotNull(name, "name");
+        governor.addMethodListener(method -> registry.registerWithReplacement(
+                MetricName.builder()
+                        .safeName("tritium.governor.demoted")
+                        .putSafeTags("governor", name)
+                        .putSafeTags("method", method.getName())
+                        .build(),
+                () -> governor.isDemoted(method) ? 1 : 0));
+    }
+
+    /**
+     * Registers a gauge reporting the current sample rate of each method sampled by the filter, the fraction of its
+     * invocations observed by handlers. Counts and rates recorded by handlers under the filter may be divided by the
+     * sample rate to estimate the actual throughput of the method. Methods sampled after registration are registered
+     * when first bound or invoked.
+     *
+     * <ul>
+     *   <li>tritium.sampling.rate: the sample rate of each method, tagged with the filter name and method name
+     * </ul>
+     *
+     * @param registry metric registry
+     * @param filter sampling filter
+     * @param name filter name
+     */
+    public static void registerSamplingFilter(
+            TaggedMetricRegistry registry, SamplingInstrumentationFilter filter, @Safe String name) {
+        checkNotNull(registry, "metric registry");
+        checkNotNull(filter, "filter");
+        checkNotNull(name, "name");
+        filter.addMethodListener(method -> registry.registerWithReplacement(
+                MetricName.builder()
+                        .safeName("tritium.sampling.rate")
+                        .putSafeTags("filter", name)
+                        .putSafeTags("method", method.getName())
+                        .build(),
+                () -> filter.getSampleRate(method)));
+    }
+
     /**
      * Returns an instrumented {@link ScheduledExecutorService} that monitors the number of tasks submitted, running,
      * completed and also keeps a {@link com.codahale.metrics.Timer} for the task duration. Similar to
@@ -0,0 +1,88 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+final class FailureMeterCacheTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private final AtomicInteger resolutions = new AtomicInteger();
+
+    @Test
+    void testMetersResolvedOncePerCause() {
+        FailureMeterCache cache = cache(2);
+
+        Meter meter = cache.get(new IllegalStateException());
+        assertThat(cache.get(new IllegalStateException())).isSameAs(meter);
+        assertThat(cache.get(new IOException())).isNotSameAs(meter);
+
+        assertThat(resolutions).hasValue(2);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(registry.getMeters())
+                .containsOnlyKeys(IllegalStateException.class.getName(), IOException.class.getName());
+    }
+
+    @Test
+    void testOverflow() {
+        FailureMeterCache cache = cache(1);
+
+        Meter meter = cache.get(new IllegalStateException());
+        Meter overflow = cache.get(new IOException());
+        assertThat(overflow).isNotSameAs(meter);
+        assertThat(cache.get(new IllegalArgumentException())).isSameAs(overflow);
+        assertThat(cache.get(new IllegalStateException())).isSameAs(meter);
+
+        assertThat(cache.size()).isOne();
+        assertThat(registry.getMeters())
+                .containsOnlyKeys(IllegalStateException.class.getName(), FailureMeterCache.OVERFLOW_CAUSE);
+    }
+
+    @Test
+    void testOverflowRegisteredLazily() {
+        FailureMeterCache cache = cache(1);
+
+        cache.get(new IllegalStateException());
+
+        assertThat(registry.getMeters()).doesNotContainKey(FailureMeterCache.OVERFLOW_CAUSE);
+    }
+
+    @Test
+    void testInvalidMaxCauses() {
+        assertThatThrownBy(() -> cache(-1))
+                .isInstanceOf(SafeIllegalArgumentException.class)
+                .hasMessageContaining("maxCauses must be non-negative");
+    }
+
+    private FailureMeterCache cache(int maxCauses) {
+        return new FailureMeterCache(
+                causeClass -> {
+                    resolutions.incrementAndGet();
+                    return registry.meter(causeClass.getName());
+                },
+                () -> registry.meter(FailureMeterCache.OVERFLOW_CAUSE),
+                maxCauses);
+    }
+}
@@ -23,7 +23,9 @@ import static org.mockito.Mockito.when;
 import com.codahale.metrics.MetricRegistry;
 import com.palantir.tritium.event.DefaultInvocationContext;
 import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
 import com.palantir.tritium.event.metrics.annotations.MetricGroup;
+import java.lang.reflect.Method;
 import org.junit.jupiter.api.Test;
 
 @SuppressWarnings("NullAway")
@@ -138,6 +140,35 @@ final class MetricsInvocationEventHandlerTest {
         assertThat(metricRegistry.timer(globalPrefix + ".ONE").getCount()).isEqualTo(2L);
     }
 
+    @Test
+    void testBoundHandler() throws Exception {
+        AnnotatedTestInterface obj = mock(AnnotatedTestInterface.class);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        String globalPrefix = "com.business.myservice";
+        MetricsInvocationEventHandler handler =
+                new MetricsInvocationEventHandler(metricRegistry, obj.getClass(), "test", globalPrefix);
+        Method method = obj.getClass().getMethod("methodA");
+
+        InvocationEventHandler<InvocationContext> boundHandler = handler.bind(method);
+        assertThat(boundHandler.isEnabled()).isEqualTo(handler.isEnabled());
+        assertThat(metricRegistry.getTimers()).isEmpty();
+
+        boundHandler.onSuccess(boundHandler.preInvocation(obj, method, new Object[0]), "ok");
+        boundHandler.onFailure(
+                boundHandler.preInvocation(obj, method, new Object[0]), new RuntimeException("test failure"));
+
+        assertThat(metricRegistry.timer("test.methodA").getCount()).isEqualTo(2L);
+        assertThat(metricRegistry.timer("test.ONE").getCount()).isOne();
+        assertThat(metricRegistry.timer("test.ONE.failures").getCount()).isOne();
+        assertThat(metricRegistry.timer(globalPrefix + ".ONE").getCount()).isOne();
+        assertThat(metricRegistry.meter("test.methodA.failures").getCount()).isOne();
+        assertThat(metricRegistry
+                        .meter("test.methodA.failures." + RuntimeException.class.getName())
+                        .getCount())
+                .isOne();
+        assertThat(metricRegistry.meter("failures").getCount()).isOne();
+    }
+
     private static void callVoidMethod(
             MetricsInvocationEventHandler handler, Object obj, String methodName, boolean success) throws Exception {
         InvocationContext context =
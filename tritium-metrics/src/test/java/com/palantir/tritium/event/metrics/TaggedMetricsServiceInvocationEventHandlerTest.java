@@ -19,19 +19,28 @@ package com.palantir.tritium.event.metrics;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
 import com.palantir.logsafe.exceptions.SafeRuntimeException;
 import com.palantir.tritium.event.AbstractInvocationEventHandler;
 import com.palantir.tritium.event.DefaultInvocationContext;
 import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
 import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import com.palantir.tritium.metrics.test.TestTaggedMetricRegistries;
+import java.lang.reflect.Method;
 import java.util.Map;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
 final class TaggedMetricsServiceInvocationEventHandlerTest {
 
+    private static final MetricName DO_FOO_TIMER = MetricName.builder()
+            .safeName("quux")
+            .putSafeTags("service-name", "TestImplementation")
+            .putSafeTags("endpoint", "doFoo")
+            .build();
+
     public static final class TestImplementation {
 
         @SuppressWarnings("unused") // instrumented
@@ -79,6 +88,55 @@ final class TaggedMetricsServiceInvocationEventHandlerTest {
         assertThat(metrics).containsKey(expectedMetricName);
     }
 
+    @ParameterizedTest
+    @MethodSource(TestTaggedMetricRegistries.REGISTRIES)
+    void testBoundHandlerMetricsCaptured(TaggedMetricRegistry registry) throws Exception {
+        TestImplementation testInterface = new TestImplementation();
+        Method method = TestImplementation.class.getMethod("doFoo");
+
+        TaggedMetricsServiceInvocationEventHandler handler =
+                new TaggedMetricsServiceInvocationEventHandler(registry, "quux");
+        InvocationEventHandler<InvocationContext> boundHandler = handler.bind(method);
+        assertThat(registry.getMetrics()).doesNotContainKey(DO_FOO_TIMER);
+
+        InvocationContext context = boundHandler.preInvocation(testInterface, method, new Object[0]);
+        boundHandler.onSuccess(context, "bar");
+        boundHandler.onSuccess(boundHandler.preInvocation(testInterface, method, new Object[0]), "bar");
+
+        assertThat(registry.getMetrics()).containsKey(DO_FOO_TIMER);
+        assertThat(((Timer) registry.getMetrics().get(DO_FOO_TIMER)).getCount())
+                .isEqualTo(2);
+    }
+
+    @ParameterizedTest
+    @MethodSource(TestTaggedMetricRegistries.REGISTRIES)
+    void testBoundHandlerFailureMetricsCaptured(TaggedMetricRegistry registry) throws Exception {
+        TestImplementation testInterface = new TestImplementation();
+        Method method = TestImplementation.class.getMethod("doFoo");
+
+        TaggedMetricsServiceInvocationEventHandler handler =
+                new TaggedMetricsServiceInvocationEventHandler(registry, "quux");
+        InvocationEventHandler<InvocationContext> boundHandler = handler.bind(method);
+
+        boundHandler.onFailure(
+                boundHandler.preInvocation(testInterface, method, new Object[0]), new SafeRuntimeException("fail"));
+        boundHandler.onFailure(
+                boundHandler.preInvocation(testInterface, method, new Object[0]), new SafeRuntimeException("fail"));
+        handler.onFailure(
+                handler.preInvocation(testInterface, method, new Object[0]), new SafeRuntimeException("fail"));
+
+        MetricName expectedMetricName = MetricName.builder()
+                .safeName("quux-failures")
+                .putSafeTags("service-name", "TestImplementation")
+                .putSafeTags("endpoint", "doFoo")
+                .putSafeTags("cause", SafeRuntimeException.class.getName())
+                .build();
+        assertThat(registry.meter(expectedMetricName).getCount()).isEqualTo(3);
+        assertThat(registry.meter(MetricName.builder().safeName("failures").build())
+                        .getCount())
+                .isEqualTo(3);
+    }
+
     @SuppressWarnings("SameParameterValue")
     private static void invokeMethod(
             AbstractInvocationEventHandler<?> handler, Object obj, String methodName, Object result, boolean success)
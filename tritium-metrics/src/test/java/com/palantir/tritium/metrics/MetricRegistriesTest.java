@@ -41,12 +41,20 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.palantir.tritium.event.AsyncInvocationEventHandler;
+import com.palantir.tritium.event.InstrumentationFilters;
+import com.palantir.tritium.event.InstrumentationGovernor;
+import com.palantir.tritium.event.MethodBindingInvocationEventHandler;
+import com.palantir.tritium.event.NoOpInvocationEventHandler;
+import com.palantir.tritium.event.SamplingInstrumentationFilter;
 import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
 import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.time.Duration;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
@@ -314,6 +322,62 @@ final class MetricRegistriesTest {
                 .isEqualTo(0.25);
     }
 
+    @Test
+    void registerAsyncHandlerTaggedMetrics() {
+        try (AsyncInvocationEventHandler handler = AsyncInvocationEventHandler.create(
+                "test", ImmutableList.of(), 16, AsyncInvocationEventHandler.OverflowPolicy.DROP)) {
+            MetricRegistries.registerAsyncHandler(taggedMetricRegistry, handler, "test");
+            assertThat(taggedMetricRegistry.getMetrics())
+                    .containsOnlyKeys(
+                            MetricName.builder()
+                                    .safeName("tritium.async.handler.queue.depth")
+                                    .putSafeTags("handler", "test")
+                                    .build(),
+                            MetricName.builder()
+                                    .safeName("tritium.async.handler.dropped")
+                                    .putSafeTags("handler", "test")
+                                    .build());
+            assertThat(getMetric(taggedMetricRegistry, Gauge.class, "tritium.async.handler.queue.depth")
+                            .getValue())
+                    .isEqualTo(0);
+            assertThat(getMetric(taggedMetricRegistry, Gauge.class, "tritium.async.handler.dropped")
+                            .getValue())
+                    .isEqualTo(0L);
+        }
+    }
+
+    @Test
+    void registerGovernorTaggedMetrics() throws NoSuchMethodException {
+        InstrumentationGovernor governor = InstrumentationGovernor.disabling(1);
+        MetricRegistries.registerGovernor(taggedMetricRegistry, governor, "test");
+        assertThat(taggedMetricRegistry.getMetrics()).isEmpty();
+
+        MethodBindingInvocationEventHandler.bind(
+                governor.govern(NoOpInvocationEventHandler.INSTANCE), Object.class.getMethod("hashCode"));
+        MetricName name = MetricName.builder()
+                .safeName("tritium.governor.demoted")
+                .putSafeTags("governor", "test")
+                .putSafeTags("method", "hashCode")
+                .build();
+        assertThat(taggedMetricRegistry.getMetrics()).containsOnlyKeys(name);
+        assertThat(((Gauge<?>) taggedMetricRegistry.getMetrics().get(name)).getValue()).isEqualTo(0);
+    }
+
+    @Test
+    void registerSamplingFilterTaggedMetrics() throws NoSuchMethodException {
+        SamplingInstrumentationFilter filter = InstrumentationFilters.sampling(4);
+        Method method = Object.class.getMethod("hashCode");
+        filter.shouldInstrument(this, method, new Object[0]);
+        MetricRegistries.registerSamplingFilter(taggedMetricRegistry, filter, "test");
+        MetricName name = MetricName.builder()
+                .safeName("tritium.sampling.rate")
+                .putSafeTags("filter", "test")
+                .putSafeTags("method", "hashCode")
+                .build();
+        assertThat(taggedMetricRegistry.getMetrics()).containsOnlyKeys(name);
+        assertThat(((Gauge<?>) taggedMetricRegistry.getMetrics().get(name)).getValue()).isEqualTo(0.25);
+    }
+
     @Test
     void testGetOrAddDuplicate() {
         Counter mockMetric = mock(Counter.class);
@@ -0,0 +1,97 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.processor;
+
+import com.google.auto.service.AutoService;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates instrumented wrapper classes for interfaces annotated with
+ * {@code com.palantir.tritium.api.annotations.Instrument}, allowing instrumentation without runtime class generation.
+ */
+@AutoService(Processor.class)
+public final class InstrumentationProcessor extends AbstractProcessor {
+
+    static final String INSTRUMENT_ANNOTATION = "com.palantir.tritium.api.annotations.Instrument";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(INSTRUMENT_ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.INTERFACE) {
+                    error("@Instrument may only be applied to interfaces", element);
+                } else if (!isAccessibleFromPackage(element)) {
+                    error("@Instrument interfaces must not be private", element);
+                } else {
+                    generate((TypeElement) element);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement interfaceElement) {
+        InstrumentedClassWriter writer = new InstrumentedClassWriter(processingEnv, interfaceElement);
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(writer.qualifiedName(), interfaceElement);
+            try (Writer out = file.openWriter()) {
+                out.write(writer.source());
+            }
+        } catch (IOException e) {
+            error("Failed to write instrumented class " + writer.qualifiedName() + ": " + e, interfaceElement);
+        }
+    }
+
+    /** Generated classes are placed in the interface package, so the interface and enclosing types must be visible. */
+    private static boolean isAccessibleFromPackage(Element element) {
+        for (Element current = element;
+                current.getKind() != ElementKind.PACKAGE;
+                current = current.getEnclosingElement()) {
+            if (current.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Writes the source of an instrumented wrapper class for a single interface. Generated classes mirror the runtime
+ * generated instrumentation, delegating event handling to {@code GeneratedInstrumentationSupport}.
+ *
+ * <p>All types are referenced by their fully qualified names to avoid conflicts with types used by the interface.
+ */
+final class InstrumentedClassWriter {
+
+    private static final String SUPPORT = "com.palantir.tritium.event.GeneratedInstrumentationSupport";
+    private static final String HANDLER = "com.palantir.tritium.event.InvocationEventHandler";
+    private static final String CONTEXT = "com.palantir.tritium.event.InvocationContext";
+    private static final String FILTER = "com.palantir.tritium.api.event.InstrumentationFilter";
+    private static final String BREAKER = "com.palantir.tritium.event.HandlerCircuitBreaker";
+
+    private final Elements elements;
+    private final Types types;
+    private final TypeElement interfaceElement;
+    private final String packageName;
+    private final String simpleName;
+
+    InstrumentedClassWriter(ProcessingEnvironment processingEnv, TypeElement interfaceElement) {
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.interfaceElement = interfaceElement;
+        this.packageName =
+                elements.getPackageOf(interfaceElement).getQualifiedName().toString();
+        this.simpleName = generatedSimpleName(interfaceElement);
+    }
+
+    /** Must match {@code GeneratedInstrumentationSupport.generatedClassName(Class)}. */
+    private static String generatedSimpleName(TypeElement interfaceElement) {
+        StringBuilder simpleNames = new StringBuilder(interfaceElement.getSimpleName());
+        for (Element enclosing = interfaceElement.getEnclosingElement();
+                enclosing.getKind() != ElementKind.PACKAGE;
+                enclosing = enclosing.getEnclosingElement()) {
+            simpleNames.insert(0, '_').insert(0, enclosing.getSimpleName());
+        }
+        return "Instrumented" + simpleNames;
+    }
+
+    String qualifiedName() {
+        return packageName.isEmpty() ? simpleName : packageName + '.' + simpleName;
+    }
+
+    String source() {
+        DeclaredType interfaceType = (DeclaredType) interfaceElement.asType();
+        String interfaceName = interfaceElement.getQualifiedName().toString();
+        List<ExecutableElement> methods = instrumentedMethods();
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/** Instrumented {@link ")
+                .append(interfaceName)
+                .append("} generated by ")
+                .append(InstrumentationProcessor.class.getName())
+                .append(". */\n")
+                .append("@SuppressWarnings({\"deprecation\", \"unchecked\"})\n")
+                .append("public final class ")
+                .append(simpleName)
+                .append(typeParameters(interfaceElement.getTypeParameters()))
+                .append(" implements ")
+                .append(interfaceType)
+                .append(" {\n\n");
+
+        source.append("    private static final java.lang.reflect.Method[] METHODS = {\n");
+        for (ExecutableElement method : methods) {
+            source.append("        ")
+                    .append(SUPPORT)
+                    .append(".method(")
+                    .append(interfaceName)
+                    .append(".class, \"")
+                    .append(method.getSimpleName())
+                    .append('"');
+            for (VariableElement parameter : method.getParameters()) {
+                source.append(", ").append(types.erasure(parameter.asType())).append(".class");
+            }
+            source.append("),\n");
+        }
+        source.append("    };\n")
+                .append("    private static final java.lang.Object[] NO_ARGUMENTS = {};\n\n")
+                .append("    private final ")
+                .append(interfaceType)
+                .append(" delegate;\n")
+                .append("    private final ")
+                .append(FILTER)
+                .append(" filter;\n")
+                .append("    private final ")
+                .append(HANDLER)
+                .append("<?>[] handlers;\n")
+                .append("    private final ")
+                .append(BREAKER)
+                .append(" circuitBreaker;\n")
+                .append("    private final boolean requiresArguments;\n\n");
+
+        source.append("    public ")
+                .append(simpleName)
+                .append("(\n            ")
+                .append(interfaceType)
+                .append(" delegate,\n            ")
+                .append(HANDLER)
+                .append('<')
+                .append(CONTEXT)
+                .append("> handler,\n            ")
+                .append(FILTER)
+                .append(" filter) {\n")
+                .append("        this.delegate = java.util.Objects.requireNonNull(delegate, \"delegate\");\n")
+                .append("        this.filter = ")
+                .append(SUPPORT)
+                .append(".invocationFilter(filter);\n")
+                .append("        this.handlers = ")
+                .append(SUPPORT)
+                .append(".bind(handler, filter, METHODS);\n")
+                .append("        this.circuitBreaker = ")
+                .append(SUPPORT)
+                .append(".circuitBreaker(handler);\n")
+                .append("        this.requiresArguments = ")
+                .append(SUPPORT)
+                .append(".requiresArguments(handler, this.filter);\n")
+                .append("    }\n");
+
+        for (int index = 0; index < methods.size(); index++) {
+            writeMethod(source, interfaceType, methods.get(index), index);
+        }
+
+        source.append("\n    @java.lang.Override\n")
+                .append("    public java.lang.String toString() {\n")
+                .append("        return delegate.toString();\n")
+                .append("    }\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    private void writeMethod(StringBuilder source, DeclaredType interfaceType, ExecutableElement method, int index) {
+        ExecutableType methodType = (ExecutableType) types.asMemberOf(interfaceType, method);
+        List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+        List<String> arguments = new ArrayList<>();
+        List<String> parameters = new ArrayList<>();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            String argument = "arg" + i;
+            arguments.add(argument);
+            TypeMirror parameterType = parameterTypes.get(i);
+            boolean varArgs = method.isVarArgs() && i == parameterTypes.size() - 1;
+            parameters.add(
+                    varArgs
+                            ? ((ArrayType) parameterType).getComponentType() + "... " + argument
+                            : parameterType + " " + argument);
+        }
+        String argumentList = String.join(", ", arguments);
+        boolean isVoid = methodType.getReturnType().getKind() == TypeKind.VOID;
+
+        source.append("\n    @java.lang.Override\n    public ");
+        String methodTypeParameters = typeParameters(method.getTypeParameters());
+        if (!methodTypeParameters.isEmpty()) {
+            source.append(methodTypeParameters).append(' ');
+        }
+        source.append(methodType.getReturnType())
+                .append(' ')
+                .append(method.getSimpleName())
+                .append('(')
+                .append(String.join(", ", parameters))
+                .append(')');
+        if (!methodType.getThrownTypes().isEmpty()) {
+            source.append(" throws ")
+                    .append(methodType.getThrownTypes().stream()
+                            .map(TypeMirror::toString)
+                            .collect(Collectors.joining(", ")));
+        }
+        source.append(" {\n")
+                .append("        ")
+                .append(HANDLER)
+                .append("<?> handler = handlers[")
+                .append(index)
+                .append("];\n")
+                .append("        ")
+                .append(CONTEXT)
+                .append(" context = ")
+                .append(SUPPORT)
+                .append(".preInvocation(\n                handler, circuitBreaker, filter, this, METHODS[")
+                .append(index)
+                .append("], ")
+                .append(arguments.isEmpty() ? "NO_ARGUMENTS" : "requiresArguments ? new java.lang.Object[] {"
+                        + argumentList + "} : NO_ARGUMENTS")
+                .append(");\n")
+                .append("        try {\n")
+                .append("            ");
+        if (!isVoid) {
+            source.append(methodType.getReturnType()).append(" result = ");
+        }
+        source.append("delegate.")
+                .append(method.getSimpleName())
+                .append('(')
+                .append(argumentList)
+                .append(");\n")
+                .append("            ")
+                .append(SUPPORT)
+                .append(".onSuccess(handler, circuitBreaker, context, ")
+                .append(isVoid ? "null" : "result")
+                .append(");\n");
+        if (!isVoid) {
+            source.append("            return result;\n");
+        }
+        source.append("        } catch (java.lang.Throwable throwable) {\n")
+                .append("            ")
+                .append(SUPPORT)
+                .append(".onFailure(handler, circuitBreaker, context, throwable);\n")
+                .append("            throw throwable;\n")
+                .append("        }\n")
+                .append("    }\n");
+    }
+
+    /**
+     * Returns the methods to instrument in a stable order, excluding static methods and {@link Object} methods which
+     * the generated class does not instrument.
+     */
+    private List<ExecutableElement> instrumentedMethods() {
+        Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(interfaceElement))) {
+            if (method.getEnclosingElement().getKind() == ElementKind.INTERFACE
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && !isObjectMethod(method)) {
+                methods.putIfAbsent(signature(method), method);
+            }
+        }
+        return new ArrayList<>(methods.values());
+    }
+
+    private String signature(ExecutableElement method) {
+        return method.getSimpleName()
+                + method.getParameters().stream()
+                        .map(parameter -> types.erasure(parameter.asType()).toString())
+                        .collect(Collectors.joining(",", "(", ")"));
+    }
+
+    private boolean isObjectMethod(ExecutableElement method) {
+        String signature = signature(method);
+        return "toString()".equals(signature)
+                || "hashCode()".equals(signature)
+                || "equals(java.lang.Object)".equals(signature);
+    }
+
+    private static String typeParameters(List<? extends TypeParameterElement> typeParameters) {
+        if (typeParameters.isEmpty()) {
+            return "";
+        }
+        return typeParameters.stream()
+                .map(InstrumentedClassWriter::typeParameter)
+                .collect(Collectors.joining(", ", "<", ">"));
+    }
+
+    private static String typeParameter(TypeParameterElement typeParameter) {
+        List<String> bounds = typeParameter.getBounds().stream()
+                .map(TypeMirror::toString)
+                .filter(bound -> !"java.lang.Object".equals(bound))
+                .collect(Collectors.toList());
+        return bounds.isEmpty()
+                ? typeParameter.getSimpleName().toString()
+                : typeParameter.getSimpleName() + " extends " + String.join(" & ", bounds);
+    }
+}
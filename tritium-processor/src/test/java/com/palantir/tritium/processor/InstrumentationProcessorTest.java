@@ -0,0 +1,221 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.palantir.tritium.api.event.InstrumentationFilter;
+import com.palantir.tritium.event.AbstractInvocationEventHandler;
+import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.InstrumentationFilters;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.InvocationEventHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class InstrumentationProcessorTest {
+
+    private static final String SERVICE_SOURCE = String.join(
+            "\n",
+            "package com.example;",
+            "",
+            "import com.palantir.tritium.api.annotations.Instrument;",
+            "import java.util.List;",
+            "",
+            "@Instrument",
+            "public interface Service<T> extends Base<String> {",
+            "    T echo(T input);",
+            "    int sum(int... values);",
+            "    <R extends Comparable<R>> List<R> sorted(List<R> values) throws java.io.IOException;",
+            "    default String greeting() {",
+            "        return \"hello\";",
+            "    }",
+            "    void fail();",
+            "    @Override",
+            "    String toString();",
+            "    interface Nested {",
+            "        @Instrument",
+            "        interface Inner {",
+            "            long value();",
+            "        }",
+            "    }",
+            "}",
+            "",
+            "interface Base<B> {",
+            "    B base(B value);",
+            "}");
+
+    @Test
+    void testGeneratedClasses(@TempDir Path output) throws Exception {
+        CompilationResult result = compile(output, "com.example.Service", SERVICE_SOURCE);
+        assertThat(result.diagnostics).isEmpty();
+        assertThat(result.success).isTrue();
+        assertThat(output.resolve("com/example/InstrumentedService.java")).exists();
+        assertThat(output.resolve("com/example/InstrumentedService_Nested_Inner.java"))
+                .exists();
+
+        try (URLClassLoader classLoader =
+                new URLClassLoader(new URL[] {output.toUri().toURL()}, getClass().getClassLoader())) {
+            Class<?> serviceClass = classLoader.loadClass("com.example.Service");
+            Object delegate =
+                    Proxy.newProxyInstance(classLoader, new Class<?>[] {serviceClass}, (_proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "echo":
+                                return args[0];
+                            case "sum":
+                                return Arrays.stream((int[]) args[0]).sum();
+                            case "toString":
+                                return "delegate";
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+
+            List<String> events = new ArrayList<>();
+            Object instrumented = classLoader
+                    .loadClass("com.example.InstrumentedService")
+                    .getConstructor(serviceClass, InvocationEventHandler.class, InstrumentationFilter.class)
+                    .newInstance(delegate, new RecordingHandler(events), InstrumentationFilters.INSTRUMENT_ALL);
+
+            assertThat(serviceClass.getMethod("echo", Object.class).invoke(instrumented, "test"))
+                    .isEqualTo("test");
+            assertThat(serviceClass.getMethod("sum", int[].class).invoke(instrumented, (Object) new int[] {1, 2, 3}))
+                    .isEqualTo(6);
+            assertThat(instrumented).hasToString("delegate");
+            assertThat(events).containsExactly("pre:echo:[test]", "success:test", "pre:sum:[[1, 2, 3]]", "success:6");
+        }
+    }
+
+    @Test
+    void testRejectsClasses(@TempDir Path output) throws Exception {
+        CompilationResult result = compile(
+                output,
+                "com.example.NotAnInterface",
+                String.join(
+                        "\n",
+                        "package com.example;",
+                        "@com.palantir.tritium.api.annotations.Instrument",
+                        "public class NotAnInterface {}"));
+        assertThat(result.success).isFalse();
+        assertThat(result.diagnostics).containsExactly("@Instrument may only be applied to interfaces");
+    }
+
+    private static CompilationResult compile(Path output, String className, String source) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager =
+                compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+            Files.createDirectories(output);
+            List<String> options = Arrays.asList(
+                    "-classpath",
+                    System.getProperty("java.class.path"),
+                    "-d",
+                    output.toString(),
+                    "-s",
+                    output.toString(),
+                    "-Xlint:deprecation,unchecked",
+                    "-Werror");
+            JavaCompiler.CompilationTask task = compiler.getTask(
+                    null,
+                    fileManager,
+                    diagnostics,
+                    options,
+                    null,
+                    Collections.singletonList(new SourceFile(className, source)));
+            task.setProcessors(Collections.singletonList(new InstrumentationProcessor()));
+            boolean success = task.call();
+            return new CompilationResult(
+                    success,
+                    diagnostics.getDiagnostics().stream()
+                            .filter(diagnostic -> diagnostic.getKind() != Diagnostic.Kind.NOTE)
+                            .map(diagnostic -> diagnostic.getMessage(Locale.ROOT))
+                            .collect(Collectors.toList()));
+        }
+    }
+
+    private static final class CompilationResult {
+        private final boolean success;
+        private final List<String> diagnostics;
+
+        CompilationResult(boolean success, List<String> diagnostics) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    private static final class SourceFile extends SimpleJavaFileObject {
+        private final String source;
+
+        SourceFile(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean _ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    private static final class RecordingHandler extends AbstractInvocationEventHandler<InvocationContext> {
+        private final List<String> events;
+
+        RecordingHandler(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public InvocationContext preInvocation(
+                @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+            events.add("pre:" + method.getName() + ':' + Arrays.deepToString(args));
+            return DefaultInvocationContext.of(instance, method, args);
+        }
+
+        @Override
+        public void onSuccess(@Nullable InvocationContext _context, @Nullable Object result) {
+            events.add("success:" + result);
+        }
+
+        @Override
+        public void onFailure(@Nullable InvocationContext _context, @Nonnull Throwable cause) {
+            events.add("failure:" + cause.getMessage());
+        }
+    }
+}
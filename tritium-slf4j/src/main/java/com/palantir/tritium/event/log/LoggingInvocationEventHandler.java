@@ -24,8 +24,12 @@ import com.palantir.logsafe.SafeArg;
 import com.palantir.tritium.api.functions.BooleanSupplier;
 import com.palantir.tritium.event.AbstractInvocationEventHandler;
 import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.FutureAwareInvocationEventHandler;
+import com.palantir.tritium.event.InvocationClock;
 import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.MethodBindingInvocationEventHandler;
+import com.palantir.tritium.event.SharedContextInvocationEventHandler;
 import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.concurrent.TimeUnit;
@@ -34,7 +38,9 @@ import javax.annotation.Nullable;
 import org.slf4j.Logger;
 
 /** {@link InvocationEventHandler} that times every method invocation and logs to specified logger. */
-public class LoggingInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext> {
+public class LoggingInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext>
+        implements MethodBindingInvocationEventHandler<InvocationContext>,
+                SharedContextInvocationEventHandler<InvocationContext> {
 
     private static final ImmutableList<String> MESSAGE_PATTERNS = generateMessagePatterns(20);
 
@@ -79,10 +85,21 @@ public class LoggingInvocationEventHandler extends AbstractInvocationEventHandle
         this.durationPredicate = checkNotNull(durationPredicate, "durationPredicate");
     }
 
+    /** Logs invocations returning futures once the future completes. */
+    @Override
+    public final InvocationEventHandler<InvocationContext> bind(Method method) {
+        return FutureAwareInvocationEventHandler.bind(this, method);
+    }
+
     @Override
     public final InvocationContext preInvocation(
             @Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
-        return DefaultInvocationContext.of(instance, method, args);
+        return DefaultInvocationContext.ofLazyArgs(instance, method, args);
+    }
+
+    @Override
+    public final InvocationContext preInvocation(InvocationContext sharedContext) {
+        return sharedContext;
     }
 
     @Override
@@ -98,7 +115,7 @@ public class LoggingInvocationEventHandler extends AbstractInvocationEventHandle
     private void logInvocation(@Nullable InvocationContext context) {
         debugIfNullContext(context);
         if (context != null) {
-            long durationNanos = System.nanoTime() - context.getStartTimeNanos();
+            long durationNanos = InvocationClock.elapsedNanos(context);
             logInvocation(context.getMethod(), context.getArgs(), durationNanos);
         }
     }
@@ -22,6 +22,7 @@ import com.google.common.base.Strings;
 import com.google.common.base.Suppliers;
 import com.palantir.logsafe.SafeArg;
 import com.palantir.logsafe.exceptions.SafeIllegalStateException;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import com.palantir.tritium.event.AbstractInvocationEventHandler;
 import com.palantir.tritium.event.DefaultInvocationContext;
 import com.palantir.tritium.event.InstrumentationProperties;
@@ -39,7 +40,7 @@ import org.slf4j.LoggerFactory;
 
 @SuppressWarnings("TryFailRefactoring") // work-around https://github.com/google/error-prone/issues/1447
 public final class RemotingCompatibleTracingInvocationEventHandler
-        extends AbstractInvocationEventHandler<InvocationContext> {
+        extends AbstractInvocationEventHandler<InvocationContext> implements ArgumentsRequirement {
 
     private static final Logger logger = LoggerFactory.getLogger(RemotingCompatibleTracingInvocationEventHandler.class);
 
@@ -94,9 +95,14 @@ public final class RemotingCompatibleTracingInvocationEventHandler
         return new RemotingCompatibleTracingInvocationEventHandler(component, tracerFactory.get());
     }
 
+    @Override
+    public boolean requiresArguments() {
+        return false;
+    }
+
     @Override
     public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
-        InvocationContext context = DefaultInvocationContext.of(instance, method, args);
+        InvocationContext context = DefaultInvocationContext.ofLazyArgs(instance, method, args);
         String operationName = getOperationName(method);
         tracer.startSpan(operationName);
         return context;
@@ -20,17 +20,20 @@ import static com.palantir.logsafe.Preconditions.checkNotNull;
 
 import com.google.common.base.Strings;
 import com.palantir.tracing.Tracer;
+import com.palantir.tritium.api.event.ArgumentsRequirement;
 import com.palantir.tritium.api.functions.BooleanSupplier;
 import com.palantir.tritium.event.AbstractInvocationEventHandler;
 import com.palantir.tritium.event.DefaultInvocationContext;
 import com.palantir.tritium.event.InstrumentationProperties;
 import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.event.InvocationEventHandler;
+import com.palantir.tritium.event.SharedContextInvocationEventHandler;
 import java.lang.reflect.Method;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-public final class TracingInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext> {
+public final class TracingInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext>
+        implements ArgumentsRequirement, SharedContextInvocationEventHandler<InvocationContext> {
 
     private final String component;
 
@@ -61,14 +64,25 @@ public final class TracingInvocationEventHandler extends AbstractInvocationEvent
         return new TracingInvocationEventHandler(component);
     }
 
+    @Override
+    public boolean requiresArguments() {
+        return false;
+    }
+
     @Override
     public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
-        InvocationContext context = DefaultInvocationContext.of(instance, method, args);
+        InvocationContext context = DefaultInvocationContext.ofLazyArgs(instance, method, args);
         String operationName = getOperationName(method);
         Tracer.fastStartSpan(operationName);
         return context;
     }
 
+    @Override
+    public InvocationContext preInvocation(InvocationContext sharedContext) {
+        Tracer.fastStartSpan(getOperationName(sharedContext.getMethod()));
+        return sharedContext;
+    }
+
     private String getOperationName(Method method) {
         return Strings.isNullOrEmpty(component) ? method.getName() : component + '.' + method.getName();
     }